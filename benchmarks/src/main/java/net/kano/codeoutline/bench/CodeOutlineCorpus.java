@@ -0,0 +1,177 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline.bench;
+
+import java.util.Random;
+
+/**
+ * Synthetic documents of the shapes the outline has to cope with. Every
+ * document is generated from a fixed seed, so runs are comparable.
+ */
+public enum CodeOutlineCorpus {
+    /** A small class, shorter than the outline is tall. */
+    SHORT {
+        String generate(Random random) { return code(random, 60); }
+    },
+    /** A long source file, drawn at a reduced scale. */
+    TALL {
+        String generate(Random random) { return code(random, 20000); }
+    },
+    /** Generated code whose lines run far past the right edge. */
+    WIDE {
+        String generate(Random random) {
+            final StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 600; i++) {
+                sb.append("    ");
+                final int words = 40 + random.nextInt(60);
+                for (int j = 0; j < words; j++) {
+                    sb.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+                }
+                sb.append('\n');
+            }
+            return sb.toString();
+        }
+    },
+    /** A few enormous lines, as in minified scripts. */
+    MINIFIED {
+        String generate(Random random) {
+            final StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 4; i++) {
+                while (sb.length() < (i + 1) * 100000) {
+                    sb.append(WORDS[random.nextInt(WORDS.length)]);
+                    sb.append(PUNCTUATION.charAt(random.nextInt(PUNCTUATION.length())));
+                }
+                sb.append('\n');
+            }
+            return sb.toString();
+        }
+    },
+    /** Code interleaved with comments, blank lines and long string tables. */
+    MIXED {
+        String generate(Random random) {
+            final StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 40; i++) {
+                sb.append(code(random, 40 + random.nextInt(40)));
+                sb.append("\n/*\n");
+                for (int j = random.nextInt(8); j >= 0; j--) {
+                    sb.append(" * ").append(sentence(random, 12)).append('\n');
+                }
+                sb.append(" */\n\n");
+                if (random.nextInt(4) == 0) {
+                    sb.append("String[] TABLE = {");
+                    for (int j = 0; j < 80; j++) {
+                        sb.append('"').append(sentence(random, 2)).append("\", ");
+                    }
+                    sb.append("};\n");
+                }
+            }
+            return sb.toString();
+        }
+    };
+
+    private static final String[] WORDS = {
+        "int", "final", "return", "if", "for", "while", "new", "this",
+        "document", "offset", "line", "column", "width", "height", "scale",
+        "image", "render", "0", "1", "42", "null", "true", "getLineNumber",
+    };
+
+    private static final String PUNCTUATION = ".,;:(){}[]=+-*/<>!&|";
+
+    /** The seed shared by all documents. */
+    private static final long SEED = 0x0C0DE0171EL;
+
+    /** The text of this document, once generated. */
+    private String text = null;
+
+    /**
+     * Generates the text of this document.
+     *
+     * @param random the random numbers to use
+     * @return the document text
+     */
+    abstract String generate(Random random);
+
+    /**
+     * Returns the text of this document.
+     *
+     * @return the generated text
+     */
+    public synchronized String getText() {
+        if (text == null) text = generate(new Random(SEED + ordinal()));
+        return text;
+    }
+
+    /**
+     * Generates the given number of lines of nested, indented code.
+     */
+    private static String code(Random random, int lines) {
+        final StringBuilder sb = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < lines; i++) {
+            final int r = random.nextInt(10);
+            if (r == 0 && depth > 0) {
+                depth--;
+                indent(sb, depth).append("}\n");
+            } else if (r == 1) {
+                sb.append('\n');
+            } else {
+                indent(sb, depth).append(sentence(random, 2 + random.nextInt(8)));
+                if (r == 2 && depth < 8) {
+                    sb.append(" {\n");
+                    depth++;
+                } else {
+                    sb.append(";\n");
+                }
+            }
+        }
+        while (depth-- > 0) indent(sb, depth).append("}\n");
+        return sb.toString();
+    }
+
+    private static StringBuilder indent(StringBuilder sb, int depth) {
+        for (int i = 0; i < depth; i++) sb.append("    ");
+        return sb;
+    }
+
+    private static String sentence(Random random, int words) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) sb.append(random.nextInt(3) == 0
+                    ? PUNCTUATION.charAt(random.nextInt(PUNCTUATION.length())) : ' ');
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline.bench;
+
+import net.kano.codeoutline.CodeOutlineText;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A mutable text standing in for an IDE document. Lines are indexed like the
+ * IDE's own line set: replacing text only shifts the start offsets of the
+ * lines after it. When highlighting, characters are colored by a crude
+ * lexer, so the renderer walks color runs roughly as often as it does for a
+ * highlighted editor. Like a document, it tells its listeners about every
+ * replacement, before and after it is made.
+ */
+public class CodeOutlineFakeDocument implements CodeOutlineText {
+    /** The colors of identifiers, numbers, punctuation and quotes. */
+    private static final int[] PALETTE = {
+        0xFF000000, 0xFF0000FF, 0xFF808000, 0xFF008000,
+    };
+
+    /** Whether characters are colored by kind. */
+    private final boolean highlighted;
+
+    /** The characters of this document. */
+    private final StringBuilder chars = new StringBuilder();
+    /** The start offset of every line. */
+    private int[] lineStarts = new int[16];
+    /** The number of lines. */
+    private int lineCount = 1;
+    /** A counter incremented by every change. */
+    private long stamp = 0;
+    /** The colors of the characters, reused for every render. */
+    private final Runs runs = new Runs(chars);
+    /** The listeners told about replacements. */
+    private final List<Listener> listeners = new ArrayList<Listener>();
+
+    /**
+     * A listener for replacements in a document, like the IDE's document
+     * listener.
+     */
+    public interface Listener {
+        /**
+         * Called before the given region of the document is replaced.
+         *
+         * @param offset the offset at which the replaced region starts
+         * @param oldLength the length of the replaced region
+         */
+        void beforeChange(int offset, int oldLength);
+
+        /**
+         * Called after the given region of the document was replaced.
+         *
+         * @param offset the offset at which text was replaced
+         * @param oldLength the length of the replaced text
+         * @param newLength the length of the new text
+         */
+        void changed(int offset, int oldLength, int newLength);
+    }
+
+    /**
+     * Creates a new document holding the given text.
+     *
+     * @param text the initial text
+     * @param highlighted whether characters are colored by kind
+     */
+    public CodeOutlineFakeDocument(CharSequence text, boolean highlighted) {
+        this.highlighted = highlighted;
+        setText(text);
+    }
+
+    /**
+     * Replaces the whole text, re-indexing every line.
+     *
+     * @param text the new text
+     */
+    public void setText(CharSequence text) {
+        chars.setLength(0);
+        chars.append(text);
+
+        lineCount = 1;
+        for (int i = 0; i < chars.length(); i++) {
+            if (chars.charAt(i) == '\n') addLineStart(lineCount, i + 1);
+        }
+        stamp++;
+    }
+
+    /**
+     * Replaces the given region of the text.
+     *
+     * @param offset the offset at which the replaced region starts
+     * @param oldLength the length of the replaced region
+     * @param text the new text
+     */
+    public void replace(int offset, int oldLength, CharSequence text) {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).beforeChange(offset, oldLength);
+        }
+
+        final int firstLine = getLineNumber(offset);
+        final int lastLine = getLineNumber(offset + oldLength);
+
+        // drop the lines starting inside the replaced region
+        final int removed = lastLine - firstLine;
+        if (removed > 0) {
+            System.arraycopy(lineStarts, lastLine + 1, lineStarts, firstLine + 1,
+                    lineCount - lastLine - 1);
+            lineCount -= removed;
+        }
+
+        // shift the lines after it
+        final int delta = text.length() - oldLength;
+        for (int i = firstLine + 1; i < lineCount; i++) {
+            lineStarts[i] += delta;
+        }
+
+        // add the lines starting inside the new text
+        int line = firstLine + 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') addLineStart(line++, offset + i + 1);
+        }
+
+        chars.replace(offset, offset + oldLength, text.toString());
+        stamp++;
+
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).changed(offset, oldLength, text.length());
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the number of listeners told about replacements.
+     *
+     * @return the number of listeners
+     */
+    public int getListenerCount() { return listeners.size(); }
+
+    /**
+     * Inserts a line start at the given index.
+     */
+    private void addLineStart(int index, int offset) {
+        if (lineCount == lineStarts.length) {
+            final int[] grown = new int[lineStarts.length * 2];
+            System.arraycopy(lineStarts, 0, grown, 0, lineCount);
+            lineStarts = grown;
+        }
+        System.arraycopy(lineStarts, index, lineStarts, index + 1, lineCount - index);
+        lineStarts[index] = offset;
+        lineCount++;
+    }
+
+    public CharSequence getCharsSequence() { return chars; }
+
+    public int getTextLength() { return chars.length(); }
+
+    public int getLineCount() { return lineCount; }
+
+    public int getLineStartOffset(int line) { return lineStarts[line]; }
+
+    public int getLineEndOffset(int line) {
+        return line + 1 < lineCount ? lineStarts[line + 1] - 1 : chars.length();
+    }
+
+    public int getLineNumber(int offset) {
+        int lo = 0, hi = lineCount - 1;
+        while (lo < hi) {
+            final int mid = (lo + hi + 1) >>> 1;
+            if (lineStarts[mid] <= offset) lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    public long getModificationStamp() { return stamp; }
+
+    public ColorIterator createColorIterator(int offset) {
+        if (!highlighted) return Runs.UNIFORM;
+
+        return runs.start(offset);
+    }
+
+    /**
+     * Returns the kind of the given character, as an index into the palette.
+     */
+    private static int getKind(char ch) {
+        if (Character.isJavaIdentifierPart(ch)) {
+            return Character.isDigit(ch) ? 1 : 0;
+        }
+        return ch == '"' || ch == '\'' ? 3 : 2;
+    }
+
+    /**
+     * Runs of characters of the same kind.
+     */
+    private static final class Runs implements ColorIterator {
+        /** Colors all characters alike. */
+        static final ColorIterator UNIFORM = new Runs(null);
+
+        private final CharSequence chars;
+        private int end;
+        private int color = PALETTE[0];
+
+        Runs(CharSequence chars) {
+            this.chars = chars;
+        }
+
+        /**
+         * Moves to the run containing the given offset.
+         *
+         * @param offset an offset into the characters
+         * @return this iterator
+         */
+        Runs start(int offset) {
+            end = offset;
+            advance();
+            return this;
+        }
+
+        public boolean atEnd() { return chars == null || end >= chars.length(); }
+
+        public int getEnd() { return chars == null ? Integer.MAX_VALUE : end; }
+
+        public void advance() {
+            final int len = chars.length();
+            if (end >= len) return;
+
+            final int kind = getKind(chars.charAt(end));
+            int i = end + 1;
+            while (i < len && getKind(chars.charAt(i)) == kind) i++;
+
+            end = i;
+            color = PALETTE[kind];
+        }
+
+        public int getColor() { return color; }
+    }
+}
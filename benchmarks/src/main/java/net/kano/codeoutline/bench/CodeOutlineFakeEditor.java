@@ -0,0 +1,160 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline.bench;
+
+import net.kano.codeoutline.CodeOutlineCanvas;
+import net.kano.codeoutline.CodeOutlineShade;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Drives a {@link CodeOutlineCanvas} the way the plugin's
+ * <code>CodeOutlineImage</code> does in the IDE: every change to the
+ * document is passed to the canvas, with the position of the end of the
+ * replaced text taken before the change, and the canvas is refreshed when it
+ * cannot be updated incrementally.
+ */
+public class CodeOutlineFakeEditor {
+    /** The document being edited. */
+    private final CodeOutlineFakeDocument document;
+    /** The outline of the document. */
+    private final CodeOutlineCanvas canvas;
+    /** The outline with a visible area shading blended in. */
+    private final CodeOutlineShade shade = new CodeOutlineShade();
+    /** The area changed by the last edit. */
+    private final Rectangle dirty = new Rectangle();
+    /** The packed position of the end of the text being replaced. */
+    private long oldEnd;
+
+    /**
+     * Creates a new editor for the given document, with an outline of the
+     * given size.
+     *
+     * @param document the document to edit
+     * @param width the width of the outline
+     * @param height the height of the outline
+     */
+    public CodeOutlineFakeEditor(CodeOutlineFakeDocument document, int width, int height) {
+        this(document, new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB),
+                width, height);
+    }
+
+    /**
+     * Creates a new editor for the given document, with an outline of the
+     * given size drawn into the given image.
+     *
+     * @param document the document to edit
+     * @param img the image to draw into, at least as large as the outline
+     * @param width the width of the outline
+     * @param height the height of the outline
+     */
+    public CodeOutlineFakeEditor(CodeOutlineFakeDocument document, BufferedImage img,
+            int width, int height) {
+        this.document = document;
+        this.canvas = new CodeOutlineCanvas(document);
+
+        canvas.setBackground(0xFFFFFFFF);
+        canvas.setImage(img);
+        canvas.setSize(width, height);
+        canvas.refresh();
+
+        shade.setColor(0xE4E4E4, 128);
+    }
+
+    public CodeOutlineFakeDocument getDocument() { return document; }
+
+    public CodeOutlineCanvas getCanvas() { return canvas; }
+
+    /**
+     * Returns the outline with a visible area shading blended in. It is kept
+     * up to date the way an outline image keeps its shade up to date.
+     *
+     * @return the shaded outline
+     */
+    public CodeOutlineShade getShade() { return shade; }
+
+    /**
+     * Returns the area of the outline changed by the last edit.
+     *
+     * @return the last dirty rectangle
+     */
+    public Rectangle getDirty() { return dirty; }
+
+    /**
+     * Replaces the given region of the document and updates the outline.
+     *
+     * @param offset the offset at which the replaced region starts
+     * @param oldLength the length of the replaced region
+     * @param text the new text
+     * @return the render path taken
+     */
+    public int replace(int offset, int oldLength, CharSequence text) {
+        beforeChange(offset, oldLength);
+        document.replace(offset, oldLength, text);
+        return changed(offset, oldLength, text.length());
+    }
+
+    /**
+     * Takes note of where the text about to be replaced ends. This is what
+     * the document listener of an outline image does before a change.
+     *
+     * @param offset the offset at which the replaced region starts
+     * @param oldLength the length of the replaced region
+     */
+    public void beforeChange(int offset, int oldLength) {
+        oldEnd = canvas.getPosition(offset + oldLength);
+    }
+
+    /**
+     * Updates the outline after a change. This is what the document listener
+     * of an outline image does after a change.
+     *
+     * @param offset the offset at which text was replaced
+     * @param oldLength the length of the replaced text
+     * @param newLength the length of the new text
+     * @return the render path taken
+     */
+    public int changed(int offset, int oldLength, int newLength) {
+        final int path = canvas.update(offset, oldLength, newLength, oldEnd, dirty);
+        if (path == CodeOutlineCanvas.PATH_FULL) {
+            canvas.refresh();
+            shade.invalidate();
+        } else if (path == CodeOutlineCanvas.PATH_INCREMENTAL) {
+            shade.invalidate(dirty);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,505 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline.bench;
+
+import net.kano.codeoutline.CodeOutlineCanvas;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that updating an outline incrementally gives the same pixels as
+ * rendering it from scratch. Random documents are edited at random, at a
+ * variety of outline sizes and therefore scales, and after every change the
+ * outline is compared with a fresh render of the same text. So is its shade,
+ * which is only blended again where the outline reported changes. A failing case
+ * is shrunk to a minimal one, which is printed as a reproduction:
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar net.kano.codeoutline.bench.CodeOutlineFuzzer
+ *     [-seed N] [-cases N] [-edits N]
+ * </pre>
+ * The exit status is 1 if a case failed.
+ */
+public class CodeOutlineFuzzer {
+    private static final int DEFAULT_CASES = 2000;
+    private static final int DEFAULT_EDITS = 40;
+
+    private static final int[] WIDTHS = { 1, 3, 8, 40, 200 };
+    private static final int[] HEIGHTS = { 1, 4, 12, 50, 300 };
+
+    /** The characters lines are made of, weighted by repetition. */
+    private static final String ALPHABET = "aaaaaaaabbbccdd1(){};.=  \t";
+    /** How many characters there are per newline, from short to long lines. */
+    private static final int[] LINE_LENGTHS = { 2, 8, 30, 300 };
+
+    /** A change to a document. */
+    static final class Edit {
+        final int offset;
+        final int oldLength;
+        final String text;
+
+        Edit(int offset, int oldLength, String text) {
+            this.offset = offset;
+            this.oldLength = oldLength;
+            this.text = text;
+        }
+
+        public String toString() {
+            return "replace(" + offset + ", " + oldLength + ", " + quote(text) + ")";
+        }
+    }
+
+    /** A document, an outline size and the edits made to it. */
+    static final class Case {
+        final int width;
+        final int height;
+        final boolean highlighted;
+        final String text;
+        final List<Edit> edits;
+
+        Case(int width, int height, boolean highlighted, String text, List<Edit> edits) {
+            this.width = width;
+            this.height = height;
+            this.highlighted = highlighted;
+            this.text = text;
+            this.edits = edits;
+        }
+
+        Case withEdits(List<Edit> edits) {
+            return new Case(width, height, highlighted, text, edits);
+        }
+
+        Case withText(String text) {
+            return new Case(width, height, highlighted, text, edits);
+        }
+
+        Case withSize(int width, int height) {
+            return new Case(width, height, highlighted, text, edits);
+        }
+    }
+
+    /** Where an incrementally updated outline first differed from a render. */
+    static final class Mismatch {
+        final int edit;
+        final int path;
+        final double scale;
+        final int x, y;
+        final int expected, actual;
+        /** Whether the shade differed, rather than the outline itself. */
+        final boolean shaded;
+
+        Mismatch(int edit, int path, double scale, int x, int y, int expected, int actual,
+                boolean shaded) {
+            this.edit = edit;
+            this.shaded = shaded;
+            this.path = path;
+            this.scale = scale;
+            this.x = x;
+            this.y = y;
+            this.expected = expected;
+            this.actual = actual;
+        }
+    }
+
+    public static void main(String[] args) {
+        long seed = System.nanoTime();
+        int cases = DEFAULT_CASES;
+        int edits = DEFAULT_EDITS;
+
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                final String value = args[i + 1];
+                if (args[i].equals("-seed")) seed = Long.parseLong(value);
+                else if (args[i].equals("-cases")) cases = Integer.parseInt(value);
+                else if (args[i].equals("-edits")) edits = Integer.parseInt(value);
+                else throw new IllegalArgumentException(args[i]);
+            }
+        } catch (RuntimeException e) {
+            usage();
+            return;
+        }
+        if (cases < 1 || edits < 1) {
+            usage();
+            return;
+        }
+
+        System.setProperty("java.awt.headless", "true");
+
+        System.out.println("seed " + seed);
+        final Random random = new Random(seed);
+        for (int i = 0; i < cases; i++) {
+            final Case c = generate(random, edits);
+            if (check(c) == null) continue;
+
+            System.out.println("case " + i + " failed; shrinking");
+            final Case shrunk = shrink(c);
+            print(shrunk, check(shrunk));
+            System.exit(1);
+        }
+        System.out.println(cases + " cases passed");
+    }
+
+    private static void usage() {
+        System.err.println("usage: CodeOutlineFuzzer [-seed N] [-cases N] [-edits N]");
+        System.exit(2);
+    }
+
+    /**
+     * Generates a random case.
+     */
+    static Case generate(Random random, int maxEdits) {
+        final int width = WIDTHS[random.nextInt(WIDTHS.length)];
+        final int height = HEIGHTS[random.nextInt(HEIGHTS.length)];
+
+        final String initial = randomText(random, random.nextInt(400));
+        final StringBuilder text = new StringBuilder(initial);
+        final List<Edit> edits = new ArrayList<Edit>();
+        for (int i = 1 + random.nextInt(maxEdits); i > 0; i--) {
+            final int len = text.length();
+            final int offset = random.nextInt(len + 1);
+            final int oldLength;
+            final String newText;
+            switch (random.nextInt(6)) {
+            case 0: // type
+                oldLength = 0;
+                newText = random.nextInt(8) == 0 ? "\n"
+                        : String.valueOf(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                break;
+            case 1: // backspace
+                oldLength = Math.min(1, len - offset);
+                newText = "";
+                break;
+            case 2: // paste
+                oldLength = 0;
+                newText = randomText(random, 1 + random.nextInt(60));
+                break;
+            case 3: // delete a region
+                oldLength = random.nextInt(Math.min(100, len - offset) + 1);
+                newText = "";
+                break;
+            default: // replace a region
+                oldLength = random.nextInt(Math.min(40, len - offset) + 1);
+                newText = randomText(random, random.nextInt(40));
+                break;
+            }
+            edits.add(new Edit(offset, oldLength, newText));
+            text.replace(offset, offset + oldLength, newText);
+        }
+
+        return new Case(width, height, random.nextBoolean(), initial, edits);
+    }
+
+    private static String randomText(Random random, int length) {
+        final int lineLength = LINE_LENGTHS[random.nextInt(LINE_LENGTHS.length)];
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = random.nextInt(lineLength) == 0 ? '\n'
+                    : ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Runs the given case.
+     *
+     * @return where the outline first differed from a full render, or
+     *         <code>null</code> if it never did
+     */
+    static Mismatch check(Case c) {
+        final CodeOutlineFakeDocument document = new CodeOutlineFakeDocument(c.text, c.highlighted);
+        final CodeOutlineFakeEditor editor = new CodeOutlineFakeEditor(document, c.width, c.height);
+
+        for (int i = 0; i < c.edits.size(); i++) {
+            final Edit edit = c.edits.get(i);
+            final int len = document.getTextLength();
+            final int offset = Math.min(edit.offset, len);
+            final int oldLength = Math.min(edit.oldLength, len - offset);
+
+            final int path = editor.replace(offset, oldLength, edit.text);
+            final CodeOutlineFakeEditor fresh = new CodeOutlineFakeEditor(
+                    new CodeOutlineFakeDocument(document.getCharsSequence(), c.highlighted),
+                    c.width, c.height);
+            final CodeOutlineCanvas expected = fresh.getCanvas();
+            Mismatch mismatch = compare(i, path, expected.getScale(),
+                    editor.getCanvas().getImage(), expected.getImage(), c.width, c.height, false);
+            if (mismatch == null) {
+                mismatch = compare(i, path, expected.getScale(), paintShade(editor),
+                        paintShade(fresh), c.width, c.height, true);
+            }
+            if (mismatch != null) return mismatch;
+        }
+        return null;
+    }
+
+    /**
+     * Paints the whole shade of the given editor's outline.
+     */
+    private static BufferedImage paintShade(CodeOutlineFakeEditor editor) {
+        final CodeOutlineCanvas canvas = editor.getCanvas();
+        final int width = canvas.getWidth();
+        final int height = canvas.getHeight();
+        final BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = img.createGraphics();
+        try {
+            editor.getShade().paint(g, canvas.getImage(), width, height,
+                    new Rectangle(0, 0, width, height));
+        } finally {
+            g.dispose();
+        }
+        return img;
+    }
+
+    private static Mismatch compare(int edit, int path, double scale, BufferedImage a,
+            BufferedImage e, int width, int height, boolean shaded) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int ap = a.getRGB(x, y);
+                final int ep = e.getRGB(x, y);
+                if (ap != ep) {
+                    return new Mismatch(edit, path, scale, x, y, ep, ap, shaded);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Shrinks a failing case for as long as it keeps failing: dropping edits,
+     * text and inserted text, and making the outline smaller. Whenever text is
+     * dropped, the offsets of the edits after it are moved along, so that they
+     * still apply to the same text.
+     */
+    static Case shrink(Case c) {
+        // edits after the first failing one don't matter
+        final Mismatch first = check(c);
+        c = c.withEdits(new ArrayList<Edit>(c.edits.subList(0, first.edit + 1)));
+
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+
+            // drop runs of edits, longest first
+            for (int run = c.edits.size(); run > 0; run /= 2) {
+                for (int i = 0; i + run <= c.edits.size(); ) {
+                    final Case smaller = dropEdits(c, i, i + run);
+                    if (smaller != null && check(smaller) != null) {
+                        c = smaller;
+                        progress = true;
+                    } else {
+                        i++;
+                    }
+                }
+            }
+
+            // drop runs of characters from the initial text
+            for (int run = c.text.length(); run > 0; run /= 2) {
+                for (int i = 0; i + run <= c.text.length(); ) {
+                    final Case smaller = dropText(c, i, i + run);
+                    if (smaller != null && check(smaller) != null) {
+                        c = smaller;
+                        progress = true;
+                    } else {
+                        i++;
+                    }
+                }
+            }
+
+            // drop runs of characters from the text of every edit
+            for (int i = 0; i < c.edits.size(); i++) {
+                for (int run = c.edits.get(i).text.length(); run > 0; run /= 2) {
+                    for (int j = 0; j + run <= c.edits.get(i).text.length(); ) {
+                        final Case smaller = dropEditText(c, i, j, j + run);
+                        if (smaller != null && check(smaller) != null) {
+                            c = smaller;
+                            progress = true;
+                        } else {
+                            j++;
+                        }
+                    }
+                }
+            }
+
+            // replace less text
+            for (int i = 0; i < c.edits.size(); i++) {
+                final Edit edit = c.edits.get(i);
+                for (int oldLength = 0; oldLength < edit.oldLength; oldLength++) {
+                    final List<Edit> edits = new ArrayList<Edit>(c.edits);
+                    edits.set(i, new Edit(edit.offset, oldLength, edit.text));
+                    final Case smaller = c.withEdits(edits);
+                    if (check(smaller) != null) {
+                        c = smaller;
+                        progress = true;
+                        break;
+                    }
+                }
+            }
+
+            // make the outline smaller
+            for (int w = 1; w < c.width; w++) {
+                if (check(c.withSize(w, c.height)) != null) {
+                    c = c.withSize(w, c.height);
+                    progress = true;
+                    break;
+                }
+            }
+            for (int h = 1; h < c.height; h++) {
+                if (check(c.withSize(c.width, h)) != null) {
+                    c = c.withSize(c.width, h);
+                    progress = true;
+                    break;
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Drops the given characters from the initial text of a case.
+     *
+     * @return the smaller case, or <code>null</code> if a later edit replaced
+     *         only part of the dropped text
+     */
+    private static Case dropText(Case c, int from, int to) {
+        final List<Edit> edits = moveEdits(c.edits, 0, from, to, 0);
+        if (edits == null) return null;
+
+        return new Case(c.width, c.height, c.highlighted,
+                c.text.substring(0, from) + c.text.substring(to), edits);
+    }
+
+    /**
+     * Drops the given edits from a case. The text each of them inserted is
+     * put back the way it was, as far as its length goes.
+     *
+     * @return the smaller case, or <code>null</code> if a later edit replaced
+     *         only part of the text they inserted
+     */
+    private static Case dropEdits(Case c, int from, int to) {
+        List<Edit> edits = c.edits;
+        for (int i = to - 1; i >= from; i--) {
+            final Edit edit = edits.get(i);
+            edits = moveEdits(edits, i + 1, edit.offset, edit.offset + edit.text.length(),
+                    edit.oldLength);
+            if (edits == null) return null;
+
+            edits.remove(i);
+        }
+        return c.withEdits(edits);
+    }
+
+    /**
+     * Drops the given characters from the text inserted by an edit.
+     *
+     * @return the smaller case, or <code>null</code> if a later edit replaced
+     *         only part of the dropped text
+     */
+    private static Case dropEditText(Case c, int index, int from, int to) {
+        final Edit edit = c.edits.get(index);
+        final List<Edit> edits = moveEdits(c.edits, index + 1,
+                edit.offset + from, edit.offset + to, 0);
+        if (edits == null) return null;
+
+        edits.set(index, new Edit(edit.offset, edit.oldLength,
+                edit.text.substring(0, from) + edit.text.substring(to)));
+        return c.withEdits(edits);
+    }
+
+    /**
+     * Adjusts the edits starting at the given index for a region of the text
+     * they apply to being replaced with text of a different length.
+     *
+     * @param edits the edits of a case
+     * @param index the first edit to adjust
+     * @param start where the region starts, before the edit at the index
+     * @param end where the region ends, before the edit at the index
+     * @param length the length of the text replacing the region
+     * @return a copy of the edits with the adjusted ones, or
+     *         <code>null</code> if an edit replaced only part of the region
+     */
+    private static List<Edit> moveEdits(List<Edit> edits, int index,
+            int start, int end, int length) {
+        final List<Edit> moved = new ArrayList<Edit>(edits);
+        for (int i = index; i < moved.size(); i++) {
+            final Edit edit = moved.get(i);
+            final int editEnd = edit.offset + edit.oldLength;
+
+            if (editEnd <= start) {
+                // the edit is before the region, which moves along
+                start += edit.text.length() - edit.oldLength;
+                end += edit.text.length() - edit.oldLength;
+            } else if (edit.offset >= end) {
+                // the edit is after the region
+                moved.set(i, new Edit(edit.offset + length - (end - start),
+                        edit.oldLength, edit.text));
+            } else if (edit.offset <= start && editEnd >= end) {
+                // the edit replaces the whole region, which is then gone
+                moved.set(i, new Edit(edit.offset, edit.oldLength + length - (end - start),
+                        edit.text));
+                break;
+            } else {
+                return null;
+            }
+        }
+        return moved;
+    }
+
+    private static void print(Case c, Mismatch m) {
+        System.out.println("outline " + c.width + "x" + c.height
+                + (c.highlighted ? ", highlighted" : ""));
+        System.out.println("text " + quote(c.text));
+        for (int i = 0; i < c.edits.size(); i++) {
+            System.out.println("  " + c.edits.get(i)
+                    + (i == m.edit ? "  <- " + CodeOutlineCanvas.getPathName(m.path) : ""));
+        }
+        System.out.println(String.format("%s pixel (%d, %d) at scale %s is %08x, should be %08x",
+                m.shaded ? "shaded" : "outline", m.x, m.y, m.scale, m.actual, m.expected));
+    }
+
+    static String quote(String s) {
+        final StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            final char ch = s.charAt(i);
+            if (ch == '\n') sb.append("\\n");
+            else if (ch == '\t') sb.append("\\t");
+            else if (ch == '"' || ch == '\\') sb.append('\\').append(ch);
+            else sb.append(ch);
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline.bench;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Renders every document in the corpus and compares the outlines with the
+ * golden images checked in next to this module:
+ * <pre>
+ * java -Dgolden.update=true -cp ... net.kano.codeoutline.bench.CodeOutlineGoldenCheck golden-dir output-dir
+ * </pre>
+ * A pixel differs when one of its channels is off by more than
+ * <code>golden.channel.tolerance</code>, and an outline fails when more than
+ * the fraction <code>golden.pixel.tolerance</code> of its pixels differ.
+ * Failing outlines are written to the output directory for inspection. With
+ * <code>golden.update</code> set, the golden images are replaced instead;
+ * this is how a deliberate change in rendering is checked in. The exit
+ * status is 1 if an outline failed.
+ */
+public class CodeOutlineGoldenCheck {
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 1000;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: CodeOutlineGoldenCheck golden-dir output-dir");
+            System.exit(2);
+        }
+        final File goldenDir = new File(args[0]);
+        final File outputDir = new File(args[1]);
+        final boolean update = Boolean.getBoolean("golden.update");
+        final int channelTolerance = Integer.getInteger("golden.channel.tolerance", 0);
+        final double pixelTolerance = Double.parseDouble(
+                System.getProperty("golden.pixel.tolerance", "0.001"));
+
+        System.setProperty("java.awt.headless", "true");
+
+        int failed = 0;
+        for (CodeOutlineCorpus corpus : CodeOutlineCorpus.values()) {
+            final String name = corpus.name().toLowerCase() + ".png";
+            final BufferedImage actual = render(corpus);
+            final File golden = new File(goldenDir, name);
+
+            if (update) {
+                goldenDir.mkdirs();
+                ImageIO.write(actual, "png", golden);
+                System.out.println("updated " + golden);
+                continue;
+            }
+
+            if (!golden.isFile()) {
+                System.out.println(name + ": no golden image " + golden);
+                failed++;
+                continue;
+            }
+
+            final BufferedImage expected = ImageIO.read(golden);
+            final long differing = compare(expected, actual, channelTolerance);
+            final double fraction = (double) differing / (WIDTH * HEIGHT);
+            if (differing < 0 || fraction > pixelTolerance) {
+                outputDir.mkdirs();
+                final File out = new File(outputDir, name);
+                ImageIO.write(actual, "png", out);
+                System.out.println(name + ": " + (differing < 0 ? "size differs"
+                        : differing + " pixels differ") + ", see " + out);
+                failed++;
+            } else {
+                System.out.println(name + ": ok" + (differing > 0
+                        ? " (" + differing + " pixels within tolerance)" : ""));
+            }
+        }
+
+        if (failed > 0) {
+            System.out.println(failed + " outlines differ from their golden images");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Renders the outline of the given document.
+     */
+    private static BufferedImage render(CodeOutlineCorpus corpus) {
+        final CodeOutlineFakeEditor editor = new CodeOutlineFakeEditor(
+                new CodeOutlineFakeDocument(corpus.getText(), true), WIDTH, HEIGHT);
+
+        // the opaque pixels are what the panel shows
+        final BufferedImage img = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        img.setRGB(0, 0, WIDTH, HEIGHT,
+                editor.getCanvas().getImage().getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH),
+                0, WIDTH);
+        return img;
+    }
+
+    /**
+     * Returns the number of pixels which differ between the given images, or
+     * <code>-1</code> if their sizes differ.
+     */
+    private static long compare(BufferedImage expected, BufferedImage actual, int tolerance) {
+        if (expected.getWidth() != actual.getWidth()
+                || expected.getHeight() != actual.getHeight()) {
+            return -1;
+        }
+
+        long differing = 0;
+        for (int y = 0; y < actual.getHeight(); y++) {
+            for (int x = 0; x < actual.getWidth(); x++) {
+                final int e = expected.getRGB(x, y);
+                final int a = actual.getRGB(x, y);
+                if (e == a) continue;
+
+                for (int shift = 0; shift < 24; shift += 8) {
+                    if (Math.abs((e >> shift & 0xFF) - (a >> shift & 0xFF)) > tolerance) {
+                        differing++;
+                        break;
+                    }
+                }
+            }
+        }
+        return differing;
+    }
+}
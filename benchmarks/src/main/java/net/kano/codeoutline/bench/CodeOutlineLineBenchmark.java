@@ -0,0 +1,106 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures inserting and deleting whole lines at several vertical scales.
+ * Below a scale of 1 every change in the line count re-renders the whole
+ * outline, while at full scale an inserted line only shifts the rows below
+ * it. The document is restored before every invocation, so that its size,
+ * and the scale, stay the same.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodeOutlineLineBenchmark {
+    private static final String LINE = "        int x = getLineNumber(offset);\n";
+
+    @Param({"SHORT", "MIXED"})
+    public CodeOutlineCorpus corpus;
+
+    /** The height of the outline relative to the number of lines. */
+    @Param({"1.0", "0.5", "0.25"})
+    public double scale;
+
+    private CodeOutlineFakeEditor editor;
+    private int lineStart;
+    private int lineLength;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final CodeOutlineFakeDocument document
+                = new CodeOutlineFakeDocument(corpus.getText(), true);
+        final int lines = document.getLineCount();
+
+        // leave room for the inserted line at full scale
+        final int height = scale >= 1.0 ? lines + 2 : (int) Math.ceil(lines * scale);
+        editor = new CodeOutlineFakeEditor(document, CodeOutlineRenderBenchmark.WIDTH, height);
+
+        final int line = lines / 2;
+        lineStart = document.getLineStartOffset(line);
+        lineLength = document.getLineEndOffset(line) - lineStart;
+    }
+
+    @Setup(Level.Invocation)
+    public void restore() {
+        final CodeOutlineFakeDocument document = editor.getDocument();
+        if (document.getTextLength() != corpus.getText().length()) {
+            document.setText(corpus.getText());
+        }
+    }
+
+    @Benchmark
+    public int insertLine() {
+        return editor.replace(lineStart, 0, LINE);
+    }
+
+    @Benchmark
+    public int deleteLine() {
+        return editor.replace(lineStart, lineLength + 1, "");
+    }
+
+    /** Inserts a line at the top, which moves every other row down. */
+    @Benchmark
+    public int shiftRows() {
+        return editor.replace(0, 0, "\n");
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Runs a short selection of the benchmarks and fails when one of them
+ * allocates more, or with <code>perf.time.check</code> set got slower, than
+ * a stored baseline allows:
+ * <pre>
+ * java -Dperf.update=true -cp ... net.kano.codeoutline.bench.CodeOutlinePerfGate baseline-file
+ * </pre>
+ * A benchmark fails when its allocation per operation exceeds the baseline
+ * by more than the fraction <code>perf.alloc.tolerance</code> (plus a few
+ * bytes of noise). The keystroke and dirty paint benchmarks must not
+ * allocate at all, whatever the baseline says. Allocation doesn't depend on
+ * the machine, but times do, so they are only compared, against the
+ * fraction <code>perf.time.tolerance</code>, when <code>perf.time.check</code>
+ * is set on the machine which recorded the baseline. The exit status is 1
+ * if a benchmark regressed.
+ */
+public class CodeOutlinePerfGate {
+    /** The benchmarks run by the gate. */
+    private static final String INCLUDE = "CodeOutline(Render|Line)Benchmark\\."
+            + "(fullRender|typeCharacter|insertLine|paintBlit|paintDirty|scrollShade)$";
+
+    /** The name of the secondary result holding the allocation per operation. */
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    /** How many bytes per operation may be allocated above the baseline. */
+    private static final double ALLOCATION_NOISE = 64;
+
+    /** The benchmarks which must not allocate. */
+    private static final String ZERO_ALLOCATION = "CodeOutline(Render|Line)Benchmark\\."
+            + "(typeCharacter|paintDirty)\\..*\\.alloc";
+
+    /**
+     * The allocation per operation below which a benchmark counts as not
+     * allocating. The profiler reports a fraction of a byte for its own
+     * bookkeeping, while a single object takes at least 16 bytes.
+     */
+    private static final double ZERO_ALLOCATION_NOISE = 0.5;
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        if (args.length != 1) {
+            System.err.println("usage: CodeOutlinePerfGate baseline-file");
+            System.exit(2);
+        }
+        final File file = new File(args[0]);
+        final boolean update = Boolean.getBoolean("perf.update");
+        final boolean timeCheck = Boolean.getBoolean("perf.time.check");
+        final double timeTolerance = Double.parseDouble(
+                System.getProperty("perf.time.tolerance", "0.50"));
+        final double allocTolerance = Double.parseDouble(
+                System.getProperty("perf.alloc.tolerance", "0.10"));
+
+        final Options options = new OptionsBuilder()
+                .include(INCLUDE)
+                .param("corpus", "TALL", "MIXED")
+                .param("scale", "1.0")
+                .warmupIterations(3).warmupTime(TimeValue.milliseconds(300))
+                .measurementIterations(3).measurementTime(TimeValue.milliseconds(300))
+                .forks(1)
+                .jvmArgsAppend("-Djava.awt.headless=true")
+                .addProfiler(GCProfiler.class)
+                .build();
+        final Collection<RunResult> results = new Runner(options).run();
+
+        final Map<String, Double> measured = new TreeMap<String, Double>();
+        for (RunResult result : results) {
+            final String name = getName(result);
+            measured.put(name + ".time", result.getPrimaryResult().getScore());
+            final Result<?> alloc = result.getSecondaryResults().get(ALLOCATION);
+            if (alloc != null) measured.put(name + ".alloc", alloc.getScore());
+        }
+
+        if (update) {
+            // sorted, so that a new baseline diffs well against the old one
+            final PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                    new FileOutputStream(file), "ISO-8859-1"));
+            try {
+                out.println("# time in us/op, allocation in B/op");
+                for (Map.Entry<String, Double> entry : measured.entrySet()) {
+                    out.println(entry.getKey() + "=" + String.format("%.3f", entry.getValue()));
+                }
+            } finally {
+                out.close();
+            }
+            System.out.println("updated " + file);
+            return;
+        }
+
+        final Properties baseline = new Properties();
+        final InputStream in = new FileInputStream(file);
+        try {
+            baseline.load(in);
+        } finally {
+            in.close();
+        }
+
+        final List<String> regressions = new ArrayList<String>();
+        for (Map.Entry<String, Double> entry : measured.entrySet()) {
+            final String key = entry.getKey();
+            if (key.matches(ZERO_ALLOCATION)) {
+                final String line = String.format("%s: %.3f, must be 0", key, entry.getValue());
+                System.out.println(line);
+                if (entry.getValue() >= ZERO_ALLOCATION_NOISE) regressions.add(line);
+                continue;
+            }
+
+            final String stored = baseline.getProperty(key);
+            if (stored == null) {
+                System.out.println(key + ": no baseline");
+                continue;
+            }
+
+            final double base = Double.parseDouble(stored);
+            final double value = entry.getValue();
+            final boolean alloc = key.endsWith(".alloc");
+            if (!alloc && !timeCheck) {
+                System.out.println(String.format("%s: %.3f, baseline %.3f, not checked",
+                        key, value, base));
+                continue;
+            }
+            final double limit = alloc ? base * (1 + allocTolerance) + ALLOCATION_NOISE
+                    : base * (1 + timeTolerance);
+
+            final String line = String.format("%s: %.3f, baseline %.3f, limit %.3f",
+                    key, value, base, limit);
+            System.out.println(line);
+            if (value > limit) regressions.add(line);
+        }
+
+        if (!regressions.isEmpty()) {
+            System.out.println(regressions.size() + " benchmarks regressed:");
+            for (String line : regressions) System.out.println("  " + line);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Returns a name for the given result, made of the benchmark method and
+     * its parameters.
+     */
+    private static String getName(RunResult result) {
+        final String benchmark = result.getParams().getBenchmark();
+        final StringBuilder sb = new StringBuilder(
+                benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1));
+        for (String key : result.getParams().getParamsKeys()) {
+            sb.append('.').append(key).append('-').append(result.getParams().getParam(key));
+        }
+        return sb.toString();
+    }
+}
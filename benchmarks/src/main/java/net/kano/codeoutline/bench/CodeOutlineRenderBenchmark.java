@@ -0,0 +1,134 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline.bench;
+
+import net.kano.codeoutline.CodeOutlineShade;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures rendering a whole outline, typing a single character, blitting
+ * the outline to the panel, repainting only what a keystroke changed, and
+ * moving the shaded visible area over it while scrolling, for every document
+ * in the corpus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodeOutlineRenderBenchmark {
+    /** The size of a typical outline panel. */
+    static final int WIDTH = 200, HEIGHT = 1000;
+
+    @Param({"SHORT", "TALL", "WIDE", "MINIFIED", "MIXED"})
+    public CodeOutlineCorpus corpus;
+
+    private CodeOutlineFakeEditor editor;
+    private int caret;
+
+    private BufferedImage panel;
+    private Graphics2D g;
+
+    /** The outline with the visible area shading blended in. */
+    private CodeOutlineShade shade;
+    /** The shaded visible area, about a screen of text. */
+    private final Rectangle visible = new Rectangle(0, 0, 120, 60);
+    /** The whole panel. */
+    private final Rectangle all = new Rectangle(0, 0, WIDTH, HEIGHT);
+
+    @Setup
+    public void setUp() {
+        final CodeOutlineFakeDocument document
+                = new CodeOutlineFakeDocument(corpus.getText(), true);
+        editor = new CodeOutlineFakeEditor(document, WIDTH, HEIGHT);
+
+        // type a few characters into the middle line
+        final int line = document.getLineCount() / 2;
+        final int start = document.getLineStartOffset(line);
+        caret = start + Math.min(10, document.getLineEndOffset(line) - start);
+
+        panel = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        g = panel.createGraphics();
+
+        shade = new CodeOutlineShade();
+        shade.setColor(0xE4E4E4, 128);
+    }
+
+    @TearDown
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public void fullRender() {
+        editor.getCanvas().refresh();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public int typeCharacter() {
+        editor.replace(caret, 0, "x");
+        return editor.replace(caret, 1, "");
+    }
+
+    @Benchmark
+    public void paintBlit() {
+        editor.getCanvas().paint(g, all);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void paintDirty() {
+        // type a character and repaint the rows it changed, as the panel's
+        // clip would after the repaint the listener asks for
+        editor.replace(caret, 0, "x");
+        editor.getCanvas().paint(g, editor.getDirty());
+        editor.replace(caret, 1, "");
+        editor.getCanvas().paint(g, editor.getDirty());
+    }
+
+    @Benchmark
+    public void scrollShade() {
+        // scroll down a row at a time, and back to the top at the end
+        visible.y = (visible.y + 1) % (HEIGHT - visible.height);
+        shade.paint(g, editor.getCanvas().getImage(), WIDTH, HEIGHT, visible);
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline.bench;
+
+import net.kano.codeoutline.CodeOutlineCanvas;
+import net.kano.codeoutline.CodeOutlineEditTrace;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Replays edit traces recorded in the IDE against the outline, without an
+ * IDE, and reports how long the outline took to catch up with every change
+ * and how much it allocated:
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar net.kano.codeoutline.bench.CodeOutlineReplay
+ *     [-width N] [-height N] [-warmup N] trace...
+ * </pre>
+ * Every trace is replayed a few times to warm up first. Only the outline's
+ * work is measured, not the change to the document itself.
+ */
+public class CodeOutlineReplay {
+    private static final int DEFAULT_WIDTH = 200;
+    private static final int DEFAULT_HEIGHT = 1000;
+    private static final int DEFAULT_WARMUP = 3;
+
+    /** A change read from a trace. */
+    private static final class Change {
+        final long time;
+        final int offset;
+        final String oldText;
+        final String newText;
+
+        Change(long time, int offset, String oldText, String newText) {
+            this.time = time;
+            this.offset = offset;
+            this.oldText = oldText;
+            this.newText = newText;
+        }
+    }
+
+    /** The results of replaying a trace once. */
+    private static final class Result {
+        /** The time the outline took for every change, in nanoseconds. */
+        final long[] latencies;
+        /** The bytes allocated by the outline for every change. */
+        final long[] allocations;
+        /** How many changes took each render path. */
+        final int[] paths = new int[CodeOutlineCanvas.PATH_CLIP + 1];
+
+        Result(int changes) {
+            latencies = new long[changes];
+            allocations = new long[changes];
+        }
+    }
+
+    private final com.sun.management.ThreadMXBean threads
+            = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final int width;
+    private final int height;
+    private final int warmup;
+
+    /**
+     * Creates a new replay harness.
+     *
+     * @param width the width of the outline
+     * @param height the height of the outline
+     * @param warmup how many times to replay a trace before measuring
+     */
+    public CodeOutlineReplay(int width, int height, int warmup) {
+        this.width = width;
+        this.height = height;
+        this.warmup = warmup;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int width = DEFAULT_WIDTH;
+        int height = DEFAULT_HEIGHT;
+        int warmup = DEFAULT_WARMUP;
+
+        int i = 0;
+        try {
+            for (; i < args.length && args[i].startsWith("-"); i += 2) {
+                final String value = args[i + 1];
+                if (args[i].equals("-width")) width = Integer.parseInt(value);
+                else if (args[i].equals("-height")) height = Integer.parseInt(value);
+                else if (args[i].equals("-warmup")) warmup = Integer.parseInt(value);
+                else throw new IllegalArgumentException(args[i]);
+            }
+        } catch (RuntimeException e) {
+            usage();
+            return;
+        }
+        if (i == args.length || width < 1 || height < 1 || warmup < 0) {
+            usage();
+            return;
+        }
+
+        System.setProperty("java.awt.headless", "true");
+
+        final CodeOutlineReplay replay = new CodeOutlineReplay(width, height, warmup);
+        for (; i < args.length; i++) replay.run(new File(args[i]));
+    }
+
+    private static void usage() {
+        System.err.println("usage: CodeOutlineReplay [-width N] [-height N] "
+                + "[-warmup N] trace...");
+        System.exit(2);
+    }
+
+    /**
+     * Replays the given trace and prints the results.
+     *
+     * @param file an edit trace
+     * @throws IOException if the trace could not be read
+     */
+    public void run(File file) throws IOException {
+        final List<Change> changes = new ArrayList<Change>();
+        final String text;
+        final CodeOutlineEditTrace.Reader reader
+                = new CodeOutlineEditTrace.Reader(new FileInputStream(file));
+        try {
+            text = reader.getText();
+            while (reader.next()) {
+                changes.add(new Change(reader.getTime(), reader.getOffset(),
+                        reader.getOldText(), reader.getNewText()));
+            }
+        } finally {
+            reader.close();
+        }
+
+        if (changes.isEmpty()) {
+            System.out.println(file + ": no changes");
+            return;
+        }
+
+        for (int i = 0; i < warmup; i++) replay(text, changes);
+        final Result result = replay(text, changes);
+        if (result == null) {
+            System.out.println(file + ": the trace does not match its text");
+            return;
+        }
+
+        print(file, changes, result);
+    }
+
+    /**
+     * Replays the given changes on a new document with the given text.
+     *
+     * @return the results, or <code>null</code> if a change did not apply to
+     *         the document
+     */
+    private Result replay(String text, List<Change> changes) {
+        final CodeOutlineFakeDocument document = new CodeOutlineFakeDocument(text, true);
+        final CodeOutlineFakeEditor editor = new CodeOutlineFakeEditor(document, width, height);
+        final Result result = new Result(changes.size());
+        final long thread = Thread.currentThread().getId();
+
+        // what measuring allocation itself allocates
+        final long overhead = -threads.getThreadAllocatedBytes(thread)
+                + threads.getThreadAllocatedBytes(thread);
+
+        for (int i = 0; i < changes.size(); i++) {
+            final Change change = changes.get(i);
+            final int oldLength = change.oldText.length();
+            final int end = change.offset + oldLength;
+            if (end > document.getTextLength() || !change.oldText.contentEquals(
+                    document.getCharsSequence().subSequence(change.offset, end))) {
+                return null;
+            }
+
+            editor.beforeChange(change.offset, oldLength);
+            document.replace(change.offset, oldLength, change.newText);
+
+            final long allocated = threads.getThreadAllocatedBytes(thread);
+            final long start = System.nanoTime();
+            final int path = editor.changed(change.offset, oldLength, change.newText.length());
+            result.latencies[i] = System.nanoTime() - start;
+            result.allocations[i] = Math.max(0,
+                    threads.getThreadAllocatedBytes(thread) - allocated - overhead);
+            result.paths[path]++;
+        }
+        return result;
+    }
+
+    private static void print(File file, List<Change> changes, Result result) {
+        final int n = changes.size();
+        final double seconds = changes.get(n - 1).time / 1e9;
+
+        long allocated = 0;
+        int allocating = 0;
+        for (long bytes : result.allocations) {
+            allocated += bytes;
+            if (bytes > 0) allocating++;
+        }
+
+        final long[] sorted = result.latencies.clone();
+        Arrays.sort(sorted);
+
+        System.out.println(file + ": " + n + " changes over "
+                + String.format("%.1f", seconds) + " s");
+        System.out.println(String.format("  latency   p50 %8.1f us   p99 %8.1f us   max %8.1f us",
+                sorted[percentile(n, 0.50)] / 1e3, sorted[percentile(n, 0.99)] / 1e3,
+                sorted[n - 1] / 1e3));
+        System.out.println(String.format("  allocated %d bytes, %.1f per change, %d of %d changes allocated",
+                allocated, (double) allocated / n, allocating, n));
+
+        final StringBuilder sb = new StringBuilder("  paths    ");
+        for (int path = 0; path < result.paths.length; path++) {
+            if (result.paths[path] == 0) continue;
+            sb.append(' ').append(CodeOutlineCanvas.getPathName(path))
+                    .append(' ').append(result.paths[path]);
+        }
+        System.out.println(sb);
+    }
+
+    private static int percentile(int n, double p) {
+        return Math.min(n - 1, (int) Math.ceil(p * n) - 1);
+    }
+}
@@ -0,0 +1,486 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline.bench;
+
+import net.kano.codeoutline.CodeOutlineBufferPool;
+import net.kano.codeoutline.CodeOutlineCanvas;
+import net.kano.codeoutline.CodeOutlineDamage;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Opens and closes projects and editors over and over, editing the documents
+ * in between, and checks that nothing outlives what it belongs to. The
+ * platform itself cannot be loaded here, so projects and outline panels are
+ * stand-ins which hold what the real ones hold:
+ * <ul>
+ * <li>an outline canvas drawing into a buffer from the shared
+ * {@link CodeOutlineBufferPool},</li>
+ * <li>a listener on a document, which like the IDE's documents outlives the
+ * projects it is opened in,</li>
+ * <li>a registration with a stand-in for the plugin's
+ * <code>CodeOutlineMemoryGovernor</code>,</li>
+ * <li>damage scheduled with a stand-in for the plugin's
+ * <code>CodeOutlineFrameClock</code>, painted now and then, and</li>
+ * <li>listeners on the shared preferences, which like the plugin's
+ * <code>CodeOutlinePrefs</code> keep them in a
+ * {@link PropertyChangeSupport}.</li>
+ * </ul>
+ * After every cycle, once all projects are closed,
+ * <ul>
+ * <li>no listeners may be left on the preferences or the documents,</li>
+ * <li>no outline may be left registered or scheduled to paint,</li>
+ * <li>no canvas may still be reachable, and</li>
+ * <li>every image still reachable must be an idle buffer in the pool.</li>
+ * </ul>
+ * The plugin runs the same checks on the real classes in the IDE when its
+ * last project is closed.
+ * The heap retained after a full collection, not counting the pool, must
+ * stay flat as well: it is compared between the first and the last cycles.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar net.kano.codeoutline.bench.CodeOutlineSoak
+ *     [-seed N] [-cycles N] [-projects N] [-editors N] [-edits N] [-heap-slack KB]
+ * </pre>
+ * The exit status is 1 if a check failed.
+ */
+public class CodeOutlineSoak {
+    private static final int DEFAULT_CYCLES = 200;
+    private static final int DEFAULT_PROJECTS = 3;
+    private static final int DEFAULT_EDITORS = 6;
+    private static final int DEFAULT_EDITS = 50;
+    /** How much the retained heap may grow, in kilobytes. */
+    private static final int DEFAULT_HEAP_SLACK = 2048;
+
+    /** Cycles run before the retained heap is first measured. */
+    private static final int WARMUP_CYCLES = 10;
+    /** The number of cycles over which the retained heap is measured. */
+    private static final int HEAP_WINDOW = 10;
+
+    /** The outline sizes of the tool window, as it is resized. */
+    private static final int[][] SIZES = {
+        { 200, 1000 }, { 150, 700 }, { 260, 1200 }, { 200, 400 },
+    };
+
+    private static final CodeOutlineCorpus[] DOCUMENTS = {
+        CodeOutlineCorpus.SHORT, CodeOutlineCorpus.MIXED, CodeOutlineCorpus.WIDE,
+    };
+
+    /** The application-wide preferences. */
+    private final PropertyChangeSupport prefs = new PropertyChangeSupport(this);
+    /** The application-wide pool of image buffers. */
+    private final CodeOutlineBufferPool bufferPool = new CodeOutlineBufferPool();
+    /** The documents of {@link #DOCUMENTS}, shared by every project. */
+    private final CodeOutlineFakeDocument[] documents
+            = new CodeOutlineFakeDocument[DOCUMENTS.length];
+    /** Like the memory governor's, the outlines accounted for. */
+    private final Set<Outline> registered = new LinkedHashSet<Outline>();
+    /** Like the frame clock's, the outlines with damage to paint. */
+    private final Set<Outline> pending = new LinkedHashSet<Outline>();
+    /** The configuration new buffers are created for. */
+    private final GraphicsConfiguration gc = new BufferedImage(1, 1,
+            BufferedImage.TYPE_INT_ARGB).createGraphics().getDeviceConfiguration();
+
+    private final Random random;
+    private final int editorsPerProject;
+    private final int editsPerEditor;
+
+    /** Every canvas created so far. */
+    private final List<WeakReference<CodeOutlineCanvas>> canvases
+            = new ArrayList<WeakReference<CodeOutlineCanvas>>();
+    /** Every image buffer handed out so far. */
+    private final List<WeakReference<BufferedImage>> images
+            = new ArrayList<WeakReference<BufferedImage>>();
+
+    /** A stand-in for the outline panel of one editor. */
+    private final class Outline {
+        private final CodeOutlineFakeEditor editor;
+        /** The areas to paint at the next frame. */
+        private final CodeOutlineDamage damage = new CodeOutlineDamage();
+
+        /** Like an outline image's, updates the outline for every change. */
+        private final CodeOutlineFakeDocument.Listener docListener
+                = new CodeOutlineFakeDocument.Listener() {
+            public void beforeChange(int offset, int oldLength) {
+                editor.beforeChange(offset, oldLength);
+            }
+
+            public void changed(int offset, int oldLength, int newLength) {
+                final int path = editor.changed(offset, oldLength, newLength);
+                if (path != CodeOutlineCanvas.PATH_SKIPPED) {
+                    damage.add(editor.getDirty());
+                    pending.add(Outline.this);
+                }
+            }
+        };
+
+        private final PropertyChangeListener hudListener = new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) { }
+        };
+        private final PropertyChangeListener highlightListener = new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) { }
+        };
+
+        Outline(CodeOutlineFakeDocument document, int width, int height) {
+            final BufferedImage img = bufferPool.acquire(gc, width, height);
+            track(img);
+
+            editor = new CodeOutlineFakeEditor(document, img, width, height);
+            canvases.add(new WeakReference<CodeOutlineCanvas>(editor.getCanvas()));
+
+            document.addListener(docListener);
+            registered.add(this);
+            prefs.addPropertyChangeListener("showHud", hudListener);
+            prefs.addPropertyChangeListener("highlightLine", highlightListener);
+        }
+
+        void edit(int edits) {
+            final CodeOutlineFakeDocument document = editor.getDocument();
+            for (int i = 0; i < edits; i++) {
+                final int len = document.getTextLength();
+                final int offset = random.nextInt(len + 1);
+                switch (random.nextInt(3)) {
+                case 0:
+                    document.replace(offset, 0, random.nextInt(6) == 0 ? "\n" : "x");
+                    break;
+                case 1:
+                    document.replace(offset, Math.min(1, len - offset), "");
+                    break;
+                default:
+                    document.replace(offset, Math.min(random.nextInt(80), len - offset),
+                            "int x = 0;\n");
+                    break;
+                }
+            }
+        }
+
+        /** Like an outline panel's, paints the damage at a frame. */
+        void paintDamage() {
+            damage.clear();
+        }
+
+        void dispose() {
+            pending.remove(this);
+            damage.clear();
+            editor.getDocument().removeListener(docListener);
+            registered.remove(this);
+            prefs.removePropertyChangeListener("highlightLine", highlightListener);
+            prefs.removePropertyChangeListener("showHud", hudListener);
+
+            final CodeOutlineCanvas canvas = editor.getCanvas();
+            bufferPool.release(canvas.getImage());
+            canvas.setImage(null);
+        }
+    }
+
+    /** A stand-in for a project with some editors open. */
+    private final class Project {
+        private final List<Outline> outlines = new ArrayList<Outline>();
+
+        /** Like the tool window's, reopens the outlines for another renderer. */
+        private final PropertyChangeListener rendererListener = new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) { }
+        };
+
+        Project() {
+            prefs.addPropertyChangeListener("renderer", rendererListener);
+        }
+
+        void openEditor() {
+            final int[] size = SIZES[random.nextInt(SIZES.length)];
+            final CodeOutlineFakeDocument document = documents[random.nextInt(documents.length)];
+            outlines.add(new Outline(document, size[0], size[1]));
+        }
+
+        void closeEditor() {
+            outlines.remove(random.nextInt(outlines.size())).dispose();
+        }
+
+        void work() {
+            for (int i = 0; i < editorsPerProject; i++) {
+                outlines.get(random.nextInt(outlines.size())).edit(editsPerEditor);
+                // some damage is painted, some is left for closing editors
+                if (random.nextBoolean()) frame();
+                closeEditor();
+                openEditor();
+            }
+        }
+
+        void close() {
+            for (Outline outline : outlines) {
+                outline.dispose();
+            }
+            outlines.clear();
+            prefs.removePropertyChangeListener("renderer", rendererListener);
+        }
+    }
+
+    private CodeOutlineSoak(long seed, int editorsPerProject, int editsPerEditor) {
+        this.random = new Random(seed);
+        this.editorsPerProject = editorsPerProject;
+        this.editsPerEditor = editsPerEditor;
+        for (int i = 0; i < DOCUMENTS.length; i++) {
+            documents[i] = new CodeOutlineFakeDocument(DOCUMENTS[i].getText(), true);
+        }
+    }
+
+    /**
+     * Paints the damage of every scheduled outline, like the frame clock.
+     */
+    private void frame() {
+        for (Outline outline : pending) {
+            outline.paintDamage();
+        }
+        pending.clear();
+    }
+
+    public static void main(String[] args) {
+        long seed = 1;
+        int cycles = DEFAULT_CYCLES;
+        int projects = DEFAULT_PROJECTS;
+        int editors = DEFAULT_EDITORS;
+        int edits = DEFAULT_EDITS;
+        int heapSlack = DEFAULT_HEAP_SLACK;
+
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                final String value = args[i + 1];
+                if (args[i].equals("-seed")) seed = Long.parseLong(value);
+                else if (args[i].equals("-cycles")) cycles = Integer.parseInt(value);
+                else if (args[i].equals("-projects")) projects = Integer.parseInt(value);
+                else if (args[i].equals("-editors")) editors = Integer.parseInt(value);
+                else if (args[i].equals("-edits")) edits = Integer.parseInt(value);
+                else if (args[i].equals("-heap-slack")) heapSlack = Integer.parseInt(value);
+                else throw new IllegalArgumentException(args[i]);
+            }
+        } catch (RuntimeException e) {
+            usage();
+            return;
+        }
+        if (cycles < WARMUP_CYCLES + 2 * HEAP_WINDOW || projects < 1 || editors < 1
+                || edits < 0 || heapSlack < 0) {
+            usage();
+            return;
+        }
+
+        System.setProperty("java.awt.headless", "true");
+
+        final CodeOutlineSoak soak = new CodeOutlineSoak(seed, editors, edits);
+        if (!soak.run(cycles, projects, heapSlack * 1024L)) System.exit(1);
+    }
+
+    private static void usage() {
+        System.err.println("usage: CodeOutlineSoak [-seed N] [-cycles N] [-projects N]"
+                + " [-editors N] [-edits N] [-heap-slack KB]");
+        System.err.println("       at least " + (WARMUP_CYCLES + 2 * HEAP_WINDOW) + " cycles");
+        System.exit(2);
+    }
+
+    /**
+     * Runs the given number of cycles, printing the state after some of them.
+     *
+     * @return whether all checks passed
+     */
+    private boolean run(int cycles, int projectCount, long heapSlack) {
+        final long[] retained = new long[cycles];
+        final List<Project> projects = new ArrayList<Project>();
+        for (int cycle = 0; cycle < cycles; cycle++) {
+            // nobody listens to the documents between cycles, so they can be
+            // reset without telling anyone, keeping them from drifting away
+            // from their corpus over many cycles
+            for (int i = 0; i < documents.length; i++) {
+                documents[i].setText(DOCUMENTS[i].getText());
+            }
+            for (int i = 0; i < projectCount; i++) {
+                final Project project = new Project();
+                for (int j = 0; j < editorsPerProject; j++) {
+                    project.openEditor();
+                }
+                projects.add(project);
+            }
+            for (Project project : projects) {
+                project.work();
+            }
+            for (Project project : projects) {
+                project.close();
+            }
+            projects.clear();
+
+            final int listeners = prefs.getPropertyChangeListeners().length;
+            int docListeners = 0;
+            for (CodeOutlineFakeDocument document : documents) {
+                docListeners += document.getListenerCount();
+            }
+            final int liveCanvases = collect();
+            final long strayBytes = getLiveImageBytes() - bufferPool.getBytes();
+            retained[cycle] = getRetainedHeap() - bufferPool.getBytes();
+
+            if (cycle % 20 == 0 || cycle == cycles - 1) {
+                System.out.println("cycle " + cycle
+                        + ": retained " + retained[cycle] / 1024 + " KB"
+                        + ", pool " + bufferPool.getBytes() / 1024 + " KB"
+                        + ", listeners " + listeners
+                        + ", document listeners " + docListeners
+                        + ", registered " + registered.size()
+                        + ", scheduled " + pending.size()
+                        + ", canvases " + liveCanvases);
+            }
+            if (listeners != 0) {
+                System.out.println("FAIL: " + listeners + " preference listeners"
+                        + " left after cycle " + cycle);
+                return false;
+            }
+            if (docListeners != 0) {
+                System.out.println("FAIL: " + docListeners + " document listeners"
+                        + " left after cycle " + cycle);
+                return false;
+            }
+            if (!registered.isEmpty()) {
+                System.out.println("FAIL: " + registered.size() + " outlines still"
+                        + " registered after cycle " + cycle);
+                return false;
+            }
+            if (!pending.isEmpty()) {
+                System.out.println("FAIL: " + pending.size() + " outlines still"
+                        + " scheduled to paint after cycle " + cycle);
+                return false;
+            }
+            if (liveCanvases != 0) {
+                System.out.println("FAIL: " + liveCanvases + " canvases still reachable"
+                        + " after cycle " + cycle);
+                return false;
+            }
+            if (strayBytes != 0) {
+                System.out.println("FAIL: " + strayBytes / 1024 + " KB of images outside"
+                        + " the buffer pool still reachable after cycle " + cycle);
+                return false;
+            }
+        }
+
+        final long before = min(retained, WARMUP_CYCLES, HEAP_WINDOW);
+        final long after = min(retained, cycles - HEAP_WINDOW, HEAP_WINDOW);
+        System.out.println("retained heap " + before / 1024 + " KB after warmup, "
+                + after / 1024 + " KB at the end");
+        if (after - before > heapSlack) {
+            System.out.println("FAIL: retained heap grew by " + (after - before) / 1024
+                    + " KB, more than " + heapSlack / 1024 + " KB");
+            return false;
+        }
+        System.out.println(cycles + " cycles passed");
+        return true;
+    }
+
+    /**
+     * Collects garbage until every canvas is unreachable, or for a few
+     * rounds at most, and forgets the references which were cleared.
+     *
+     * @return the number of canvases still reachable
+     */
+    private int collect() {
+        int live = 0;
+        for (int round = 0; round < 5; round++) {
+            System.gc();
+            live = prune(canvases);
+            if (live == 0) break;
+
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        prune(images);
+        return live;
+    }
+
+    private static <E> int prune(List<WeakReference<E>> refs) {
+        for (Iterator<WeakReference<E>> it = refs.iterator(); it.hasNext();) {
+            if (it.next().get() == null) it.remove();
+        }
+        return refs.size();
+    }
+
+    /**
+     * Remembers the given image buffer, unless the pool handed it out before.
+     */
+    private void track(BufferedImage img) {
+        for (WeakReference<BufferedImage> ref : images) {
+            if (ref.get() == img) return;
+        }
+        images.add(new WeakReference<BufferedImage>(img));
+    }
+
+    /**
+     * Returns the number of bytes held by the image buffers still reachable.
+     */
+    private long getLiveImageBytes() {
+        long bytes = 0;
+        for (WeakReference<BufferedImage> ref : images) {
+            final BufferedImage img = ref.get();
+            if (img != null) bytes += 4L * img.getWidth() * img.getHeight();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the heap in use after a full collection.
+     */
+    private static long getRetainedHeap() {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static long min(long[] values, int from, int count) {
+        long min = Long.MAX_VALUE;
+        for (int i = from; i < from + count; i++) {
+            min = Math.min(min, values[i]);
+        }
+        return min;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A small pool of outline image buffers, so that resizing the tool window
+ * doesn't allocate a new buffer for every size it passes through. Buffer sizes
+ * are rounded up to size classes, which makes buffers of similar sizes
+ * interchangeable.
+ */
+public class CodeOutlineBufferPool {
+    /** How many pixels of resizing a buffer allows before it is too small. */
+    private static final int SLACK = 40;
+    /** Buffer dimensions are rounded up to a multiple of this. */
+    private static final int SIZE_CLASS = 64;
+    /** The maximum number of idle buffers kept. */
+    private static final int MAX_BUFFERS = 4;
+
+    /** The idle buffers, least recently released first. */
+    private final List<BufferedImage> buffers = new ArrayList<BufferedImage>();
+
+    /** The number of bytes held by the idle buffers. */
+    private long bytes = 0;
+
+    /**
+     * Returns a cleared, translucent buffer at least as large as the given
+     * dimensions plus some slack for resizing.
+     *
+     * @param gc the graphics configuration to create new buffers for
+     * @param width the minimum width of the buffer
+     * @param height the minimum height of the buffer
+     * @return a buffer
+     */
+    public BufferedImage acquire(GraphicsConfiguration gc, int width, int height) {
+        final int w = getSizeClass(width + SLACK);
+        final int h = getSizeClass(height + SLACK);
+
+        BufferedImage img = null;
+        synchronized (this) {
+            for (int i = buffers.size() - 1; i >= 0; i--) {
+                final BufferedImage buffer = buffers.get(i);
+                if (buffer.getWidth() == w && buffer.getHeight() == h) {
+                    img = buffers.remove(i);
+                    bytes -= getBytes(img);
+                    break;
+                }
+            }
+        }
+
+        if (img == null) {
+            return gc.createCompatibleImage(w, h, Transparency.TRANSLUCENT);
+        }
+
+        final Graphics2D g = img.createGraphics();
+        try {
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, w, h);
+        } finally {
+            g.dispose();
+        }
+        return img;
+    }
+
+    /**
+     * Returns the given buffer to the pool. The least recently released buffer
+     * is flushed if the pool is full.
+     *
+     * @param img a buffer which is no longer used, or <code>null</code>
+     */
+    public synchronized void release(BufferedImage img) {
+        if (img == null) return;
+
+        if (buffers.size() >= MAX_BUFFERS) {
+            final BufferedImage eldest = buffers.remove(0);
+            bytes -= getBytes(eldest);
+            eldest.flush();
+        }
+
+        buffers.add(img);
+        bytes += getBytes(img);
+    }
+
+    /**
+     * Flushes least recently released buffers until the pool holds no more
+     * than the given number of bytes.
+     *
+     * @param maxBytes the maximum number of bytes to keep
+     */
+    public synchronized void trimTo(long maxBytes) {
+        while (!buffers.isEmpty() && bytes > maxBytes) {
+            final BufferedImage eldest = buffers.remove(0);
+            bytes -= getBytes(eldest);
+            eldest.flush();
+        }
+    }
+
+    /**
+     * Returns the number of bytes held by the idle buffers.
+     *
+     * @return the size of this pool in bytes
+     */
+    public synchronized long getBytes() { return bytes; }
+
+    private static int getSizeClass(int size) {
+        return (size + SIZE_CLASS - 1) / SIZE_CLASS * SIZE_CLASS;
+    }
+
+    private static long getBytes(BufferedImage img) {
+        return 4L * img.getWidth() * img.getHeight();
+    }
+}
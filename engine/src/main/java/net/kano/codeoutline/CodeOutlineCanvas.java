@@ -0,0 +1,713 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+
+/**
+ * The pixels of a code outline, and the logic keeping them in sync with a
+ * {@link CodeOutlineText} as it changes. This class is part of the outline
+ * engine, which does not depend on the IDE: the plugin's
+ * <code>CodeOutlineImage</code> wraps it for an editor, while benchmarks and
+ * other headless tools drive it directly. It is not thread safe.
+ * <br><br>
+ * Once the image and its size are set, updating and painting allocate
+ * nothing: pixels are written straight to the image's data buffer, rows are
+ * moved through reused buffers, and positions are passed around {@linkplain
+ * #pack packed} into a <code>long</code>.
+ */
+public final class CodeOutlineCanvas {
+    /** An RGB color mask for a completely transparent white. */
+    public static final int COLORMASK_TRANSPARENT = 0x00FFFFFF;
+
+    /** The render path of an update which did not need to render anything. */
+    public static final int PATH_SKIPPED = 0;
+    /** The render path of an update which re-rendered the whole image. */
+    public static final int PATH_FULL = 1;
+    /** The render path of an update which patched the changed lines. */
+    public static final int PATH_INCREMENTAL = 2;
+    /** The render path of newly visible columns after widening. */
+    public static final int PATH_COLUMNS = 3;
+    /** The render path of newly visible rows after growing taller. */
+    public static final int PATH_ROWS = 4;
+    /** The render path of a paint of part of a panel. */
+    public static final int PATH_CLIP = 5;
+
+    private static final String[] PATH_NAMES = {
+        "skipped", "full", "incremental", "columns", "rows", "clip",
+    };
+
+    /** The text being outlined. */
+    private final CodeOutlineText text;
+
+    /** The backing image. */
+    private BufferedImage img = null;
+    /**
+     * A line of background pixels as wide as the visible area, as stored in
+     * the image.
+     */
+    private int[] emptyLine = new int[0];
+    /** A buffer for the end of a changed line, once needed. */
+    private Object lineData = null;
+    /** A buffer for rows being moved, once needed. */
+    private Object rowData = null;
+    /** The RGB color of the background. */
+    private int background = COLORMASK_TRANSPARENT;
+    /** The background color, for clearing with a graphics device. */
+    private Color backgroundColor = new Color(COLORMASK_TRANSPARENT, true);
+
+    /** The width of the visible area of the image. */
+    private int width = 0;
+    /** The height of the visible area of the image. */
+    private int height = 0;
+    /** Vertical scale factor */
+    private double scale = 1.0;
+
+    /**
+     * Creates a new canvas for the given text. It has no backing image until
+     * one is {@linkplain #setImage set}.
+     *
+     * @param text the text to outline
+     */
+    public CodeOutlineCanvas(CodeOutlineText text) {
+        this.text = text;
+    }
+
+    /**
+     * Returns the name of the given render path.
+     *
+     * @param path a render path, such as {@link #PATH_FULL}
+     * @return the path's name
+     */
+    public static String getPathName(int path) {
+        return path >= 0 && path < PATH_NAMES.length ? PATH_NAMES[path] : "unknown";
+    }
+
+    public CodeOutlineText getText() { return text; }
+
+    public BufferedImage getImage() { return img; }
+
+    /**
+     * Sets the backing image. It must be at least as large as the visible
+     * area. Its contents are left as they are.
+     *
+     * @param img the new backing image, or <code>null</code>
+     */
+    public void setImage(BufferedImage img) {
+        this.img = img;
+        lineData = null;
+        rowData = null;
+        updateEmptyLine();
+    }
+
+    public int getWidth() { return width; }
+
+    public int getHeight() { return height; }
+
+    /**
+     * Sets the size of the visible area. Nothing is rendered; see {@link
+     * #renderColumns} and {@link #renderRows} for rendering newly exposed
+     * areas.
+     *
+     * @param width the width of the visible area
+     * @param height the height of the visible area
+     */
+    public void setSize(int width, int height) {
+        if (this.width != width) {
+            lineData = null;
+            rowData = null;
+        }
+        this.width = width;
+        this.height = height;
+
+        if (emptyLine.length != width) updateEmptyLine();
+    }
+
+    public double getScale() { return scale; }
+
+    /**
+     * Sets the vertical scale factor at which the backing image was rendered,
+     * such as after it was restored from a cache.
+     *
+     * @param scale a vertical scale factor
+     */
+    public void setScale(double scale) { this.scale = scale; }
+
+    public int getBackground() { return background; }
+
+    /**
+     * Sets the color to which cleared areas are filled. The image is not
+     * re-rendered.
+     *
+     * @param rgb an ARGB color
+     */
+    public void setBackground(int rgb) {
+        if (rgb == background) return;
+
+        background = rgb;
+        backgroundColor = new Color(rgb, true);
+        updateEmptyLine();
+    }
+
+    /**
+     * Regenerates the line of background pixels for the current width, image
+     * and background.
+     */
+    private void updateEmptyLine() {
+        final boolean premultiplied = img != null && img.isAlphaPremultiplied();
+        emptyLine = genColoredLine(width, CodeOutlineRenderer.getPixel(background, premultiplied));
+    }
+
+    /**
+     * Packs the given line and column into a single value, so positions can
+     * be passed around without allocating.
+     *
+     * @param line a line number
+     * @param column a column number
+     * @return the packed position
+     */
+    public static long pack(int line, int column) {
+        return ((long) line << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the line of the given {@linkplain #pack packed} position.
+     *
+     * @param position a packed position
+     * @return the position's line
+     */
+    public static int getPackedLine(long position) {
+        return (int) (position >> 32);
+    }
+
+    /**
+     * Returns the column of the given {@linkplain #pack packed} position.
+     *
+     * @param position a packed position
+     * @return the position's column
+     */
+    public static int getPackedColumn(long position) {
+        return (int) position;
+    }
+
+    /**
+     * Returns the line and column of the given offset, as rendered.
+     *
+     * @param offset an offset into the text
+     * @return the {@linkplain #pack packed} position of the offset
+     */
+    public long getPosition(int offset) {
+        final int line = text.getLineNumber(offset);
+        return pack(line, offset - text.getLineStartOffset(line));
+    }
+
+    /**
+     * Clears the visible area and renders the whole text, recomputing the
+     * scale factor first.
+     */
+    public void refresh() {
+        if (img == null) return;
+
+        clearArea(0, 0, width, height);
+
+        scale = CodeOutlineRenderer.getScaleFactor(height, text.getLineCount());
+        render(0, text.getTextLength(), 0, 0);
+    }
+
+    /**
+     * Updates the image to reflect the given change, which has already been
+     * made to the text. The position of the end of the replaced text has to be
+     * computed before the change, because there is no way to tell where it was
+     * afterwards.
+     * <br><br>
+     * For example, if the user has the text:
+     * <pre>
+     * int x = 2;
+     * int y = 4;
+     * </pre>
+     * and selects the entire first line and presses enter, the old end offset
+     * of the change is 10. Before the change, offset 10 was at line 0, column
+     * 10; afterwards, it is at line 1, column 9.
+     * <br><br>
+     * Changes which cannot be applied incrementally return {@link #PATH_FULL}
+     * without touching the image; the caller then has to {@link #refresh}.
+     *
+     * @param offset the offset at which text was replaced
+     * @param oldLength the length of the replaced text
+     * @param newLength the length of the new text
+     * @param oldEnd the {@linkplain #getPosition position} of the end of the
+     *        replaced text, before the change
+     * @param dirty a rectangle set to the area which changed
+     * @return the render path taken, one of {@link #PATH_SKIPPED}, {@link
+     *         #PATH_FULL} and {@link #PATH_INCREMENTAL}
+     */
+    public int update(int offset, int oldLength, int newLength, long oldEnd,
+            Rectangle dirty) {
+        dirty.setBounds(0, 0, 0, 0);
+        if (img == null) return PATH_SKIPPED;
+
+        final int oldEndLine = getPackedLine(oldEnd);
+        final int oldEndColumn = getPackedColumn(oldEnd);
+
+        // compute the positions of the old and new offsets
+        final int startLine = text.getLineNumber(offset);
+        final int startColumn = offset - text.getLineStartOffset(startLine);
+        final int newEndOffset = offset + newLength;
+        final int newEndLine = text.getLineNumber(newEndOffset);
+        final int newEndColumn = newEndOffset - text.getLineStartOffset(newEndLine);
+
+        // if the modifications were all past the bottom border, there's nothing
+        // to do
+        if (getScaledLine(startLine, scale) >= height) return PATH_SKIPPED;
+
+        // the number of affected lines
+        int affected = Math.abs(newEndLine - oldEndLine) + 1;
+        // whether the new text spans lines, even if the line count is the same
+        boolean multiline = newEndLine != startLine;
+
+        // if the modifications were all past the right border, there's nothing
+        // to do
+        if (!multiline && oldEndLine == startLine && startColumn >= width) return PATH_SKIPPED;
+
+        // the number of lines added (a negative value means lines were removed)
+        int addedLines = newEndLine - oldEndLine;
+
+        /*
+         * If lines count changed, then redraw all the stuff if there are:
+         * 1. deleted lines
+         * 2. scale factor changed (scaling)
+         */
+        if (addedLines != 0) {
+            if (addedLines < 0 || scale < 1.0
+                    || CodeOutlineRenderer.getScaleFactor(height, text.getLineCount()) < 1.0) {
+                dirty.setBounds(0, 0, width, height);
+                return PATH_FULL;
+            }
+        }
+
+        // below full scale a row may hold several lines, so its pixels cannot
+        // be moved about as if they all belonged to the changed line
+        if (scale < 1.0) {
+            final int firstRow = getScaledLine(startLine, scale);
+            final int lastRow = Math.min(height - 1, getScaledLine(newEndLine, scale));
+            renderWholeRows(firstRow, lastRow);
+            dirty.setBounds(0, firstRow, width, lastRow - firstRow + 1);
+            return PATH_INCREMENTAL;
+        }
+
+        /*
+
+        This method does the following things:
+        1. Copy the (unmodified) rest of the line at the end of the modified
+           region
+        2. Move all unmodified lines, below the changed region, up or down, if
+           lines were added or removed
+        3. Clear data at end of line on first line of changed region
+        4. Clear middle lines, if any, in the changed region
+        5. Clear data at beginning of line on last line of changed region
+        6. Paste the data copied in #1 at the new end of region
+        7. Re-render any data which was not copied in #6 because of insufficient
+           window width
+        8. Render the new data in the changed region
+
+        */
+
+        // how much of the end of the last line needs to be cleared
+        int needsFilling = Math.max(0, width - newEndColumn);
+        // how much of the end of the old last line needs to be copied to the
+        // new end of the last line (this takes into account how much is there,
+        // and how much space there is at the end of the new line, so no unused
+        // data is copied)
+        int charsToCopy = Math.min(needsFilling, Math.max(0, width - oldEndColumn));
+
+        // copy the (unmodified) rest of the line at the end of the modified
+        // region
+        WritableRaster raster = img.getRaster();
+        Object endOfLine = null;
+        int oldEndRow = getScaledLine(oldEndLine, scale);
+        int newEndRow = getScaledLine(newEndLine, scale);
+        if (oldEndRow < height && newEndRow < height && charsToCopy > 0) {
+            if (lineData == null) lineData = raster.getDataElements(0, 0, width, 1, null);
+            endOfLine = raster.getDataElements(oldEndColumn, oldEndRow, charsToCopy, 1, lineData);
+        }
+
+        // move unaffected lines (all lines after the lines modified).
+        // this never modifies any of the lines containing the modified text.
+        if (addedLines != 0) {
+            int ol = getScaledLine(oldEndLine + 1, scale);
+            int nl = getScaledLine(newEndLine + 1, scale);
+
+            int fh = height - ol;
+            int th = height - nl;
+            if (fh > 0 && th > 0) moveRows(raster, ol, nl, Math.min(fh, th));
+        }
+
+        // 1. clear first line chars at end of line
+        // 2. clear middle lines
+        // 3. clear last line chars at beginning of line
+        // 4. copy line data at old end to new end
+        // 5. re-render any data which was not copied because of insufficient
+        //    window width
+
+        // 1.
+        int toFill = 0;
+        if (multiline) {
+            toFill = width - Math.min(width, startColumn);
+        } else if (startColumn < newEndColumn) {
+            toFill = Math.min(width - startColumn, newEndColumn - startColumn);
+        }
+
+        if (toFill > 0) {
+            raster.setDataElements(startColumn, getScaledLine(startLine, scale), toFill, 1, emptyLine);
+        }
+
+        if (newEndLine != startLine) {
+            // 2.
+            int last = getScaledLine(Math.min(newEndLine, height-1) - 1, scale);
+
+            for (int i = getScaledLine(startLine + 1, scale); i <= last; i++) {
+                raster.setDataElements(0, i, width, 1, emptyLine);
+            }
+
+            // 3.
+            if (newEndRow < height) {
+                int toFillEnd = Math.min(width, newEndColumn);
+                raster.setDataElements(0, newEndRow, toFillEnd, 1, emptyLine);
+            }
+        }
+
+        // 4.
+        if (endOfLine != null) {
+            // copy old end of line data to new end of line
+            raster.setDataElements(newEndColumn, newEndRow, charsToCopy, 1, endOfLine);
+
+            // clear the rest of the line, if necessary
+            int diff = needsFilling - charsToCopy;
+            if (diff > 0) {
+                raster.setDataElements(newEndColumn + charsToCopy, newEndRow, diff, 1, emptyLine);
+            }
+        }
+
+        // 5.
+        int minCharsToCopy = Math.max(0, charsToCopy);
+        int missing = needsFilling - minCharsToCopy;
+        if (missing > 0) {
+            int toClear = newEndColumn + minCharsToCopy;
+            raster.setDataElements(toClear, newEndRow, width - toClear, 1, emptyLine);
+            // re-render the last line, since we don't know what the data on
+            // that line was, since it was past our right margin
+            int renderWidth = renderRestOfLine(newEndOffset + minCharsToCopy);
+            int clearx = newEndColumn + minCharsToCopy + renderWidth;
+            if (clearx < width) {
+                raster.setDataElements(clearx, newEndRow, width-clearx, 1, emptyLine);
+            }
+        }
+
+        // render the new text
+        render(offset, newEndOffset, startLine, startColumn);
+
+        // the changed region
+        getRepaintRect(offset, offset + Math.max(newLength, oldLength), dirty);
+        if (affected > 1) {
+            dirty.height = height - dirty.y;
+        }
+        return PATH_INCREMENTAL;
+    }
+
+    /**
+     * Sets the given rectangle to the area of the image which should be
+     * repainted to update the given text region.
+     *
+     * @param startOff the offset at which the text region starts
+     * @param endOff the offset at which the text region ends
+     * @param rect the rectangle to set
+     * @return the given rectangle
+     */
+    public Rectangle getRepaintRect(int startOff, int endOff, Rectangle rect) {
+        final int len = text.getTextLength();
+
+        if (startOff > len) {
+            // this region is past the end of the file, so we repaint the entire
+            // area below the end of the file
+            final int eof = text.getLineNumber(len);
+            return setRectangle(rect, 0, eof, width + 1, height - eof + 1);
+        }
+
+        final int startLine = text.getLineNumber(startOff);
+        if (endOff > len) {
+            // the region spans the end of the file
+            return setRectangle(rect, 0, startLine, width + 1, height - startLine + 1);
+        }
+
+        final int endLine = text.getLineNumber(endOff);
+        if (startLine == endLine) {
+            // we only need to repaint the characters modified on that line
+            final int startColumn = startOff - text.getLineStartOffset(startLine);
+            return setRectangle(rect, startColumn, startLine, width + 1, endLine + 1);
+        } else {
+            // we should repaint the entire lines that changed
+            return setRectangle(rect, 0, startLine, width + 1, endLine + 1);
+        }
+    }
+
+    /**
+     * Sets the given rectangle to the area of the image showing the given
+     * lines and columns, such as the part of the text visible in an editor.
+     *
+     * @param firstLine the first line of the area
+     * @param firstColumn the first column of the area
+     * @param lastLine the last line of the area
+     * @param endColumn the column just past the area
+     * @param rect the rectangle to set
+     * @return the given rectangle
+     */
+    public Rectangle getAreaRect(int firstLine, int firstColumn, int lastLine,
+            int endColumn, Rectangle rect) {
+        final int w = Math.min(width - firstColumn, endColumn - firstColumn) - 1;
+        return setRectangle(rect, firstColumn, firstLine, w, lastLine - firstLine);
+    }
+
+    /**
+     * Sets the given rectangle to the given area, in lines, scaled to image
+     * rows.
+     */
+    private Rectangle setRectangle(Rectangle rect, int x, int line, int width, int lines) {
+        rect.setBounds(x, getScaledLine(line, scale), width, getScaledLine(lines, scale));
+        return rect;
+    }
+
+    /**
+     * Clears the given area of the backing image to the background.
+     *
+     * @param x the left edge of the area
+     * @param y the top edge of the area
+     * @param width the width of the area
+     * @param height the height of the area
+     */
+    public void clearArea(int x, int y, int width, int height) {
+        if (img == null || width <= 0 || height <= 0) return;
+
+        if (x >= 0 && x + width <= emptyLine.length
+                && CodeOutlineRenderer.getPixelBuffer(img) != null) {
+            final WritableRaster raster = img.getRaster();
+            for (int row = y; row < y + height; row++) {
+                raster.setDataElements(x, row, width, 1, emptyLine);
+            }
+            return;
+        }
+
+        final Graphics2D g = img.createGraphics();
+        try {
+            g.setBackground(backgroundColor);
+            g.clearRect(x, y, width, height);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Renders the given columns and everything to the right of them, on every
+     * visible line. The area must have been cleared already.
+     *
+     * @param fromCol the first column to render
+     */
+    public void renderColumns(int fromCol) {
+        if (img == null) return;
+
+        final int lines = text.getLineCount();
+        for (int line = 0; line < lines; line++) {
+            if (getScaledLine(line, scale) >= height) break;
+
+            final int start = text.getLineStartOffset(line);
+            final int end = text.getLineEndOffset(line);
+            if (end - start <= fromCol) continue;
+
+            render(start + fromCol, end, line, fromCol);
+        }
+    }
+
+    /**
+     * Renders every line which is drawn at or below the given row of the
+     * image. The area must have been cleared already.
+     *
+     * @param fromY the first image row to render
+     * @return the first line rendered, or <code>-1</code> if there was none
+     */
+    public int renderRows(int fromY) {
+        if (img == null) return -1;
+
+        final int lines = text.getLineCount();
+
+        int line = getOutScaledLine(fromY, scale);
+        while (line < lines && getScaledLine(line, scale) < fromY) line++;
+        if (line >= lines) return -1;
+
+        render(text.getLineStartOffset(line), text.getTextLength(), line, 0);
+        return line;
+    }
+
+    /**
+     * Clears the given rows and renders every line drawn on them.
+     *
+     * @param firstRow the first row to render
+     * @param lastRow the last row to render
+     */
+    private void renderWholeRows(int firstRow, int lastRow) {
+        clearArea(0, firstRow, width, lastRow - firstRow + 1);
+
+        final int firstLine = getFirstLineOnRow(firstRow);
+        final int lastLine = Math.min(text.getLineCount(), getFirstLineOnRow(lastRow + 1)) - 1;
+        if (firstLine > lastLine) return;
+
+        render(text.getLineStartOffset(firstLine), text.getLineEndOffset(lastLine),
+                firstLine, 0);
+    }
+
+    /**
+     * Returns the first line drawn on or below the given image row.
+     *
+     * @param row an image row
+     * @return a line number, which may be past the last line
+     */
+    private int getFirstLineOnRow(int row) {
+        int line = getOutScaledLine(row, scale);
+        while (line > 0 && getScaledLine(line - 1, scale) >= row) line--;
+        while (getScaledLine(line, scale) < row) line++;
+        return line;
+    }
+
+    /**
+     * Renders the characters between the given offsets starting at the given
+     * position.
+     *
+     * @param startOff the offset of the first character to render
+     * @param endOff the offset just past the last character to render
+     * @param line the line of the first character
+     * @param col the column of the first character
+     */
+    private void render(int startOff, int endOff, int line, int col) {
+        CodeOutlineRenderer.render(text, startOff, endOff, line, col,
+                img, width, height, scale);
+    }
+
+    /**
+     * Renders the characters at the given offset until the first newline
+     * character is reached or until the right edge of the image is reached
+     * and no more characters can be rendered.
+     *
+     * @param startOff the offset at which to start rendering
+     * @return how many characters were rendered, not including the newline
+     */
+    private int renderRestOfLine(int startOff) {
+        if (startOff >= text.getTextLength()) return 0;
+
+        final int line = text.getLineNumber(startOff);
+        return CodeOutlineRenderer.renderRestOfLine(text, startOff, line,
+                startOff - text.getLineStartOffset(line), img, width, scale);
+    }
+
+    /**
+     * Paints the given area of this canvas to the given graphics device. Only
+     * the part of the image inside the area is copied, so repainting a few
+     * changed lines costs as much as those lines rather than the whole canvas.
+     *
+     * @param g a graphics device
+     * @param area the area to paint, in canvas coordinates
+     */
+    public void paint(Graphics2D g, Rectangle area) {
+        if (img == null) return;
+
+        final int x1 = Math.max(0, area.x);
+        final int y1 = Math.max(0, area.y);
+        final int x2 = Math.min(width, area.x + area.width);
+        final int y2 = Math.min(height, area.y + area.height);
+        if (x1 >= x2 || y1 >= y2) return;
+
+        g.drawImage(img, x1, y1, x2, y2, x1, y1, x2, y2, null);
+    }
+
+    private static int getScaledLine(int line, double scale) {
+        return CodeOutlineRenderer.getScaledLine(line, scale);
+    }
+
+    private static int getOutScaledLine(int line, double scale) {
+        return CodeOutlineRenderer.getOutScaledLine(line, scale);
+    }
+
+    /**
+     * Generates the data for a horizontal line of the given width containing
+     * pixels of the given color.
+     *
+     * @param width the width of the line to create
+     * @param color a color
+     * @return the data for the line
+     */
+    private static int[] genColoredLine(int width, int color) {
+        int[] emptyLine = new int[width];
+        for (int i = 0; i < emptyLine.length; i++) {
+            emptyLine[i] = color;
+        }
+        return emptyLine;
+    }
+
+    /**
+     * Moves the given number of rows of the image up or down, to start at
+     * the given row. The source and destination rows may overlap.
+     *
+     * @param raster the image's raster
+     * @param from the first row to move
+     * @param to the row to move the first row to
+     * @param rows the number of rows to move
+     */
+    private void moveRows(WritableRaster raster, int from, int to, int rows) {
+        if (rowData == null) rowData = raster.getDataElements(0, 0, width, 1, null);
+
+        if (to > from) {
+            // moving down, so start at the bottom not to overwrite rows
+            // before they are moved
+            for (int i = rows - 1; i >= 0; i--) {
+                raster.getDataElements(0, from + i, width, 1, rowData);
+                raster.setDataElements(0, to + i, width, 1, rowData);
+            }
+        } else {
+            for (int i = 0; i < rows; i++) {
+                raster.getDataElements(0, from + i, width, 1, rowData);
+                raster.setDataElements(0, to + i, width, 1, rowData);
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline;
+
+import java.awt.*;
+
+/**
+ * Collects the areas of an outline which need to be painted again, merged
+ * into a few regions which don't overlap. An area which overlaps a region, or
+ * lies close enough to one that painting the space between them costs
+ * nothing, is merged into it; once there are {@link #MAX_REGIONS} regions, a
+ * new area is merged into the region it grows the least. Adding areas does
+ * not allocate. It is not thread safe.
+ */
+public final class CodeOutlineDamage {
+    /** The most regions kept apart. */
+    public static final int MAX_REGIONS = 4;
+
+    /** The regions; only the first {@link #count} are used. */
+    private final Rectangle[] regions = new Rectangle[MAX_REGIONS];
+    /** The number of regions. */
+    private int count = 0;
+
+    /**
+     * Creates a new damage accumulator with nothing damaged.
+     */
+    public CodeOutlineDamage() {
+        for (int i = 0; i < regions.length; i++) regions[i] = new Rectangle();
+    }
+
+    /**
+     * Adds the given area to the damaged regions.
+     *
+     * @param area the damaged area
+     */
+    public void add(Rectangle area) {
+        add(area.x, area.y, area.width, area.height);
+    }
+
+    /**
+     * Adds the given area to the damaged regions.
+     *
+     * @param x the left edge of the damaged area
+     * @param y the top edge of the damaged area
+     * @param width the width of the damaged area
+     * @param height the height of the damaged area
+     */
+    public void add(int x, int y, int width, int height) {
+        if (width <= 0 || height <= 0) return;
+
+        // find the region which wastes the least area when grown to include
+        // the new one, preferring regions which the new one overlaps
+        int best = -1;
+        long bestWaste = Long.MAX_VALUE;
+        boolean overlaps = false;
+        for (int i = 0; i < count; i++) {
+            final boolean intersects = regions[i].intersects(x, y, width, height);
+            if (overlaps && !intersects) continue;
+
+            final long waste = getWaste(regions[i], x, y, width, height);
+            if (waste < bestWaste || (intersects && !overlaps)) {
+                best = i;
+                bestWaste = waste;
+                overlaps = intersects;
+            }
+        }
+
+        if (best == -1 || (!overlaps && bestWaste > 0 && count < MAX_REGIONS)) {
+            regions[count++].setBounds(x, y, width, height);
+            return;
+        }
+
+        final Rectangle region = regions[best];
+        region.add(x, y);
+        region.add(x + width, y + height);
+
+        // the grown region may now overlap others, which it takes over
+        for (int i = 0; i < count; i++) {
+            final Rectangle other = regions[i];
+            if (other == region || !other.intersects(region)) continue;
+
+            region.add(other.x, other.y);
+            region.add(other.x + other.width, other.y + other.height);
+            remove(i);
+            // start over, as the region grew again
+            i = -1;
+        }
+    }
+
+    /**
+     * Returns the area painted needlessly if the given region were grown to
+     * include the given area. It is negative if they overlap.
+     */
+    private static long getWaste(Rectangle region, int x, int y, int width, int height) {
+        final long x1 = Math.min(region.x, x);
+        final long y1 = Math.min(region.y, y);
+        final long x2 = Math.max(region.x + region.width, x + width);
+        final long y2 = Math.max(region.y + region.height, y + height);
+        return (x2 - x1) * (y2 - y1) - (long) region.width * region.height
+                - (long) width * height;
+    }
+
+    /**
+     * Removes the region at the given index, moving the last region into its
+     * place.
+     */
+    private void remove(int index) {
+        final Rectangle removed = regions[index];
+        regions[index] = regions[--count];
+        regions[count] = removed;
+    }
+
+    /**
+     * Returns whether nothing is damaged.
+     *
+     * @return whether there are no damaged regions
+     */
+    public boolean isEmpty() { return count == 0; }
+
+    /**
+     * Returns the number of damaged regions.
+     *
+     * @return the number of regions
+     */
+    public int getCount() { return count; }
+
+    /**
+     * Returns the damaged region with the given index. The rectangle is
+     * reused once this damage is cleared, so it should not be kept.
+     *
+     * @param index the index of a region, less than {@link #getCount()}
+     * @return the region
+     */
+    public Rectangle get(int index) {
+        if (index >= count) throw new IndexOutOfBoundsException(index + " >= " + count);
+        return regions[index];
+    }
+
+    /**
+     * Forgets all damaged regions.
+     */
+    public void clear() {
+        count = 0;
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline;
+
+import java.io.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A recording of the changes made to a document, to be replayed against the
+ * outline later without an IDE. A trace starts with the text of the document
+ * when recording started, followed by every change in order.
+ * <br><br>
+ * A trace is gzipped, and laid out as follows, in big-endian byte order:
+ * <pre>
+ * int     magic
+ * long    wall clock time at which recording started, in milliseconds
+ * string  initial text
+ * then for every change:
+ * byte    1
+ * varint  nanoseconds since the previous change
+ * varint  offset
+ * string  replaced text
+ * string  new text
+ * and finally:
+ * byte    0
+ * </pre>
+ * A string is its length as a varint, followed by its UTF-16 chars. A varint
+ * is stored seven bits at a time, least significant group first. A trace cut
+ * short, such as by a crash, can still be read up to its last whole change.
+ */
+public final class CodeOutlineEditTrace {
+    /** Identifies the trace format; change it whenever the format changes. */
+    private static final int MAGIC = 0x434F5431;
+
+    private static final int TAG_END = 0;
+    private static final int TAG_CHANGE = 1;
+
+    private CodeOutlineEditTrace() { }
+
+    /**
+     * Writes a trace.
+     */
+    public static final class Writer {
+        private final DataOutputStream out;
+        /** The time of the last change, from {@link System#nanoTime()}. */
+        private long lastTime;
+        /** The number of changes written. */
+        private int count = 0;
+
+        /**
+         * Starts a trace of a document with the given text.
+         *
+         * @param out the stream to write the trace to
+         * @param text the text of the document
+         * @throws IOException if the trace could not be written
+         */
+        public Writer(OutputStream out, CharSequence text) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(out)));
+            this.out.writeInt(MAGIC);
+            this.out.writeLong(System.currentTimeMillis());
+            writeString(this.out, text);
+            this.lastTime = System.nanoTime();
+        }
+
+        /**
+         * Records a change which was just made to the document.
+         *
+         * @param time the time of the change, from {@link System#nanoTime()}
+         * @param offset the offset at which text was replaced
+         * @param oldText the replaced text
+         * @param newText the new text
+         * @throws IOException if the change could not be written
+         */
+        public void change(long time, int offset, CharSequence oldText,
+                CharSequence newText) throws IOException {
+            out.writeByte(TAG_CHANGE);
+            writeVarLong(out, Math.max(0, time - lastTime));
+            writeVarLong(out, offset);
+            writeString(out, oldText);
+            writeString(out, newText);
+
+            lastTime = time;
+            count++;
+        }
+
+        /**
+         * Returns the number of changes written so far.
+         *
+         * @return the number of changes
+         */
+        public int getCount() { return count; }
+
+        /**
+         * Ends the trace and closes the underlying stream.
+         *
+         * @throws IOException if the trace could not be written
+         */
+        public void close() throws IOException {
+            try {
+                out.writeByte(TAG_END);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Reads a trace, one change at a time.
+     */
+    public static final class Reader {
+        private final DataInputStream in;
+        private final long startTime;
+        private final String text;
+
+        private long time = 0;
+        private int offset;
+        private String oldText;
+        private String newText;
+
+        /**
+         * Starts reading the given trace.
+         *
+         * @param in the stream to read the trace from
+         * @throws IOException if the stream does not hold a trace
+         */
+        public Reader(InputStream in) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in)));
+            if (this.in.readInt() != MAGIC) {
+                this.in.close();
+                throw new IOException("not a code outline edit trace");
+            }
+            this.startTime = this.in.readLong();
+            this.text = readString(this.in);
+        }
+
+        /**
+         * Returns the wall clock time at which recording started.
+         *
+         * @return the start time in milliseconds
+         */
+        public long getStartTime() { return startTime; }
+
+        /**
+         * Returns the text of the document when recording started.
+         *
+         * @return the initial text
+         */
+        public String getText() { return text; }
+
+        /**
+         * Moves to the next change.
+         *
+         * @return whether there was another change
+         * @throws IOException if the trace could not be read
+         */
+        public boolean next() throws IOException {
+            try {
+                if (in.readUnsignedByte() != TAG_CHANGE) return false;
+
+                time += readVarLong(in);
+                offset = (int) readVarLong(in);
+                oldText = readString(in);
+                newText = readString(in);
+                return true;
+            } catch (EOFException e) {
+                // the trace was not closed
+                return false;
+            }
+        }
+
+        /**
+         * Returns when the current change was made.
+         *
+         * @return the nanoseconds since the first change
+         */
+        public long getTime() { return time; }
+
+        public int getOffset() { return offset; }
+
+        public String getOldText() { return oldText; }
+
+        public String getNewText() { return newText; }
+
+        public void close() throws IOException { in.close(); }
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("malformed varint");
+    }
+
+    private static void writeString(DataOutputStream out, CharSequence s) throws IOException {
+        final int len = s.length();
+        writeVarLong(out, len);
+        for (int i = 0; i < len; i++) out.writeChar(s.charAt(i));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final int len = (int) readVarLong(in);
+        final char[] chars = new char[len];
+        for (int i = 0; i < len; i++) chars[i] = in.readChar();
+        return new String(chars);
+    }
+}
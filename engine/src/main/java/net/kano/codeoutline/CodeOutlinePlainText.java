@@ -0,0 +1,105 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline;
+
+/**
+ * A code outline text backed by a plain character sequence and drawn in a
+ * single color. It needs no IDE, and is used to render outlines headlessly.
+ */
+public class CodeOutlinePlainText implements CodeOutlineText {
+    /** The characters of this text. */
+    private final CharSequence chars;
+    /** Colors all characters in the same color. */
+    private final ColorIterator colors;
+    /** The start offset of every line. */
+    private final int[] lineStarts;
+    /** The number of lines. */
+    private final int lineCount;
+
+    /**
+     * Creates a new plain text for the given characters.
+     *
+     * @param chars the characters of the text
+     * @param color the RGB color in which the text is drawn
+     */
+    public CodeOutlinePlainText(CharSequence chars, int color) {
+        this.chars = chars;
+        this.colors = CodeOutlineRenderer.getUniformColors(color);
+
+        final int len = chars.length();
+        int[] starts = new int[Math.max(16, len / 32)];
+        int count = 1;
+        for (int i = 0; i < len; i++) {
+            if (chars.charAt(i) != '\n') continue;
+
+            if (count == starts.length) {
+                final int[] grown = new int[starts.length * 2];
+                System.arraycopy(starts, 0, grown, 0, count);
+                starts = grown;
+            }
+            starts[count++] = i + 1;
+        }
+        this.lineStarts = starts;
+        this.lineCount = count;
+    }
+
+    public CharSequence getCharsSequence() { return chars; }
+
+    public int getTextLength() { return chars.length(); }
+
+    public int getLineCount() { return lineCount; }
+
+    public int getLineStartOffset(int line) { return lineStarts[line]; }
+
+    public int getLineEndOffset(int line) {
+        return line + 1 < lineCount ? lineStarts[line + 1] - 1 : chars.length();
+    }
+
+    public int getLineNumber(int offset) {
+        int lo = 0, hi = lineCount - 1;
+        while (lo < hi) {
+            final int mid = (lo + hi + 1) >>> 1;
+            if (lineStarts[mid] <= offset) lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    public long getModificationStamp() { return 0; }
+
+    public ColorIterator createColorIterator(int offset) {
+        return colors;
+    }
+}
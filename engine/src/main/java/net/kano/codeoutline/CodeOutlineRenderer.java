@@ -0,0 +1,251 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Renders text to outline images, one pixel per character. This is the render
+ * core shared by the code outline images in the IDE and by the headless
+ * <code>CodeOutlineExport</code>, so like the rest of the outline engine it
+ * must not depend on the IDE.
+ */
+public final class CodeOutlineRenderer {
+    private CodeOutlineRenderer() { }
+
+    /**
+     * Returns the image row on which the given line is drawn.
+     *
+     * @param line a line number
+     * @param scale the vertical scale factor
+     * @return the image row of the given line
+     */
+    public static int getScaledLine(int line, double scale) {
+        return (int)Math.floor(scale * line);
+    }
+
+    /**
+     * Returns the line drawn on the given image row.
+     *
+     * @param line an image row
+     * @param scale the vertical scale factor
+     * @return the line drawn on the given row
+     */
+    public static int getOutScaledLine(int line, double scale) {
+        return (int)(1.0 * line / scale);
+    }
+
+    /**
+     * Returns the vertical scale factor at which the given number of lines
+     * fits into an image of the given height. Lines are never stretched.
+     *
+     * @param height the height of the image
+     * @param lines the number of lines
+     * @return a vertical scale factor no greater than 1
+     */
+    public static double getScaleFactor(int height, int lines) {
+        double scale = 1.0 * height / lines;
+        if (scale > 1.0) scale = 1000.0;
+        else scale = Math.floor(scale * 1000.0) - 1.0;
+        return scale / 1000.0;
+    }
+
+    /**
+     * Returns an iterator which draws all characters in the given color.
+     *
+     * @param color an RGB color
+     * @return a color iterator with a single run
+     */
+    public static CodeOutlineText.ColorIterator getUniformColors(final int color) {
+        return new CodeOutlineText.ColorIterator() {
+            public boolean atEnd() { return true; }
+
+            public int getEnd() { return Integer.MAX_VALUE; }
+
+            public void advance() { }
+
+            public int getColor() { return color; }
+        };
+    }
+
+    /**
+     * Renders the characters of the given text between the given offsets to
+     * the given image, starting at the given line and column. Rendering stops
+     * at the bottom edge of the image; characters past its right edge are
+     * skipped.
+     *
+     * @param text the text to render
+     * @param startOff the offset of the first character to render
+     * @param endOff the offset just past the last character to render
+     * @param line the line of the first character
+     * @param col the column of the first character
+     * @param img the image to render to
+     * @param width the width of the image area to render to
+     * @param height the height of the image area to render to
+     * @param scale the vertical scale factor
+     */
+    public static void render(CodeOutlineText text, int startOff, int endOff,
+            int line, int col, BufferedImage img, int width, int height,
+            double scale) {
+        final CharSequence chars = text.getCharsSequence();
+        final CodeOutlineText.ColorIterator colors = text.createColorIterator(startOff);
+        final DataBuffer pixels = getPixelBuffer(img);
+
+        for (int i = startOff; i < endOff; i++) {
+            final char ch = chars.charAt(i);
+
+            if (ch == '\n') {
+                line++;
+
+                if (getScaledLine(line, scale) >= height) break;
+                col = 0;
+            } else {
+                if (col >= width) continue;
+
+                // whitespace is never drawn
+                if (!Character.isWhitespace(ch)) {
+                    while (!colors.atEnd() && i >= colors.getEnd()) {
+                        colors.advance();
+                    }
+                    setPixel(img, pixels, col, getScaledLine(line, scale), colors.getColor());
+                }
+
+                col++;
+            }
+        }
+    }
+
+    /**
+     * Renders the characters of the given text starting at the given offset
+     * until the end of the line or the right edge of the image is reached.
+     *
+     * @param text the text to render
+     * @param startOff the offset of the first character to render
+     * @param line the line of the first character
+     * @param col the column of the first character
+     * @param img the image to render to
+     * @param width the width of the image area to render to
+     * @param scale the vertical scale factor
+     * @return how many characters were rendered, not including the newline
+     */
+    public static int renderRestOfLine(CodeOutlineText text, int startOff,
+            int line, int col, BufferedImage img, int width, double scale) {
+        final CharSequence chars = text.getCharsSequence();
+        final int endOff = text.getTextLength();
+        if (startOff >= endOff) return 0;
+
+        final CodeOutlineText.ColorIterator colors = text.createColorIterator(startOff);
+        final DataBuffer pixels = getPixelBuffer(img);
+        final int y = getScaledLine(line, scale);
+
+        int painted = 0;
+        for (int i = startOff; i < endOff; i++) {
+            final char ch = chars.charAt(i);
+
+            if (ch == '\n' || col >= width) break;
+
+            if (!Character.isWhitespace(ch)) {
+                while (!colors.atEnd() && i >= colors.getEnd()) {
+                    colors.advance();
+                }
+                setPixel(img, pixels, col, y, colors.getColor());
+            }
+            painted++;
+            col++;
+        }
+        return painted;
+    }
+
+    /**
+     * Returns the data buffer of the given image if it holds one int per
+     * pixel, row after row, so that pixels can be written to it directly.
+     * Going through {@link BufferedImage#setRGB(int, int, int)} instead
+     * allocates for every pixel.
+     *
+     * @param img an image
+     * @return the image's pixels, or <code>null</code> if they have to be
+     *         written through the image's color model
+     */
+    static DataBuffer getPixelBuffer(BufferedImage img) {
+        switch (img.getType()) {
+        case BufferedImage.TYPE_INT_RGB:
+        case BufferedImage.TYPE_INT_ARGB:
+        case BufferedImage.TYPE_INT_ARGB_PRE:
+            break;
+        default:
+            return null;
+        }
+
+        final WritableRaster raster = img.getRaster();
+        final SampleModel model = raster.getSampleModel();
+        if (raster.getParent() != null || raster.getDataBuffer().getOffset() != 0
+                || !(model instanceof SinglePixelPackedSampleModel)
+                || ((SinglePixelPackedSampleModel) model).getScanlineStride() != img.getWidth()) {
+            return null;
+        }
+        return raster.getDataBuffer();
+    }
+
+    /**
+     * Returns the value stored in an image of the given kind for the given
+     * color, if the image holds one int per pixel.
+     *
+     * @param rgb an ARGB color
+     * @param premultiplied whether the image's colors are premultiplied by
+     *        their alpha
+     * @return the pixel value
+     */
+    static int getPixel(int rgb, boolean premultiplied) {
+        final int a = rgb >>> 24;
+        if (!premultiplied || a == 0xFF) return rgb;
+
+        final int r = (((rgb >> 16) & 0xFF) * a + 127) / 255;
+        final int g = (((rgb >> 8) & 0xFF) * a + 127) / 255;
+        final int b = ((rgb & 0xFF) * a + 127) / 255;
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    private static void setPixel(BufferedImage img, DataBuffer pixels, int x, int y, int rgb) {
+        if (pixels == null) {
+            img.setRGB(x, y, rgb);
+        } else {
+            pixels.setElem(y * img.getWidth() + x, getPixel(rgb, img.isAlphaPremultiplied()));
+        }
+    }
+}
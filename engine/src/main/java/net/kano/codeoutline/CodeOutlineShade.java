@@ -0,0 +1,197 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * A copy of an outline image with a translucent color blended in, such as the
+ * shading of the part of the text visible in an editor. Painting part of the
+ * shaded outline is then an opaque copy instead of an alpha composite, so
+ * moving the shaded area around costs no more than painting the outline
+ * itself. Only the parts of the outline which changed since the shade was
+ * last painted are blended again. It is not thread safe.
+ */
+public final class CodeOutlineShade {
+    /** The blended pixels, at least as large as the outline. */
+    private BufferedImage img = null;
+    /** The width of the outline. */
+    private int width = 0;
+    /** The height of the outline. */
+    private int height = 0;
+
+    /** The RGB color blended in. */
+    private int color = 0;
+    /** How much of the color is blended in, from 0 to 255. */
+    private int alpha = 0;
+
+    /** The area which no longer matches the outline; empty if none. */
+    private final Rectangle damage = new Rectangle();
+    /** A row of pixels, reused while blending. */
+    private int[] row = new int[0];
+
+    /**
+     * Sets the color blended into the outline. Everything is blended again if
+     * it changed.
+     *
+     * @param rgb an RGB color
+     * @param alpha how much of the color to blend in, from 0 to 255
+     */
+    public void setColor(int rgb, int alpha) {
+        rgb &= 0xFFFFFF;
+        if (rgb == color && alpha == this.alpha) return;
+
+        color = rgb;
+        this.alpha = alpha;
+        invalidate();
+    }
+
+    /**
+     * Marks the whole outline as changed.
+     */
+    public void invalidate() {
+        damage.setBounds(0, 0, width, height);
+    }
+
+    /**
+     * Marks the given area of the outline as changed.
+     *
+     * @param area an area of the outline
+     */
+    public void invalidate(Rectangle area) {
+        if (area.isEmpty()) return;
+
+        if (damage.isEmpty()) damage.setBounds(area);
+        else damage.add(area);
+    }
+
+    /**
+     * Paints the given area of the shaded outline, blending any changed parts
+     * of the outline first.
+     *
+     * @param g the graphics device to paint to
+     * @param outline the outline image
+     * @param width the width of the outline, which may be smaller than the
+     *        outline image
+     * @param height the height of the outline
+     * @param area the area to paint, in outline coordinates
+     */
+    public void paint(Graphics2D g, BufferedImage outline, int width, int height,
+            Rectangle area) {
+        if (width <= 0 || height <= 0) return;
+
+        if (width != this.width || height != this.height) {
+            if (img == null || img.getWidth() < width || img.getHeight() < height) {
+                img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            }
+            this.width = width;
+            this.height = height;
+            invalidate();
+        }
+
+        final int x1 = Math.max(0, area.x);
+        final int y1 = Math.max(0, area.y);
+        final int x2 = Math.min(width, area.x + area.width);
+        final int y2 = Math.min(height, area.y + area.height);
+        if (x1 >= x2 || y1 >= y2) return;
+
+        // changes outside the painted area can wait, as long as the damage
+        // doesn't have to grow to cover them
+        if (damage.intersects(x1, y1, x2 - x1, y2 - y1)) blend(outline);
+
+        g.drawImage(img, x1, y1, x2, y2, x1, y1, x2, y2, null);
+    }
+
+    /**
+     * Blends the color into the changed area of the outline.
+     *
+     * @param outline the outline image
+     */
+    private void blend(BufferedImage outline) {
+        final int x = Math.max(0, damage.x);
+        final int y = Math.max(0, damage.y);
+        final int w = Math.min(width, damage.x + damage.width) - x;
+        final int h = Math.min(height, damage.y + damage.height) - y;
+        damage.setBounds(0, 0, 0, 0);
+        if (w <= 0 || h <= 0) return;
+
+        if (row.length < w) row = new int[w];
+
+        // the outline's own pixels can be read as they are unless they are
+        // premultiplied; the shade is opaque, so their alpha doesn't matter
+        final boolean direct = CodeOutlineRenderer.getPixelBuffer(outline) != null
+                && !outline.isAlphaPremultiplied();
+
+        final int inverse = 255 - alpha;
+        final int r = ((color >> 16) & 0xFF) * alpha + 127;
+        final int gr = ((color >> 8) & 0xFF) * alpha + 127;
+        final int b = (color & 0xFF) * alpha + 127;
+
+        final int[] row = this.row;
+        for (int j = y; j < y + h; j++) {
+            if (direct) outline.getRaster().getDataElements(x, j, w, 1, row);
+            else outline.getRGB(x, j, w, 1, row, 0, w);
+
+            for (int i = 0; i < w; i++) {
+                final int p = row[i];
+                row[i] = ((r + ((p >> 16) & 0xFF) * inverse) / 255) << 16
+                        | ((gr + ((p >> 8) & 0xFF) * inverse) / 255) << 8
+                        | (b + (p & 0xFF) * inverse) / 255;
+            }
+            img.getRaster().setDataElements(x, j, w, 1, row);
+        }
+    }
+
+    /**
+     * Returns the number of bytes held by the blended pixels.
+     *
+     * @return the size of the shade, in bytes
+     */
+    public long getBytes() {
+        return img == null ? 0 : 4L * img.getWidth() * img.getHeight();
+    }
+
+    /**
+     * Releases the blended pixels. They are blended again the next time the
+     * shade is painted.
+     */
+    public void dispose() {
+        img = null;
+        width = 0;
+        height = 0;
+        damage.setBounds(0, 0, 0, 0);
+    }
+}
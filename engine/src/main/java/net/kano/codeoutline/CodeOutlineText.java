@@ -0,0 +1,137 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline;
+
+/**
+ * The text of a document being outlined, as seen by {@link
+ * CodeOutlineRenderer}. This interface does not depend on the IDE, so that
+ * outlines can also be rendered without a running IDE.
+ */
+public interface CodeOutlineText {
+    /**
+     * Returns the characters of this text.
+     *
+     * @return the text's characters
+     */
+    CharSequence getCharsSequence();
+
+    /**
+     * Returns the number of characters in this text.
+     *
+     * @return the length of this text
+     */
+    int getTextLength();
+
+    /**
+     * Returns the number of lines in this text.
+     *
+     * @return the number of lines
+     */
+    int getLineCount();
+
+    /**
+     * Returns the offset of the first character of the given line.
+     *
+     * @param line a line number
+     * @return the offset at which the given line starts
+     */
+    int getLineStartOffset(int line);
+
+    /**
+     * Returns the offset of the end of the given line, not including the
+     * newline character.
+     *
+     * @param line a line number
+     * @return the offset at which the given line ends
+     */
+    int getLineEndOffset(int line);
+
+    /**
+     * Returns the number of the line containing the given offset.
+     *
+     * @param offset an offset into this text
+     * @return the line containing the given offset
+     */
+    int getLineNumber(int offset);
+
+    /**
+     * Returns a number which changes every time this text changes.
+     *
+     * @return this text's modification stamp
+     */
+    long getModificationStamp();
+
+    /**
+     * Returns the colors in which the characters of this text are drawn,
+     * starting at the run of characters containing the given offset. Only one
+     * iterator over a text is used at a time, so implementations may return
+     * the same iterator every time, reset to the given offset.
+     *
+     * @param offset the offset at which rendering starts
+     * @return an iterator over runs of equally colored characters
+     */
+    ColorIterator createColorIterator(int offset);
+
+    /**
+     * Iterates over consecutive runs of characters drawn in the same color.
+     */
+    interface ColorIterator {
+        /**
+         * Returns whether there are no more runs.
+         *
+         * @return whether the end of the text was reached
+         */
+        boolean atEnd();
+
+        /**
+         * Returns the offset just past the current run.
+         *
+         * @return the end offset of the current run
+         */
+        int getEnd();
+
+        /**
+         * Moves to the next run.
+         */
+        void advance();
+
+        /**
+         * Returns the color of the current run.
+         *
+         * @return an RGB color
+         */
+        int getColor();
+    }
+}
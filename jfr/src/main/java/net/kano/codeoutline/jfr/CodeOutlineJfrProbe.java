@@ -0,0 +1,112 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline.jfr;
+
+import jdk.jfr.EventType;
+import net.kano.codeoutline.CodeOutlineCanvas;
+import net.kano.codeoutline.CodeOutlineProbe;
+
+/**
+ * Traces the code outline pipeline with Java Flight Recorder events. While no
+ * recording has the events enabled, {@link #begin} returns <code>null</code>
+ * without allocating anything.
+ */
+public class CodeOutlineJfrProbe extends CodeOutlineProbe {
+    private static final EventType DOCUMENT_UPDATE_TYPE
+            = EventType.getEventType(CodeOutlineDocumentUpdateEvent.class);
+    private static final EventType FULL_RENDER_TYPE
+            = EventType.getEventType(CodeOutlineFullRenderEvent.class);
+    private static final EventType INCREMENTAL_RENDER_TYPE
+            = EventType.getEventType(CodeOutlineIncrementalRenderEvent.class);
+    private static final EventType PAINT_TYPE
+            = EventType.getEventType(CodeOutlinePaintEvent.class);
+    private static final EventType SCALE_CHANGE_TYPE
+            = EventType.getEventType(CodeOutlineScaleChangeEvent.class);
+
+    public Object begin(int type) {
+        final CodeOutlineEvent event;
+        switch (type) {
+            case DOCUMENT_UPDATE:
+                if (!DOCUMENT_UPDATE_TYPE.isEnabled()) return null;
+                event = new CodeOutlineDocumentUpdateEvent();
+                break;
+            case FULL_RENDER:
+                if (!FULL_RENDER_TYPE.isEnabled()) return null;
+                event = new CodeOutlineFullRenderEvent();
+                break;
+            case INCREMENTAL_RENDER:
+                if (!INCREMENTAL_RENDER_TYPE.isEnabled()) return null;
+                event = new CodeOutlineIncrementalRenderEvent();
+                break;
+            case PAINT:
+                if (!PAINT_TYPE.isEnabled()) return null;
+                event = new CodeOutlinePaintEvent();
+                break;
+            default:
+                return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    public void end(Object token, int documentLength, int lineCount,
+            int firstLine, int lastLine, long pixelArea, int renderPath) {
+        if (token == null) return;
+
+        final CodeOutlineEvent event = (CodeOutlineEvent) token;
+        event.end();
+        if (!event.shouldCommit()) return;
+
+        event.documentLength = documentLength;
+        event.lineCount = lineCount;
+        event.firstLine = firstLine;
+        event.lastLine = lastLine;
+        event.pixelArea = pixelArea;
+        event.renderPath = CodeOutlineCanvas.getPathName(renderPath);
+        event.commit();
+    }
+
+    public void scaleChanged(double oldScale, double newScale, int lineCount,
+            int height) {
+        if (!SCALE_CHANGE_TYPE.isEnabled()) return;
+
+        final CodeOutlineScaleChangeEvent event = new CodeOutlineScaleChangeEvent();
+        event.oldScale = oldScale;
+        event.newScale = newScale;
+        event.lineCount = lineCount;
+        event.height = height;
+        event.commit();
+    }
+}
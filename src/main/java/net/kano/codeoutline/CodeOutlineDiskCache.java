@@ -0,0 +1,268 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Stores rendered outlines under the IDE system directory, so that outlines
+ * can be shown right away after the IDE is restarted. Every source file has at
+ * most one entry, which is only used for the same panel size and appearance,
+ * such as the color scheme and renderer.
+ * Since document modification stamps don't survive a restart, an entry also
+ * records a hash of the text it was rendered from; it is up to the caller to
+ * validate it against the document.
+ * <br><br>
+ * An entry is laid out as follows, in big-endian byte order:
+ * <pre>
+ * int     magic
+ * int     path length, followed by the path chars
+ * int     width
+ * int     height
+ * int     appearance hash
+ * double  scale
+ * long    content hash
+ * int     encoded data length, followed by the encoded data
+ * </pre>
+ */
+public class CodeOutlineDiskCache {
+    private static final Logger logger = Logger.getInstance(CodeOutlineDiskCache.class.getName());
+
+    /** Identifies the entry format; change it whenever the format changes. */
+    private static final int MAGIC = 0x434F4C31;
+
+    /** The maximum number of entries kept on disk. */
+    private static final int MAX_ENTRIES = 512;
+
+    /** The directory holding the entries, or <code>null</code> if unusable. */
+    private final File dir;
+
+    /**
+     * Creates a new disk cache in the IDE system directory.
+     */
+    public CodeOutlineDiskCache() {
+        final File dir = new File(PathManager.getSystemPath(), "codeoutline");
+        this.dir = dir.isDirectory() || dir.mkdirs() ? dir : null;
+    }
+
+    /**
+     * A stored outline, along with the hash of the text it was rendered from.
+     */
+    public static final class Entry {
+        /** The hash of the text the outline was rendered from. */
+        private final long contentHash;
+        /** The outline image. */
+        private final CodeOutlineImageCache.Entry image;
+
+        private Entry(long contentHash, CodeOutlineImageCache.Entry image) {
+            this.contentHash = contentHash;
+            this.image = image;
+        }
+
+        public long getContentHash() { return contentHash; }
+
+        public CodeOutlineImageCache.Entry getImage() { return image; }
+    }
+
+    /**
+     * Computes the hash stored with an entry for the given text.
+     *
+     * @param chars some text
+     * @return a 64-bit FNV-1a hash of the given text
+     */
+    public static long hash(CharSequence chars) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0, len = chars.length(); i < len; i++) {
+            h ^= chars.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * Reads the stored outline of the given file, if there is one for the given
+     * size and appearance.
+     *
+     * @param path the path of the source file
+     * @param width the visible width of the outline
+     * @param height the visible height of the outline
+     * @param appearance what the outline's look depends on besides the text,
+     *        such as the editor color scheme
+     * @return the stored outline, or <code>null</code>
+     */
+    public Entry read(String path, int width, int height, String appearance) {
+        final File file = getFile(path);
+        if (file == null || !file.isFile()) return null;
+
+        try {
+            final FileInputStream in = new FileInputStream(file);
+            try {
+                final FileChannel channel = in.getChannel();
+                final MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+                if (buf.getInt() != MAGIC) return null;
+
+                final int pathLength = buf.getInt();
+                if (pathLength != path.length()) return null;
+                for (int i = 0; i < pathLength; i++) {
+                    if (buf.getChar() != path.charAt(i)) return null;
+                }
+
+                if (buf.getInt() != width || buf.getInt() != height) return null;
+                if (buf.getInt() != appearance.hashCode()) return null;
+
+                final double scale = buf.getDouble();
+                final long contentHash = buf.getLong();
+
+                // the file may be corrupt, and decoding happens while painting
+                final IntBuffer ints = buf.asIntBuffer();
+                final int length = ints.get();
+                if (length < 0 || length > ints.remaining()) {
+                    throw new IOException("bad data length " + length + " in " + file);
+                }
+                final int[] data = new int[length];
+                ints.get(data);
+                if (!CodeOutlineImageCache.Entry.isValid(width, height, data)) {
+                    throw new IOException("bad outline data in " + file);
+                }
+
+                return new Entry(contentHash, new CodeOutlineImageCache.Entry(0, width, height, scale, data));
+            } finally {
+                in.close();
+            }
+        } catch (Exception e) {
+            // a truncated or otherwise broken entry is simply dropped
+            logger.debug(e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the given outline of the given file, replacing any previous entry.
+     *
+     * @param path the path of the source file
+     * @param appearance what the outline's look depends on besides the text,
+     *        such as the editor color scheme
+     * @param contentHash the {@linkplain #hash hash} of the outlined text
+     * @param image the outline image
+     */
+    public void write(String path, String appearance, long contentHash,
+            CodeOutlineImageCache.Entry image) {
+        final File file = getFile(path);
+        if (file == null) return;
+
+        final int[] data = image.getData();
+        final ByteBuffer buf = ByteBuffer.allocate(4 + 4 + 2 * path.length()
+                + 4 + 4 + 4 + 8 + 8 + 4 + 4 * data.length);
+
+        buf.putInt(MAGIC);
+        buf.putInt(path.length());
+        for (int i = 0; i < path.length(); i++) buf.putChar(path.charAt(i));
+        buf.putInt(image.getWidth());
+        buf.putInt(image.getHeight());
+        buf.putInt(appearance.hashCode());
+        buf.putDouble(image.getScale());
+        buf.putLong(contentHash);
+        buf.putInt(data.length);
+        buf.asIntBuffer().put(data);
+        buf.position(buf.capacity());
+        buf.flip();
+
+        // write to a temporary file first, so readers never see half an entry
+        final File tmp = new File(dir, file.getName() + ".tmp");
+        try {
+            final FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                final FileChannel channel = out.getChannel();
+                while (buf.hasRemaining()) channel.write(buf);
+            } finally {
+                out.close();
+            }
+
+            file.delete();
+            if (!tmp.renameTo(file)) tmp.delete();
+        } catch (IOException e) {
+            logger.debug(e);
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Deletes the oldest entries, so that no more than the maximum number of
+     * entries are kept.
+     */
+    public void trim() {
+        if (dir == null) return;
+
+        final File[] files = dir.listFiles();
+        if (files == null || files.length <= MAX_ENTRIES) return;
+
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File a, File b) {
+                final long ma = a.lastModified();
+                final long mb = b.lastModified();
+                return ma < mb ? -1 : (ma == mb ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length - MAX_ENTRIES; i++) {
+            files[i].delete();
+        }
+    }
+
+    /**
+     * Returns the file holding the entry for the given source file.
+     *
+     * @param path the path of the source file
+     * @return the entry file, or <code>null</code> if the cache is unusable
+     */
+    private File getFile(String path) {
+        if (dir == null) return null;
+
+        return new File(dir, Long.toHexString(hash(path)) + ".outline");
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.ex.EditorEx;
+import com.intellij.openapi.editor.highlighter.HighlighterIterator;
+
+import java.awt.*;
+
+/**
+ * The text of an editor's document, colored with the editor's syntax
+ * highlighter or in the default foreground color of its color scheme.
+ */
+public class CodeOutlineEditorText implements CodeOutlineText {
+    /** The editor whose text this is. */
+    private final Editor editor;
+    /** The editor's document. */
+    private final Document document;
+    /** Whether the text is colored with the editor's syntax highlighter. */
+    private final boolean highlighted;
+    /** The colors of the text when it is not highlighted, once needed. */
+    private ColorIterator uniformColors = null;
+
+    /**
+     * Creates a new code outline text for the given editor.
+     *
+     * @param editor an editor
+     * @param highlighted whether to color the text with the editor's syntax
+     *        highlighter, if it has one
+     */
+    public CodeOutlineEditorText(Editor editor, boolean highlighted) {
+        this.editor = editor;
+        this.document = editor.getDocument();
+        this.highlighted = highlighted && editor instanceof EditorEx;
+    }
+
+    public CharSequence getCharsSequence() { return document.getCharsSequence(); }
+
+    public int getTextLength() { return document.getTextLength(); }
+
+    public int getLineCount() { return document.getLineCount(); }
+
+    public int getLineStartOffset(int line) { return document.getLineStartOffset(line); }
+
+    public int getLineEndOffset(int line) { return document.getLineEndOffset(line); }
+
+    public int getLineNumber(int offset) { return document.getLineNumber(offset); }
+
+    public long getModificationStamp() { return document.getModificationStamp(); }
+
+    public ColorIterator createColorIterator(int offset) {
+        final Color foreground = editor.getColorsScheme().getDefaultForeground();
+        if (!highlighted) {
+            // the color scheme may have changed since the last time
+            final int rgb = foreground.getRGB();
+            if (uniformColors == null || uniformColors.getColor() != rgb) {
+                uniformColors = CodeOutlineRenderer.getUniformColors(rgb);
+            }
+            return uniformColors;
+        }
+
+        final HighlighterIterator hi = ((EditorEx) editor).getHighlighter().createIterator(offset);
+        return new ColorIterator() {
+            public boolean atEnd() { return hi.atEnd(); }
+
+            public int getEnd() { return hi.getEnd(); }
+
+            public void advance() { hi.advance(); }
+
+            public int getColor() {
+                final Color color = hi.atEnd() ? null : hi.getTextAttributes().getForegroundColor();
+                return (color != null ? color : foreground).getRGB();
+            }
+        };
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Renders PNG outlines of every text file in a directory tree, without a
+ * running IDE. Files are rendered in parallel with the same render core as
+ * the outlines in the editor, and the throughput is reported when done, so
+ * this also serves as a benchmark of the render core:
+ * <pre>
+ * java -cp CodeOutlinePlugin.jar net.kano.codeoutline.CodeOutlineExport
+ *     [-width N] [-height N] [-threads N] [-ext java,xml] source-dir output-dir
+ * </pre>
+ * Each outline is written to the output directory under the file's relative
+ * path with <code>.png</code> appended. Binary files are skipped.
+ */
+public class CodeOutlineExport {
+    /** The default maximum width of an outline. */
+    private static final int DEFAULT_WIDTH = 200;
+    /** The default maximum height of an outline. */
+    private static final int DEFAULT_HEIGHT = 1000;
+    /** Files larger than this are skipped. */
+    private static final long MAX_FILE_SIZE = 64L << 20;
+    /** How many leading bytes are checked for a NUL byte to detect binaries. */
+    private static final int BINARY_CHECK_BYTES = 8000;
+
+    private static final int BACKGROUND = 0xFFFFFF;
+    private static final int FOREGROUND = 0x000000;
+
+    private final File sourceDir;
+    private final File outputDir;
+    private final int width;
+    private final int height;
+    /** The file extensions to render, or <code>null</code> to render all. */
+    private final Set<String> extensions;
+
+    private final AtomicLong rendered = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /** Each thread renders to its own image and decodes with its own decoder. */
+    private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+        protected Worker initialValue() { return new Worker(); }
+    };
+
+    /**
+     * Creates a new exporter.
+     *
+     * @param sourceDir the directory tree to render
+     * @param outputDir the directory to write outlines to
+     * @param width the maximum width of an outline
+     * @param height the maximum height of an outline
+     * @param extensions the file extensions to render, or <code>null</code>
+     *        to render all text files
+     */
+    public CodeOutlineExport(File sourceDir, File outputDir, int width,
+            int height, Set<String> extensions) {
+        this.sourceDir = sourceDir;
+        this.outputDir = outputDir;
+        this.width = width;
+        this.height = height;
+        this.extensions = extensions;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int width = DEFAULT_WIDTH;
+        int height = DEFAULT_HEIGHT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Set<String> extensions = null;
+
+        int i = 0;
+        try {
+            for (; i < args.length && args[i].startsWith("-"); i += 2) {
+                final String value = args[i + 1];
+                if (args[i].equals("-width")) width = Integer.parseInt(value);
+                else if (args[i].equals("-height")) height = Integer.parseInt(value);
+                else if (args[i].equals("-threads")) threads = Integer.parseInt(value);
+                else if (args[i].equals("-ext")) extensions = new HashSet<String>(Arrays.asList(value.split(",")));
+                else throw new IllegalArgumentException(args[i]);
+            }
+        } catch (RuntimeException e) {
+            usage();
+            return;
+        }
+        if (args.length - i != 2 || width < 1 || height < 1 || threads < 1) {
+            usage();
+            return;
+        }
+
+        System.setProperty("java.awt.headless", "true");
+        // encode straight to the output files instead of via temporary files
+        ImageIO.setUseCache(false);
+
+        final CodeOutlineExport export = new CodeOutlineExport(new File(args[i]),
+                new File(args[i + 1]), width, height, extensions);
+        export.run(threads);
+    }
+
+    private static void usage() {
+        System.err.println("usage: CodeOutlineExport [-width N] [-height N] "
+                + "[-threads N] [-ext java,xml] source-dir output-dir");
+        System.exit(2);
+    }
+
+    /**
+     * Renders all files and prints the throughput.
+     *
+     * @param threads the number of threads to render with
+     */
+    public void run(int threads) throws InterruptedException {
+        final List<File> files = new ArrayList<File>();
+        collect(sourceDir, files);
+
+        final long start = System.nanoTime();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (final File file : files) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        export(file);
+                    } catch (Throwable t) {
+                        failed.incrementAndGet();
+                        System.err.println(file + ": " + t);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        final double mb = bytes.get() / (1024.0 * 1024.0);
+        System.out.println(String.format("rendered %d files (%.1f MB) in %.2f s "
+                + "on %d threads: %.1f files/s, %.2f MB/s; %d skipped, %d failed",
+                rendered.get(), mb, seconds, threads, rendered.get() / seconds,
+                mb / seconds, skipped.get(), failed.get()));
+    }
+
+    /**
+     * Adds all files in the given directory tree to the given list, skipping
+     * hidden files and directories.
+     */
+    private void collect(File dir, List<File> files) {
+        final File[] children = dir.listFiles();
+        if (children == null) return;
+
+        Arrays.sort(children);
+        for (File child : children) {
+            if (child.isHidden() || child.getName().startsWith(".")) continue;
+
+            if (child.isDirectory()) {
+                collect(child, files);
+            } else if (extensions == null || extensions.contains(getExtension(child))) {
+                files.add(child);
+            }
+        }
+    }
+
+    private static String getExtension(File file) {
+        final String name = file.getName();
+        final int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1);
+    }
+
+    /**
+     * Renders the outline of the given file and writes it to the output
+     * directory.
+     *
+     * @param file a file in the source directory tree
+     */
+    private void export(File file) throws IOException {
+        final long size = file.length();
+        if (size > MAX_FILE_SIZE) {
+            skipped.incrementAndGet();
+            return;
+        }
+
+        final Worker worker = workers.get();
+        final CharBuffer chars = worker.read(file);
+        if (chars == null) {
+            skipped.incrementAndGet();
+            return;
+        }
+
+        final CodeOutlineText text = new CodeOutlinePlainText(chars, FOREGROUND);
+        final int lines = text.getLineCount();
+        final double scale = CodeOutlineRenderer.getScaleFactor(height, lines);
+        final int imgHeight = Math.max(1, Math.min(height,
+                CodeOutlineRenderer.getScaledLine(lines, scale)));
+
+        final BufferedImage img = worker.image;
+        worker.clear(imgHeight);
+        CodeOutlineRenderer.render(text, 0, text.getTextLength(), 0, 0, img,
+                width, imgHeight, scale);
+
+        final File out = new File(outputDir, getRelativePath(file) + ".png");
+        final File dir = out.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("could not create " + dir);
+        }
+        worker.write(img.getSubimage(0, 0, width, imgHeight), out);
+
+        rendered.incrementAndGet();
+        bytes.addAndGet(size);
+    }
+
+    private String getRelativePath(File file) {
+        final String base = sourceDir.getAbsolutePath();
+        final String path = file.getAbsolutePath();
+        return path.startsWith(base) ? path.substring(base.length()) : file.getName();
+    }
+
+    /**
+     * The per-thread state of the exporter: a reusable image, decoder, and PNG
+     * writer.
+     */
+    private class Worker {
+        private final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        private final int[] emptyLine = new int[width];
+        private final CharsetDecoder decoder = Charset.forName("UTF-8").newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+
+        {
+            Arrays.fill(emptyLine, BACKGROUND);
+        }
+
+        /**
+         * Reads and decodes the given file.
+         *
+         * @return the file's text, or <code>null</code> if it is binary
+         */
+        CharBuffer read(File file) throws IOException {
+            final FileInputStream in = new FileInputStream(file);
+            try {
+                final FileChannel channel = in.getChannel();
+                final ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+                final int check = Math.min(buf.limit(), BINARY_CHECK_BYTES);
+                for (int i = 0; i < check; i++) {
+                    if (buf.get(i) == 0) return null;
+                }
+
+                return decoder.reset().decode(buf);
+            } finally {
+                in.close();
+            }
+        }
+
+        /**
+         * Clears the given number of rows of the image to the background.
+         */
+        void clear(int rows) {
+            for (int y = 0; y < rows; y++) {
+                image.setRGB(0, y, width, 1, emptyLine, 0, width);
+            }
+        }
+
+        /**
+         * Encodes the given image as a PNG file, streaming it to disk.
+         */
+        void write(BufferedImage img, File file) throws IOException {
+            final OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+            try {
+                final ImageOutputStream ios = ImageIO.createImageOutputStream(out);
+                try {
+                    writer.setOutput(ios);
+                    writer.write(null, new IIOImage(img, null, null), null);
+                } finally {
+                    writer.setOutput(null);
+                    ios.close();
+                }
+            } finally {
+                out.close();
+            }
+        }
+    }
+}
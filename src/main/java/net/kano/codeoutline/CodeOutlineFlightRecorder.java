@@ -0,0 +1,188 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Always keeps the most recent outline events in a fixed-size ring buffer, so
+ * that hard to reproduce problems, like repaints of the wrong region or storms
+ * of full re-renders, can be analyzed after the fact from a {@linkplain
+ * #dump dump}.
+ * <br><br>
+ * Recording is lock-free and allocates nothing. Each slot of the ring is
+ * made of two parts: the event itself, a fixed number of <code>long</code>s
+ * in one array, and the sequence number of the event, kept apart in a
+ * second array. Writers claim a slot with a single atomic increment, mark it
+ * as being written by setting its sequence number to -1, write the event,
+ * and publish it by writing its sequence number last. The event is written
+ * with ordered stores, so none of it can be seen before the mark; a dump
+ * reads the sequence number before and after copying a slot's event, like a
+ * seqlock, and skips slots which were overwritten while it read them.
+ */
+public class CodeOutlineFlightRecorder {
+    /** The number of events kept; must be a power of two. */
+    private static final int CAPACITY = 4096;
+    /**
+     * The number of <code>long</code>s per event: time, image and type packed
+     * into one, and five arguments. The sequence number is kept separately.
+     */
+    private static final int SLOT_SIZE = 7;
+    private static final int ARGS = SLOT_SIZE - 2;
+
+    /** A document change: offset, old length, new length, document length. */
+    public static final int DOCUMENT_CHANGE = 1;
+    /**
+     * The positions computed for a document change: start, old end and new
+     * end, each as a {@linkplain CodeOutlineCanvas#pack packed} line and column.
+     */
+    public static final int POSITIONS = 2;
+    /**
+     * The {@linkplain CodeOutlineCanvas#getPathName render path} taken for a
+     * document change: path, pixels, nanos.
+     */
+    public static final int UPDATE = 3;
+    /** A full re-render: width, height, nanos. */
+    public static final int FULL_RENDER = 4;
+    /** A render of newly exposed columns or rows: path, pixels, nanos. */
+    public static final int INCREMENTAL_RENDER = 5;
+    /** A scale change: old and new scale in millionths, line count, height. */
+    public static final int SCALE_CHANGE = 6;
+    /** A repaint request: x, y, width, height. */
+    public static final int REPAINT = 7;
+    /** A paint of a panel: clip x, y, width, height, nanos. */
+    public static final int PAINT = 8;
+
+    private static final String[] TYPE_NAMES = {
+        "?", "document-change", "positions", "update", "full-render",
+        "incremental-render", "scale-change", "repaint", "paint",
+    };
+
+    /** The next sequence number. */
+    private final AtomicLong sequence = new AtomicLong();
+    /** The sequence number of the event in each slot, written last. */
+    private final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+    /** The time, type, image and arguments of the event in each slot. */
+    private final AtomicLongArray slots = new AtomicLongArray(CAPACITY * SLOT_SIZE);
+    /** The time at which recording started. */
+    private final long startTime = System.nanoTime();
+
+    /**
+     * Records an event.
+     *
+     * @param type the type of event, such as {@link #DOCUMENT_CHANGE}
+     * @param source the object the event is about, identified by its
+     *        identity hash code
+     * @param a the first argument
+     * @param b the second argument
+     * @param c the third argument
+     * @param d the fourth argument
+     * @param e the fifth argument
+     */
+    public void record(int type, Object source, long a, long b, long c, long d, long e) {
+        final long seq = sequence.getAndIncrement();
+        final int slot = (int) (seq & (CAPACITY - 1));
+        final int base = slot * SLOT_SIZE;
+
+        // mark the slot as being written; the ordered stores below can't be
+        // seen before this volatile one
+        published.set(slot, -1);
+
+        slots.lazySet(base, System.nanoTime() - startTime);
+        slots.lazySet(base + 1, ((long) System.identityHashCode(source) << 32) | type);
+        slots.lazySet(base + 2, a);
+        slots.lazySet(base + 3, b);
+        slots.lazySet(base + 4, c);
+        slots.lazySet(base + 5, d);
+        slots.lazySet(base + 6, e);
+
+        published.lazySet(slot, seq);
+    }
+
+    /**
+     * Writes all recorded events, oldest first, as one line of text each.
+     *
+     * @param out the writer to write to
+     * @return the number of events written
+     * @throws IOException if writing fails
+     */
+    public int dump(Writer out) throws IOException {
+        final long end = sequence.get();
+        final long start = Math.max(0, end - CAPACITY);
+        final long[] event = new long[SLOT_SIZE];
+
+        out.write("# seq time-ms source type args\n");
+        int written = 0;
+        for (long seq = start; seq < end; seq++) {
+            final int slot = (int) (seq & (CAPACITY - 1));
+            if (published.get(slot) != seq) continue;
+
+            final int base = slot * SLOT_SIZE;
+            for (int i = 0; i < SLOT_SIZE; i++) event[i] = slots.get(base + i);
+            // the slot may have been reused while we copied it
+            if (published.get(slot) != seq) continue;
+
+            out.write(format(seq, event));
+            out.write('\n');
+            written++;
+        }
+        return written;
+    }
+
+    private static String format(long seq, long[] event) {
+        final int type = (int) event[1];
+        final StringBuilder sb = new StringBuilder(80);
+        sb.append(seq).append(' ');
+        sb.append(String.format("%.3f", event[0] / 1e6)).append(' ');
+        sb.append(Integer.toHexString((int) (event[1] >>> 32))).append(' ');
+        sb.append(type > 0 && type < TYPE_NAMES.length ? TYPE_NAMES[type] : "?");
+
+        for (int i = 0; i < ARGS; i++) {
+            final long arg = event[2 + i];
+            sb.append(' ');
+            if (type == POSITIONS && i < 3) {
+                sb.append((int) (arg >>> 32)).append(':').append((int) arg);
+            } else if ((type == UPDATE || type == INCREMENTAL_RENDER) && i == 0) {
+                sb.append(CodeOutlineCanvas.getPathName((int) arg));
+            } else {
+                sb.append(arg);
+            }
+        }
+        return sb.toString();
+    }
+}
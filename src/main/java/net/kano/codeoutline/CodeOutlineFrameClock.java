@@ -0,0 +1,175 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline;
+
+import com.intellij.ide.PowerSaveMode;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Paints the damage collected by all code outline panels once per frame,
+ * from a single timer. However many document, selection and scrolling events
+ * arrive between two frames, each panel is painted at most once for them.
+ * Frames are no more frequent than the display refreshes, and much less
+ * frequent in power save mode.
+ * <br><br>
+ * This class must only be used from the event dispatch thread.
+ */
+public class CodeOutlineFrameClock {
+    /** The frame rate used if the display's refresh rate is unknown. */
+    private static final int DEFAULT_FRAME_RATE = 60;
+    /** The frame rate in power save mode. */
+    private static final int POWER_SAVE_FRAME_RATE = 10;
+
+    /** The panels with damage to paint at the next frame. */
+    private final Set<CodeOutlinePanel> pending = new LinkedHashSet<CodeOutlinePanel>();
+    /** The panels being painted, reused for every frame. */
+    private final List<CodeOutlinePanel> painting = new ArrayList<CodeOutlinePanel>();
+
+    /** The time at which the last frame was painted, in nanoseconds. */
+    private long lastFrame = 0;
+    /** The fastest frame rate of any display, or 0 if not known yet. */
+    private int refreshRate = 0;
+
+    /** The timer firing at the next frame. */
+    private final Timer timer = new Timer(0, new ActionListener() {
+        public void actionPerformed(ActionEvent e) {
+            frame();
+        }
+    });
+
+    /**
+     * Creates a new frame clock.
+     */
+    public CodeOutlineFrameClock() {
+        timer.setRepeats(false);
+    }
+
+    /**
+     * Schedules the damage of the given panel to be painted at the next
+     * frame. If no frame was painted for a frame's time, the next frame is
+     * painted as soon as the events already queued are handled.
+     *
+     * @param panel a panel with damage to paint
+     */
+    public void schedule(CodeOutlinePanel panel) {
+        if (!pending.add(panel) || timer.isRunning()) return;
+
+        final long sinceLast = (System.nanoTime() - lastFrame) / 1000000;
+        timer.setInitialDelay((int) Math.max(0, getFrameInterval() - sinceLast));
+        timer.start();
+    }
+
+    /**
+     * Forgets any damage scheduled to be painted for the given panel, such as
+     * when it is disposed.
+     *
+     * @param panel a panel
+     */
+    public void cancel(CodeOutlinePanel panel) {
+        pending.remove(panel);
+        if (pending.isEmpty()) timer.stop();
+    }
+
+    /**
+     * Returns the number of panels with damage waiting for the next frame.
+     *
+     * @return the number of scheduled panels
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Stops painting frames.
+     */
+    public void stop() {
+        pending.clear();
+        timer.stop();
+    }
+
+    /**
+     * Paints the damage of every scheduled panel.
+     */
+    private void frame() {
+        lastFrame = System.nanoTime();
+
+        // panels may schedule themselves again while painting
+        painting.addAll(pending);
+        pending.clear();
+        try {
+            for (CodeOutlinePanel panel : painting) {
+                panel.paintDamage();
+            }
+        } finally {
+            painting.clear();
+        }
+    }
+
+    /**
+     * Returns the time between frames, in milliseconds.
+     *
+     * @return the frame interval
+     */
+    private int getFrameInterval() {
+        if (PowerSaveMode.isEnabled()) return 1000 / POWER_SAVE_FRAME_RATE;
+
+        if (refreshRate == 0) refreshRate = getRefreshRate();
+        return 1000 / refreshRate;
+    }
+
+    /**
+     * Returns the fastest refresh rate of any display.
+     *
+     * @return the refresh rate, in frames per second
+     */
+    private static int getRefreshRate() {
+        int rate = 0;
+        if (!GraphicsEnvironment.isHeadless()) {
+            for (GraphicsDevice device
+                    : GraphicsEnvironment.getLocalGraphicsEnvironment().getScreenDevices()) {
+                rate = Math.max(rate, device.getDisplayMode().getRefreshRate());
+            }
+        }
+        return rate == DisplayMode.REFRESH_RATE_UNKNOWN ? DEFAULT_FRAME_RATE : rate;
+    }
+}
@@ -35,19 +35,25 @@
 
 package net.kano.codeoutline;
 
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.editor.LogicalPosition;
 import com.intellij.openapi.editor.ScrollingModel;
 import com.intellij.openapi.editor.event.DocumentEvent;
 import com.intellij.openapi.editor.event.DocumentListener;
-import com.intellij.openapi.editor.highlighter.HighlighterIterator;
-import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.VirtualFile;
 
+import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
-import java.awt.image.Raster;
-import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * Manages the text outline image, keeping it synchronized with the current file
@@ -55,74 +61,134 @@ import java.awt.image.WritableRaster;
  */
 public class CodeOutlineImage {
     /** An RGB color mask for a completely transparent white. */
-    public static final int COLORMASK_TRANSPARENT = 0x00FFFFFF;
+    public static final int COLORMASK_TRANSPARENT = CodeOutlineCanvas.COLORMASK_TRANSPARENT;
 
     /** The logical position of the offset in a file. */
     public static final LogicalPosition LOGPOS_START = new LogicalPosition(0, 0);
 
+    /**
+     * How long resizing has to pause, in milliseconds, before an interim frame
+     * is replaced by a full render.
+     */
+    private static final int RESIZE_RENDER_DELAY = 150;
+
+    /** The probe tracing outline work for external profilers. */
+    private static final CodeOutlineProbe probe = CodeOutlineProbe.getInstance();
+
     /** The editor being outlined. */
     protected final Editor editor;
     /** The document being outlined. */
     protected final Document document;
+    /** The text being outlined, as seen by the renderer. */
+    protected final CodeOutlineText text;
+    /** The renderer which decided how the text is rendered. */
+    private final CodeOutlineRendererProvider renderer;
 
-    /** The text outline image. */
-    protected BufferedImage img = null;
-    /** An empty line. */
-    protected int[] emptyLine = null;
-
-    /** The width of the image visible to the user. */
-    protected int visibleImgWidth = 0;
-    /** The height of the image visible to the user. */
-    protected int visibleImgHeight = 0;
-    /** Vertical scale factor */
-    protected double scale = 1.0;
+    /** The pixels of the text outline. */
+    protected final CodeOutlineCanvas canvas;
+    /**
+     * The text outline with the editor's visible area shading blended in,
+     * following the changes to the canvas.
+     */
+    private final CodeOutlineShade shade = new CodeOutlineShade();
 
     /** The listener listening to this image. */
     private final CodeOutlineListener listener;
+    /** The governor accounting for the memory used by this image. */
+    private final CodeOutlineMemoryGovernor governor;
+    /** The metrics registry recording what this image costs. */
+    private final CodeOutlineMetrics metrics;
+    /** The flight recorder keeping the most recent outline events. */
+    private final CodeOutlineFlightRecorder recorder;
+
+    /** Whether this image is not listening for document changes. */
+    private boolean suspended = false;
+    /** Whether this image was disposed, and can no longer be resumed. */
+    private boolean disposed = false;
+    /**
+     * Whether the image shows an interim, scaled copy of an older frame and
+     * is waiting to be re-rendered.
+     */
+    private boolean pendingRefresh = false;
+    /** A timer re-rendering the image once resizing has paused. */
+    private Timer refreshTimer = null;
+    /** The document modification stamp at the time this image was suspended. */
+    private long suspendedStamp = 0;
+    /**
+     * The document modification stamp of the outline on disk, known because
+     * it was written from or restored to this image, or <code>-1</code> if
+     * none.
+     */
+    private long storedStamp = -1;
+    /** The visible width of the outline on disk. */
+    private int storedWidth = 0;
+    /** The visible height of the outline on disk. */
+    private int storedHeight = 0;
+    /** The appearance of the outline on disk. */
+    private String storedAppearance = null;
+    /** The trace recording document changes, if any. */
+    private CodeOutlineEditTrace.Writer trace = null;
+    /**
+     * The area changed by the last document change, reused so that updates
+     * don't allocate.
+     */
+    private final Rectangle dirty = new Rectangle();
+    /** A point in editor coordinates, reused when converting them. */
+    private final Point editorPoint = new Point();
 
     /** A document listener to listen for changes in the document. */
     private final DocumentListener docListener = new DocumentListener() {
-        /** The logical position of the end of the changed region. */
-        private LogicalPosition oldend;
+        /** The packed position of the end of the changed region. */
+        private long oldEnd;
 
         public void beforeDocumentChange(DocumentEvent event) {
-            // we need to store the old end logical position before the document
+            // we need to store the old end position before the document
             // changes, because after it changes, there's no way to convert the
-            // offset to the logical position it was in before the change.
-
-            // for example, if the user has the text:
-            // int x = 2;
-            // int y = 4;
-            // and selects the entire first line and presses enter, the old
-            // selection end offset given in the document change event is 10.
-            // before the change, the logical position of offset 10 was line 0,
-            // column 10. after the change, though, the logical position of
-            // offset 10 is line 1, column 9.
-            oldend = editor.offsetToLogicalPosition(event.getOffset() + event.getOldLength());
+            // offset to the position it was in before the change (see
+            // CodeOutlineCanvas.update)
+            oldEnd = canvas.getPosition(event.getOffset() + event.getOldLength());
         }
 
         public void documentChanged(DocumentEvent e) {
+            final long start = System.nanoTime();
+            traceChange(e, start);
             try {
-                updateImg(e, oldend);
+                updateImg(e, oldEnd);
             } catch (Exception ex) {
                 listener.handleException(CodeOutlineImage.this, ex);
+            } finally {
+                metrics.recordUpdate(System.nanoTime() - start);
             }
         }
     };
 
     /**
-     * Creates a new code outline image for the given editor and with the given
-     * listener.
+     * Creates a new code outline image for the given editor, rendered as the
+     * given renderer decides.
      *
      * @param editor the editor to image
      * @param listener a listener for code outline image events
+     * @param governor the governor accounting for the memory used by this
+     *        image
+     * @param metrics the metrics registry recording what this image costs
+     * @param renderer the renderer to render the editor's text with
      */
-    public CodeOutlineImage(Editor editor, CodeOutlineListener listener) {
-        if (listener == null) throw new NullPointerException();
+    public CodeOutlineImage(Editor editor, CodeOutlineListener listener,
+            CodeOutlineMemoryGovernor governor, CodeOutlineMetrics metrics,
+            CodeOutlineRendererProvider renderer) {
+        if (listener == null || governor == null || metrics == null) {
+            throw new NullPointerException();
+        }
 
         this.editor = editor;
         this.document = editor.getDocument();
+        this.renderer = renderer;
+        this.text = renderer.createText(editor);
+        this.canvas = new CodeOutlineCanvas(text);
         this.listener = listener;
+        this.governor = governor;
+        this.metrics = metrics;
+        this.recorder = metrics.getFlightRecorder();
 
         init();
     }
@@ -131,581 +197,822 @@ public class CodeOutlineImage {
      * Initializes listeners.
      */
     private void init() {
+        canvas.setBackground(editor.getColorsScheme().getDefaultBackground().getRGB());
         document.addDocumentListener(docListener);
+        governor.register(this);
     }
 
     /**
      * Removes listeners and flushes the code outline image data.
      */
     public void dispose() {
-        document.removeDocumentListener(docListener);
+        synchronized (this) {
+            if (disposed) return;
+            disposed = true;
 
-        if (img != null) img.flush();
+            if (!suspended) document.removeDocumentListener(docListener);
+
+            governor.getImageCache().remove(document);
+            stopRefreshTimer();
+            closeTrace();
+
+            governor.getBufferPool().release(canvas.getImage());
+            canvas.setImage(null);
+            shade.dispose();
+        }
+
+        governor.unregister(this);
     }
 
     /**
-     * Updates the code outline image to reflect the given document change.
-     *
-     * @param e a document change event
-     * @param oldend the logical position of the end of the "old" changed region
-     *        before the change was actually made
+     * Stops keeping this image synchronized with the document. Only the
+     * document modification stamp is recorded, so that {@link #resume()} knows
+     * whether the image has to be re-rendered. The image itself is moved to
+     * the image cache in compact form and released.
      */
-    private synchronized void updateImg(DocumentEvent e, LogicalPosition oldend) {
-        // if there's no image we don't need to do anything
-        if (img == null) return;
+    public void suspend() {
+        final CodeOutlineImageCache.Entry entry;
+        synchronized (this) {
+            if (suspended || disposed) return;
 
-        final int offset    = e.getOffset();
-        final int newLength = e.getNewLength();
-        final int oldLength = e.getOldLength();
-        final int width     = visibleImgWidth;
-        final int height    = visibleImgHeight;
-        final double scale  = this.scale;
-
-        // compute the logical positions of the old and new offsets
-        final LogicalPosition start = editor.offsetToLogicalPosition(offset);
-        final LogicalPosition newend = editor.offsetToLogicalPosition(offset + newLength);
-
-        // if the modifications were all past the bottom border, there's nothing
-        // to do
-        if (getScaledLine(start.line, scale) >= height) return;
-
-        // the number of affected lines
-        int affected = Math.abs(newend.line - oldend.line) + 1;
-
-        // if the modifications were all past the right border, there's nothing
-        // to do
-        if (affected == 1 && start.column >= width) return;
-
-        // the number of lines added (a negative value means lines were removed)
-        int addedLines = newend.line - oldend.line;
-
-        /*
-         * If lines count changed, then redraw all the stuff if there are:
-         * 1. deleted lines
-         * 2. scale factor changed (scaling)
-         */
-        if (addedLines != 0) {
-            if (addedLines < 0 || scale < 1.0 || getScaleFactor(height, document.getLineCount()) < 1.0) {
-                refreshImage();
-                // TODO: Delayed redraw for last timed out change
-                listener.shouldRepaint(this, new Rectangle(0, 0, width, height));
-                return;
-            }
-        }
+            document.removeDocumentListener(docListener);
+            suspendedStamp = document.getModificationStamp();
+            suspended = true;
+
+            if (canvas.getImage() == null) return;
 
-        /*
-
-        This method does the following things:
-        1. Copy the (unmodified) rest of the line at the end of the modified
-           region
-        2. Move all unmodified lines, below the changed region, up or down, if
-           lines were added or removed
-        3. Clear data at end of line on first line of changed region
-        4. Clear middle lines, if any, in the changed region
-        5. Clear data at beginning of line on last line of changed region
-        6. Paste the data copied in #1 at the new end of region
-        7. Re-render any data which was not copied in #6 because of insufficient
-           window width
-        8. Render the new data in the changed region
-
-        */
-        
-        // how much of the end of the last line needs to be cleared
-        int needsFilling = Math.max(0, width - newend.column);
-        // how much of the end of the old last line needs to be copied to the
-        // new end of the last line (this takes into account how much is there,
-        // and how much space there is at the end of the new line, so no unused
-        // data is copied)
-        int charsToCopy = Math.min(needsFilling, Math.max(0, width - oldend.column));
-
-        // copy the (unmodified) rest of the line at the end of the modified
-        // region
-        WritableRaster raster = img.getRaster();
-        Object endOfLine = null;
-        int oldEndLine = getScaledLine(oldend.line, scale);
-        int newEndLine = getScaledLine(newend.line, scale);
-        if (oldEndLine < height && newEndLine < height && charsToCopy > 0) {
-            endOfLine = raster.getDataElements(oldend.column, oldEndLine, charsToCopy, 1, null);
+            entry = stash();
         }
 
-        // move unaffected lines (all lines after the lines modified).
-        // this never modifies any of the lines containing the modified text.
-        if (addedLines != 0) {
-            int ol = getScaledLine(oldend.line + 1, scale);
-            int nl = getScaledLine(newend.line + 1, scale);
+        // the governor must not be called while holding our lock
+        governor.checkBudget();
 
-            int fh = height - ol;
-            int th = height - nl;
-            if (fh > 0 && th > 0) {
-                BufferedImage from = img.getSubimage(0, ol, width, fh);
-                BufferedImage to = img.getSubimage(0, nl, width, th);
+        if (entry != null) storeLater(entry);
+    }
 
-                if (addedLines > 0) moveDataDown(from, to);
-                else moveDataUp(from, to);
-            }
-        }
+    /**
+     * Renders this suspended image ahead of time at the given size, and moves
+     * the result to the image cache, so that showing it later is only a
+     * matter of decoding it.
+     *
+     * @param gc a graphics configuration object
+     * @param width the visible width of the image
+     * @param height the visible height of the image
+     */
+    public void prerender(GraphicsConfiguration gc, int width, int height) {
+        final CodeOutlineImageCache.Entry entry;
+        synchronized (this) {
+            if (!suspended || disposed || canvas.getImage() != null) return;
+            if (!ensureImage(gc, width, height)) return;
 
-        // 1. clear first line chars at end of line
-        // 2. clear middle lines
-        // 3. clear last line chars at beginning of line
-        // 4. copy line data at old end to new end
-        // 5. re-render any data which was not copied because of insufficient
-        //    window width
-
-        // 1.
-        int toFill = 0;
-        if (affected > 1) {
-            toFill = width - Math.min(width, start.column);
-        } else if (start.column < newend.column) {
-            toFill = Math.min(width - start.column, newend.column - start.column);
+            entry = stash();
         }
 
-        if (toFill > 0) {
-            img.setRGB(start.column, getScaledLine(start.line, scale), toFill, 1, emptyLine, 0, toFill);
-        }
+        governor.checkBudget();
 
-        if (newend.line != start.line) {
-            // 2.
-            int last = getScaledLine(Math.min(newend.line, height-1) - 1, scale);
+        if (entry != null) storeLater(entry);
+    }
 
-            for (int i = getScaledLine(start.line + 1, scale); i <= last; i++) {
-                img.setRGB(0, i, width, 1, emptyLine, 0, width);
-            }
+    /**
+     * Returns whether the image cache holds this image, up to date and at the
+     * given size.
+     *
+     * @param width the visible width of the image
+     * @param height the visible height of the image
+     * @return whether this image is cached
+     */
+    public boolean isCached(int width, int height) {
+        return governor.getImageCache().get(document,
+                document.getModificationStamp(), width, height) != null;
+    }
 
-            // 3.
-            if (newEndLine < height) {
-                int toFillEnd = Math.min(width, newend.column);
-                img.setRGB(0, newEndLine, toFillEnd, 1, emptyLine, 0, toFillEnd);
+    /**
+     * Moves the backing image to the image cache and releases it.
+     *
+     * @return the new cache entry, or <code>null</code> if nothing was cached
+     */
+    private CodeOutlineImageCache.Entry stash() {
+        // an interim resize frame is not worth keeping
+        final CodeOutlineImageCache.Entry entry = pendingRefresh ? null
+                : governor.getImageCache().put(document, document.getModificationStamp(),
+                        canvas.getImage(), canvas.getWidth(), canvas.getHeight(),
+                        canvas.getScale());
+        stopRefreshTimer();
+
+        governor.getBufferPool().release(canvas.getImage());
+        canvas.setImage(null);
+        shade.dispose();
+
+        return entry;
+    }
+
+    /**
+     * Writes the given outline to the disk cache on a pooled thread, unless
+     * the document changes before it gets there, or the disk cache already
+     * holds the same outline.
+     *
+     * @param entry an encoded outline of this image
+     */
+    private void storeLater(final CodeOutlineImageCache.Entry entry) {
+        final VirtualFile file = FileDocumentManager.getInstance().getFile(document);
+        if (file == null) return;
+
+        final String path = file.getPath();
+        final String appearance = getAppearance();
+        synchronized (this) {
+            if (isStored(entry.getStamp(), entry.getWidth(), entry.getHeight(), appearance)) {
+                return;
             }
         }
 
-        // 4.
-        if (endOfLine != null) {
-            // copy old end of line data to new end of line
-            raster.setDataElements(newend.column, newEndLine, charsToCopy, 1, endOfLine);
-
-            // clear the rest of the line, if necessary
-            int diff = needsFilling - charsToCopy;
-            if (diff > 0) {
-                img.setRGB(newend.column + charsToCopy, newEndLine, diff, 1, emptyLine, 0, diff);
+        final Application app = ApplicationManager.getApplication();
+        app.executeOnPooledThread(new Runnable() {
+            public void run() {
+                final Long hash = app.runReadAction(new Computable<Long>() {
+                    public Long compute() {
+                        if (document.getModificationStamp() != entry.getStamp()) return null;
+                        return CodeOutlineDiskCache.hash(document.getCharsSequence());
+                    }
+                });
+                if (hash != null) {
+                    governor.getDiskCache().write(path, appearance, hash, entry);
+                    synchronized (CodeOutlineImage.this) {
+                        setStored(entry.getStamp(), entry.getWidth(), entry.getHeight(),
+                                appearance);
+                    }
+                }
             }
-        }
+        });
+    }
+
+    /**
+     * Returns whether the outline on disk is known to be the given one.
+     */
+    private boolean isStored(long stamp, int width, int height, String appearance) {
+        return stamp == storedStamp && width == storedWidth && height == storedHeight
+                && appearance.equals(storedAppearance);
+    }
+
+    /**
+     * Records that the outline on disk is the given one.
+     */
+    private void setStored(long stamp, int width, int height, String appearance) {
+        storedStamp = stamp;
+        storedWidth = width;
+        storedHeight = height;
+        storedAppearance = appearance;
+    }
 
-        // 5.
-        int minCharsToCopy = Math.max(0, charsToCopy);
-        int missing = needsFilling - minCharsToCopy;
-        if (missing > 0) {
-            int toClear = newend.column + minCharsToCopy;
-            raster.setDataElements(toClear, newEndLine, width - toClear, 1, emptyLine);
-            // re-render the last line, since we don't know what the data on
-            // that line was, since it was past our right margin
-            int renderWidth = renderRestOfLineToImg(offset + newLength + minCharsToCopy);
-            int clearx = newend.column + minCharsToCopy + renderWidth;
-            if (clearx < width) {
-                raster.setDataElements(clearx, newEndLine, width-clearx, 1, emptyLine);
+    /**
+     * Returns what, besides the text, decides how the outline looks: the
+     * editor's color scheme and the renderer. Outlines on disk are only
+     * restored if this is the same as when they were stored.
+     *
+     * @return a description of the outline's appearance
+     */
+    private String getAppearance() {
+        return editor.getColorsScheme().getName() + "/" + renderer.getId();
+    }
+
+    /**
+     * Restores this image from the disk cache, if there is a matching entry.
+     * The restored image is validated against the document later, on a pooled
+     * thread, and re-rendered if the text differs.
+     *
+     * @param width the visible width of the image
+     * @param height the visible height of the image
+     * @return whether the image was restored
+     */
+    private boolean restoreFromDisk(final int width, final int height) {
+        final VirtualFile file = FileDocumentManager.getInstance().getFile(document);
+        if (file == null) return false;
+
+        final String appearance = getAppearance();
+        final CodeOutlineDiskCache.Entry stored = governor.getDiskCache().read(
+                file.getPath(), width, height, appearance);
+        if (stored == null) return false;
+
+        stored.getImage().decode(canvas.getImage());
+        canvas.setScale(stored.getImage().getScale());
+
+        // hashing a large document takes a while, so it is done off the event
+        // dispatch thread and without holding our lock
+        final long contentHash = stored.getContentHash();
+        final Application app = ApplicationManager.getApplication();
+        app.executeOnPooledThread(new Runnable() {
+            public void run() {
+                final long[] stamp = new long[1];
+                final long hash = app.runReadAction(new Computable<Long>() {
+                    public Long compute() {
+                        stamp[0] = document.getModificationStamp();
+                        return CodeOutlineDiskCache.hash(document.getCharsSequence());
+                    }
+                });
+
+                if (hash == contentHash) {
+                    synchronized (CodeOutlineImage.this) {
+                        setStored(stamp[0], width, height, appearance);
+                    }
+                    return;
+                }
+
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        final Rectangle area;
+                        synchronized (CodeOutlineImage.this) {
+                            if (canvas.getImage() == null) return;
+
+                            refreshImage();
+                            area = new Rectangle(0, 0, canvas.getWidth(), canvas.getHeight());
+                        }
+                        listener.shouldRepaint(CodeOutlineImage.this, area);
+                    }
+                });
             }
-        }
+        });
 
-        // render the new text
-        final CharSequence nc = e.getNewFragment();
-        renderToImg(nc, 0, nc.length(), start);
+        return true;
+    }
 
-        // repaint the changed region
-        final Rectangle toRepaint = getImgRepaintRect(offset, Math.max(newLength, oldLength));
-        if (affected > 1) {
-            toRepaint.height = visibleImgHeight - toRepaint.y;
+    /**
+     * Starts keeping this image synchronized with the document again. If the
+     * document was modified while this image was suspended, the image is
+     * re-rendered.
+     *
+     * @return whether the image was re-rendered
+     */
+    public boolean resume() {
+        synchronized (this) {
+            if (!suspended || disposed) return false;
+
+            suspended = false;
+            document.addDocumentListener(docListener);
         }
 
-        listener.shouldRepaint(this, toRepaint);
+        governor.touch(this);
+
+        synchronized (this) {
+            if (document.getModificationStamp() == suspendedStamp) return false;
+
+            refreshImage();
+            return canvas.getImage() != null;
+        }
     }
 
     /**
-     * Returns a logical position in the editor that corresponds the given point
-     * in this code outline image.
+     * Starts recording every change to the document into an edit trace. Any
+     * trace already being recorded is ended first.
      *
-     * @param point the code outline image coordinates
-     * @return a logical position corresponding to the given coordinates
+     * @param out the stream to write the trace to
+     * @throws IOException if the trace could not be started
      */
-    public LogicalPosition getPositionFromPoint(Point point) {
-        int x = Math.max(0, point.y);
-        int y = Math.max(0, point.x);
-        return new LogicalPosition(x, y);
+    public synchronized void startTrace(OutputStream out) throws IOException {
+        closeTrace();
+        trace = new CodeOutlineEditTrace.Writer(out, document.getCharsSequence());
     }
 
     /**
-     * Returns the area in this code outline image that should be repainted to
-     * update the given text region.
+     * Stops recording document changes, and closes the trace.
      *
-     * @param offset the offset at which the text region to be repainted starts
-     * @param length the length of the text region to repaint
-     * @return the area in this code outline image that should be repainted to
-     *         update the given region
+     * @return the number of changes recorded
+     * @throws IOException if the trace could not be written
      */
-    public Rectangle getImgRepaintRect(int offset, int length) {
-        return getImgRepaintRect(new TextRange(offset, offset + length));
+    public synchronized int stopTrace() throws IOException {
+        if (trace == null) return 0;
+
+        final CodeOutlineEditTrace.Writer writer = trace;
+        trace = null;
+        writer.close();
+        return writer.getCount();
     }
 
     /**
-     * Returns the area in this code outline image that should be repainted to
-     * update the given text region.
+     * Returns whether document changes are being recorded.
+     *
+     * @return whether an edit trace is being recorded
+     */
+    public synchronized boolean isTracing() { return trace != null; }
+
+    /**
+     * Records the given change in the edit trace, if one is being recorded.
+     * A trace which cannot be written is dropped.
      *
-     * @param range the region to be updated
-     * @return the area in this code outline image that should be repainted to
-     *         update the given region
-     */
-    public Rectangle getImgRepaintRect(TextRange range) {
-        if (img == null) return null;
-
-        int len = document.getTextLength();
-        int startoff = range.getStartOffset();
-        int endoff = range.getEndOffset();
-
-        LogicalPosition start;
-        if (startoff > len) {
-            // this region is past the end of the file, so we repaint the entire
-            // area below the end of the file
-            LogicalPosition eof = editor.offsetToLogicalPosition(len);
-            return getRectangle(0, eof.line, visibleImgWidth + 1, visibleImgHeight-eof.line + 1, scale);
-        } else {
-            start = editor.offsetToLogicalPosition(startoff);
-            if (endoff > len) {
-                // the region spans the end of the file
-                return getRectangle(0, start.line, visibleImgWidth + 1, visibleImgHeight-start.line + 1, scale);
+     * @param e a document change event
+     * @param time the time of the change, from {@link System#nanoTime()}
+     */
+    private void traceChange(DocumentEvent e, long time) {
+        try {
+            synchronized (this) {
+                if (trace == null) return;
+
+                try {
+                    trace.change(time, e.getOffset(), e.getOldFragment(), e.getNewFragment());
+                } catch (IOException ex) {
+                    closeTrace();
+                    throw ex;
+                }
             }
+        } catch (IOException ex) {
+            listener.handleException(this, ex);
         }
+    }
 
-        LogicalPosition end = editor.offsetToLogicalPosition(endoff);
+    /**
+     * Ends the edit trace being recorded, if any, ignoring errors.
+     */
+    private void closeTrace() {
+        if (trace == null) return;
 
-        if (start.line == end.line) {
-            // we only need to repaint the characters modified on that line
-            return getRectangle(start.column, start.line, visibleImgWidth + 1, end.line + 1, scale);
-        } else {
-            // we should repaint the entire lines that changed
-            return getRectangle(0, start.line, visibleImgWidth + 1, end.line + 1, scale);
+        try {
+            trace.close();
+        } catch (IOException ignored) {
         }
+        trace = null;
     }
 
     /**
-     * Returns the area in this code outline image that should be repainted to
-     * update the given editor viewing region. The editor viewing region can be
-     * obtained with methods like {@link ScrollingModel#getVisibleArea()}
-     * <br><br>
-     * This method returns a rectangle one pixel wider and taller than the
-     * rectangle returned by {@link #getImgRect(Rectangle)}.
+     * Returns whether this image is currently not listening for document
+     * changes.
      *
-     * @param rectangle an editor viewing area region
-     * @return the area that should be repainted to update the given region
+     * @return whether this image is suspended
      */
-    public Rectangle getImgRepaintRect(Rectangle rectangle) {
-        Rectangle rect = getImgRect(rectangle);
-        if (rect == null) return null;
+    public synchronized boolean isSuspended() { return suspended; }
 
-        rect.height++;
-        rect.width++;
-        return rect;
+    /**
+     * Returns the number of bytes held by the backing image.
+     *
+     * @return the size of the backing image in bytes
+     */
+    public synchronized long getBufferBytes() {
+        final BufferedImage img = canvas.getImage();
+        return (img == null ? 0 : 4L * img.getWidth() * img.getHeight()) + shade.getBytes();
     }
 
     /**
-     * Returns a the rectangle to be drawn on this code outline image to
-     * represent the given editor visible region.
+     * Updates the code outline image to reflect the given document change.
      *
-     * @param visible an editor visible region rectangle
-     * @return a rectangle that represents the given editor visible region
+     * @param e a document change event
+     * @param oldEnd the {@linkplain CodeOutlineCanvas#pack packed} position
+     *        of the end of the "old" changed region before the change was
+     *        actually made
      */
-    public Rectangle getImgRect(Rectangle visible) {
-        if (img == null) return null;
-
-        // we try to see how wide the visible area is by first getting the
-        // position of the last character visible on the first line, and then
-        // that position on the last line. a bug in xyToLogicalPosition when
-        // code folding is present forces us to do this, and this code still
-        // messes up when collapsed folding regions are present on the first and
-        // last visible lines.
-        Rectangle visibleRect;
+    private synchronized void updateImg(DocumentEvent e, long oldEnd) {
+        final Object event = probe.begin(CodeOutlineProbe.DOCUMENT_UPDATE);
+        final long startTime = System.nanoTime();
+        recorder.record(CodeOutlineFlightRecorder.DOCUMENT_CHANGE, this,
+                e.getOffset(), e.getOldLength(), e.getNewLength(),
+                document.getTextLength(), 0);
+
+        // if there's no image we don't need to do anything, and if a full
+        // render is pending it will pick up this change as well
+        if (canvas.getImage() == null || pendingRefresh) {
+            endUpdate(event, e, CodeOutlineCanvas.PATH_SKIPPED, 0, startTime);
+            return;
+        }
 
-        LogicalPosition start = editor.xyToLogicalPosition(
-                new Point(visible.x, visible.y));
-        LogicalPosition start2 = editor.xyToLogicalPosition(
-                new Point(visible.x + visible.width, visible.y));
-        LogicalPosition end = editor.xyToLogicalPosition(
-                new Point(visible.x + visible.width,
-                        visible.y + visible.height));
+        final int offset = e.getOffset();
+        final int newEnd = offset + e.getNewLength();
+        recorder.record(CodeOutlineFlightRecorder.POSITIONS, this,
+                canvas.getPosition(offset), oldEnd, canvas.getPosition(newEnd), 0, 0);
 
-        int w = Math.min(visibleImgWidth-start.column,
-                Math.max(start2.column, end.column)-start.column)-1;
-        int h = end.line-start.line;
+        final Rectangle toRepaint = dirty;
+        final int path = canvas.update(offset, e.getOldLength(), e.getNewLength(),
+                oldEnd, toRepaint);
+        if (path == CodeOutlineCanvas.PATH_FULL) {
+            // TODO: Delayed redraw for last timed out change
+            refreshImage();
+        }
 
-        visibleRect = getRectangle(start.column, start.line, w, h, scale);
+        final long pixels = (long) toRepaint.width * toRepaint.height;
+        if (path == CodeOutlineCanvas.PATH_INCREMENTAL) {
+            metrics.recordPixels(pixels);
+            shade.invalidate(toRepaint);
+        }
+        if (path != CodeOutlineCanvas.PATH_SKIPPED) listener.shouldRepaint(this, toRepaint);
 
-        return visibleRect;
+        endUpdate(event, e, path, pixels, startTime);
     }
 
     /**
-     * Generates the data for a horizontal line of the given width containing
-     * pixels of the given color.
+     * Finishes tracing a document update.
      *
-     * @param width the width of the line to create
-     * @param color a color
-     * @return the data for the line
-     */
-    private static int[] genColoredLine(int width, int color) {
-        int[] emptyLine = new int[width];
-        for (int i = 0; i < emptyLine.length; i++) {
-            emptyLine[i] = color;
-        }
-        return emptyLine;
+     * @param event the token returned by the probe, if any
+     * @param e the document change event
+     * @param renderPath how the image was updated
+     * @param pixelArea the number of pixels re-rendered
+     * @param startTime the value of {@link System#nanoTime()} when the update
+     *        started
+     */
+    private void endUpdate(Object event, DocumentEvent e, int renderPath,
+            long pixelArea, long startTime) {
+        recorder.record(CodeOutlineFlightRecorder.UPDATE, this, renderPath,
+                pixelArea, System.nanoTime() - startTime, 0, 0);
+        if (event == null) return;
+
+        probe.end(event, text.getTextLength(), text.getLineCount(),
+                document.getLineNumber(e.getOffset()),
+                document.getLineNumber(e.getOffset() + e.getNewLength()),
+                pixelArea, renderPath);
     }
 
     /**
-     * Copies data between the given images, starting at the bottom of the
-     * images and copying then moving upwards line by line. This method is
-     * suitable for when the two given images are subimages of the same image,
-     * and their data may overlap.
+     * Returns the position in the editor that corresponds to the given point
+     * in this code outline image.
      *
-     * @param from the source image
-     * @param to the destination image
+     * @param x the horizontal code outline image coordinate
+     * @param y the vertical code outline image coordinate, in lines
+     * @return the {@linkplain CodeOutlineCanvas#pack packed} line and column
+     *         corresponding to the given coordinates
      */
-    private static void moveDataDown(BufferedImage from, BufferedImage to) {
-        Raster raster = from.getRaster();
-        WritableRaster outRaster = to.getRaster();
-
-        int width = outRaster.getWidth();
-        int height = outRaster.getHeight();
-        int startX = outRaster.getMinX();
-        int startY = outRaster.getMinY();
-
-        Object tdata = null;
+    public long getPositionFromPoint(int x, int y) {
+        return CodeOutlineCanvas.pack(Math.max(0, y), Math.max(0, x));
+    }
 
-        for (int i = startY+height-1; i >= startY; i--)  {
-            tdata = raster.getDataElements(startX,i,width,1,tdata);
-            outRaster.setDataElements(startX,i,width,1, tdata);
-        }
+    /**
+     * Returns the line and column at which the given offset is drawn.
+     *
+     * @param offset an offset into the document
+     * @return the {@linkplain CodeOutlineCanvas#pack packed} position
+     */
+    public long getPosition(int offset) {
+        return canvas.getPosition(offset);
     }
 
     /**
-     * Copies data between the given images, starting at the top of the images
-     * and copying then moving downwards line by line. This method is
-     * suitable for when the two given images are subimages of the same image,
-     * and their data may overlap.
+     * Sets the given rectangle to the area in this code outline image that
+     * should be repainted to update the given text region.
      *
-     * @param from the source image
-     * @param to the destination image
+     * @param offset the offset at which the text region to be repainted starts
+     * @param length the length of the text region to repaint
+     * @param rect the rectangle to set
+     * @return whether there is an image to repaint; if not, the rectangle is
+     *         left as it was
      */
-    private static void moveDataUp(BufferedImage from, BufferedImage to) {
-        Raster raster = from.getRaster();
-        WritableRaster outRaster = to.getRaster();
+    public boolean getImgRepaintRect(int offset, int length, Rectangle rect) {
+        if (canvas.getImage() == null) return false;
 
-        int width = outRaster.getWidth();
-        int height = Math.min(raster.getHeight(), outRaster.getHeight());
-        int startX = outRaster.getMinX();
-        int startY = outRaster.getMinY();
+        canvas.getRepaintRect(offset, offset + length, rect);
+        return true;
+    }
 
-        Object tdata = null;
+    /**
+     * Sets the given rectangle to the area in this code outline image that
+     * should be repainted to update the given editor viewing region. The
+     * editor viewing region can be obtained with methods like {@link
+     * ScrollingModel#getVisibleArea()}
+     * <br><br>
+     * The area is one pixel wider and taller than the one set by {@link
+     * #getImgRect(Rectangle, Rectangle)}.
+     *
+     * @param visible an editor viewing area region
+     * @param rect the rectangle to set
+     * @return whether there is an image to repaint; if not, the rectangle is
+     *         left as it was
+     */
+    public boolean getImgRepaintRect(Rectangle visible, Rectangle rect) {
+        if (!getImgRect(visible, rect)) return false;
 
-        for (int i = startY; i < startY+height; i++)  {
-            tdata = raster.getDataElements(raster.getMinX(), i, width, 1,
-                    tdata);
-            outRaster.setDataElements(startX, i, width, 1, tdata);
-        }
+        rect.height++;
+        rect.width++;
+        return true;
     }
 
-    public static Rectangle getRectangle(int x, int y, int width, int height, double scale) {
-        return new Rectangle(x, getScaledLine(y, scale), width, getScaledLine(height, scale));
+    /**
+     * Sets the given rectangle to the one to be drawn on this code outline
+     * image to represent the given editor visible region.
+     *
+     * @param visible an editor visible region rectangle
+     * @param rect the rectangle to set
+     * @return whether there is an image to draw on; if not, the rectangle is
+     *         left as it was
+     */
+    public boolean getImgRect(Rectangle visible, Rectangle rect) {
+        if (canvas.getImage() == null) return false;
+
+        // we try to see how wide the visible area is by first getting the
+        // position of the last character visible on the first line, and then
+        // that position on the last line. a bug in xyToLogicalPosition when
+        // code folding is present forces us to do this, and this code still
+        // messes up when collapsed folding regions are present on the first and
+        // last visible lines.
+        editorPoint.setLocation(visible.x, visible.y);
+        LogicalPosition start = editor.xyToLogicalPosition(editorPoint);
+        editorPoint.setLocation(visible.x + visible.width, visible.y);
+        LogicalPosition start2 = editor.xyToLogicalPosition(editorPoint);
+        editorPoint.setLocation(visible.x + visible.width, visible.y + visible.height);
+        LogicalPosition end = editor.xyToLogicalPosition(editorPoint);
+
+        canvas.getAreaRect(start.line, start.column, end.line,
+                Math.max(start2.column, end.column), rect);
+        return true;
     }
 
     public int getScaledLine(int line) {
-        return getScaledLine(line, scale);
+        return getScaledLine(line, canvas.getScale());
     }
 
     public static int getOutScaledLine(int line, double scale) {
-        return (int)(1.0 * line / scale);
+        return CodeOutlineRenderer.getOutScaledLine(line, scale);
     }
 
     public static int getScaledLine(int line, double scale) {
-        return (int)Math.floor(scale * line);
+        return CodeOutlineRenderer.getScaledLine(line, scale);
     }
 
-    private static double getScaleFactor(int height, int lines) {
-        double scale = 1.0 * height / lines;
-        if (scale > 1.0) scale = 1000.0;
-        else scale = Math.floor(scale * 1000.0) - 1.0;
-        return scale / 1000.0;
+    static double getScaleFactor(int height, int lines) {
+        return CodeOutlineRenderer.getScaleFactor(height, lines);
     }
 
     public double getScale() {
-        return scale;
+        return canvas.getScale();
+    }
+
+    /**
+     * Returns the renderer which decided how the text of this image is
+     * rendered.
+     *
+     * @return this image's renderer
+     */
+    public CodeOutlineRendererProvider getRenderer() {
+        return renderer;
+    }
+
+    /**
+     * Returns the text outlined by this image, as it is rendered.
+     *
+     * @return the text of this image's editor
+     */
+    public CodeOutlineText getText() {
+        return text;
     }
 
     /**
      * Clears the backing image and re-renders it from the editor text.
      */
     public void refreshImage() {
-        if (img == null) return;
+        if (canvas.getImage() == null) return;
+
+        pendingRefresh = false;
+
+        final Object event = probe.begin(CodeOutlineProbe.FULL_RENDER);
+        final long startTime = System.nanoTime();
+        final double oldScale = canvas.getScale();
+
+        canvas.setBackground(editor.getColorsScheme().getDefaultBackground().getRGB());
+        canvas.refresh();
+        shade.invalidate();
+
+        final int width = canvas.getWidth();
+        final int height = canvas.getHeight();
+        final int lines = text.getLineCount();
+        final double scale = canvas.getScale();
+        if (scale != oldScale) {
+            recorder.record(CodeOutlineFlightRecorder.SCALE_CHANGE, this,
+                    Math.round(oldScale * 1e6), Math.round(scale * 1e6),
+                    lines, height, 0);
+            probe.scaleChanged(oldScale, scale, lines, height);
+        }
 
-        final Graphics2D g = img.createGraphics();
-        g.setBackground(editor.getColorsScheme().getDefaultBackground());
-        g.clearRect(0, 0, visibleImgWidth, visibleImgHeight);
+        final long time = System.nanoTime() - startTime;
+        recorder.record(CodeOutlineFlightRecorder.FULL_RENDER, this,
+                width, height, time, 0, 0);
+        metrics.recordRefresh(time, (long) width * height);
 
-        genImage();
+        if (event != null) {
+            probe.end(event, text.getTextLength(), lines, 0, lines - 1,
+                    (long) width * height, CodeOutlineCanvas.PATH_FULL);
+        }
     }
 
     /**
-     * Renders the text in the editor to the backing image.
+     * Re-renders the image once resizing has paused for a while. Until then the
+     * image keeps showing an interim frame.
      */
-    private void genImage() {
-        renderToImg(LOGPOS_START);
+    private void refreshLater() {
+        pendingRefresh = true;
+
+        if (refreshTimer == null) {
+            refreshTimer = new Timer(RESIZE_RENDER_DELAY, new ActionListener() {
+                public void actionPerformed(ActionEvent e) {
+                    final Rectangle area;
+                    synchronized (CodeOutlineImage.this) {
+                        if (!pendingRefresh) return;
+
+                        refreshImage();
+                        area = new Rectangle(0, 0, canvas.getWidth(), canvas.getHeight());
+                    }
+                    listener.shouldRepaint(CodeOutlineImage.this, area);
+                }
+            });
+            refreshTimer.setRepeats(false);
+        }
+        refreshTimer.restart();
     }
 
-
     /**
-     * Renders the given characters to the code outline image starting at the
-     * given position.
-     *
-     * @param pos the position at which to start rendering
+     * Cancels any pending re-render of an interim frame.
      */
-    private void renderToImg(LogicalPosition pos) {
-        if (img == null) return;
-        this.scale = getScaleFactor(visibleImgHeight, document.getLineCount());
-        final CharSequence chars = document.getCharsSequence();
-        renderToImg(chars, 0, chars.length(), pos);
+    private void stopRefreshTimer() {
+        pendingRefresh = false;
+        if (refreshTimer != null) refreshTimer.stop();
     }
 
     /**
-     * Renders the given characters to the code outline image starting at the
-     * given position.
+     * Renders the given columns and everything to the right of them, on every
+     * visible line. The area must have been cleared already.
      *
-     * @param chars a character array
-     * @param offset the offset into the given array to start rendering
-     * @param len the number of characters to render
-     * @param pos the position at which to start rendering
+     * @param fromCol the first column to render
      */
-    protected void renderToImg(CharSequence chars, int offset, int len, LogicalPosition pos) {
-        if (img == null) return;
-
-        int line = pos.line, col = pos.column;
-
-        // Render characters
-        for (int i = offset; i < len; i++) {
-            final char ch = chars.charAt(i);
-
-            if (ch == '\n') {
-                line++;
-
-                if (getScaledLine(line, scale) >= visibleImgHeight) break;
-                col = 0;
-            } else {
-                if (col >= visibleImgWidth) continue;
-
-                // Whitespaces are skipped inside drawChar
-                drawChar(ch, col, line, editor.getColorsScheme().getDefaultForeground());
-
-                col++;
-            }
+    private void renderColumnsToImg(int fromCol) {
+        final Object event = probe.begin(CodeOutlineProbe.INCREMENTAL_RENDER);
+        final long startTime = System.nanoTime();
+
+        canvas.renderColumns(fromCol);
+
+        final int lines = text.getLineCount();
+        final long pixels = (long) (canvas.getWidth() - fromCol) * canvas.getHeight();
+        recorder.record(CodeOutlineFlightRecorder.INCREMENTAL_RENDER, this,
+                CodeOutlineCanvas.PATH_COLUMNS, pixels,
+                System.nanoTime() - startTime, 0, 0);
+        if (event != null) {
+            probe.end(event, text.getTextLength(), lines, 0, lines - 1,
+                    pixels, CodeOutlineCanvas.PATH_COLUMNS);
         }
     }
 
-
     /**
-     * Renders the characters at the given document offset to the code outline
-     * image until the first newline character is reached or until the right
-     * edge of the image is reached and no more characters can be rendered.
+     * Renders every line which is drawn at or below the given row of the
+     * image. The area must have been cleared already.
      *
-     * @param startOff the offset into the document at which to start rendering
-     * @return how many characters were rendered, not including the newline
+     * @param fromY the first image row to render
      */
-    protected int renderRestOfLineToImg(int startOff) {
-        final CharSequence chars = document.getCharsSequence();
-        final int endOff = document.getTextLength();
-        if (startOff >= endOff) return 0;
-
-        final LogicalPosition startPos = editor.offsetToLogicalPosition(startOff);
-        final int line = startPos.line;
-
-        int col = startPos.column;
-        int painted = 0;
-        for (int i = startOff; i < endOff; i++) {
-            final char ch = chars.charAt(i);
-
-            if (ch == '\n' || col >= visibleImgWidth) break;
-
-            drawChar(ch, col, line, editor.getColorsScheme().getDefaultForeground());
-            painted++;
-            col++;
+    private void renderRowsToImg(int fromY) {
+        final Object event = probe.begin(CodeOutlineProbe.INCREMENTAL_RENDER);
+        final long startTime = System.nanoTime();
+
+        final int line = canvas.renderRows(fromY);
+        if (line < 0) return;
+
+        final int lines = text.getLineCount();
+        final long pixels = (long) canvas.getWidth() * (canvas.getHeight() - fromY);
+        recorder.record(CodeOutlineFlightRecorder.INCREMENTAL_RENDER, this,
+                CodeOutlineCanvas.PATH_ROWS, pixels,
+                System.nanoTime() - startTime, 0, 0);
+        if (event != null) {
+            probe.end(event, text.getTextLength(), lines, line, lines - 1,
+                    pixels, CodeOutlineCanvas.PATH_ROWS);
         }
-        return painted;
-    }
-
-    public static Color getCharColor(Editor e, HighlighterIterator h) {
-        final Color color = h.getTextAttributes().getForegroundColor();
-        return color != null ? color : e.getColorsScheme().getDefaultForeground();
     }
 
     /**
-     * Renders a single character at the given line and column.
+     * Ensures that the backing image is as large or larger than the given
+     * dimensions. If it is not, a larger buffer is taken from the buffer pool.
+     * As long as the vertical scale stays the same, only the newly exposed
+     * area is rendered; otherwise a stretched copy of the last frame is shown
+     * until resizing pauses, and the text outline is then re-rendered.
      *
-     * @param ch the character to render
-     * @param col the column number
-     * @param line the line number
+     * @param gc a graphics configuration object
+     * @param width the minimum width of the image
+     * @param height the minimum height of the image
      */
-    protected void drawChar(char ch, int col, int line, Color color) {
-        if (!Character.isWhitespace(ch)) {
-            img.setRGB(col, getScaledLine(line, scale), color.getRGB());
+    public boolean checkImage(GraphicsConfiguration gc, int width, int height) {
+        if (!ensureImage(gc, width, height)) return false;
+
+        synchronized (this) {
+            shade.invalidate();
         }
+
+        // the governor must not be called while holding our lock
+        governor.touch(this);
+        governor.checkBudget();
+
+        return true;
     }
 
     /**
-     * Ensures that the backing image is as large or larger than the given
-     * dimensions. If it is not, the image is re-created and the text outline is
-     * re-rendered.
+     * Does the work of {@link #checkImage}.
      *
      * @param gc a graphics configuration object
      * @param width the minimum width of the image
      * @param height the minimum height of the image
+     * @return whether the image was re-created or re-rendered
      */
-    public synchronized boolean checkImage(GraphicsConfiguration gc, int width, int height) {
-        if (emptyLine == null || visibleImgWidth != width) {
-            emptyLine = genColoredLine(width, COLORMASK_TRANSPARENT);
-        }
+    private synchronized boolean ensureImage(GraphicsConfiguration gc, int width, int height) {
+        final int oldWidth = canvas.getWidth();
+        final int oldHeight = canvas.getHeight();
 
-        visibleImgWidth = width;
-        visibleImgHeight = height;
+        canvas.setSize(width, height);
 
-        if (img == null || img.getWidth() < width || img.getHeight() < height) {
-            if (img != null) {
-                // clear out the old image data
-                img.flush();
-                img = null;
-            }
-
-            // we allow 40 pixels of resizing before generating a new image
+        BufferedImage img = canvas.getImage();
+        if (img == null) {
             if (gc == null) return false;
 
-            img = gc.createCompatibleImage(width + 40, height + 40, Transparency.TRANSLUCENT);
+            canvas.setImage(governor.getBufferPool().acquire(gc, width, height));
 
-            refreshImage();
+            // switching back to a tab should not need a full render
+            final CodeOutlineImageCache.Entry cached = governor.getImageCache().get(document,
+                    document.getModificationStamp(), width, height);
+            if (cached != null) {
+                cached.decode(canvas.getImage());
+                canvas.setScale(cached.getScale());
+            } else if (!restoreFromDisk(width, height)) {
+                refreshImage();
+            }
 
             return true;
-        } else {
-            // if the viewing area is now larger than what we've been painting,
-            // we should repaint the whole thing
-            if (width > img.getWidth() || height > img.getHeight()) {
-                refreshImage();
+        }
+
+        if (width == oldWidth && height == oldHeight) return false;
+
+        // the rendered lines only stay where they are if the scale does
+        final boolean sameScale = !pendingRefresh
+                && getScaleFactor(height, text.getLineCount()) == canvas.getScale();
+
+        final boolean grown = img.getWidth() < width || img.getHeight() < height;
+        if (grown) {
+            if (gc == null) return false;
+
+            // keep showing the last frame while resizing: as it is if the
+            // scale stays the same, otherwise stretched to the new size
+            final BufferedImage old = img;
+            img = governor.getBufferPool().acquire(gc, width, height);
+            canvas.setImage(img);
 
-                return true;
+            final Graphics2D g = img.createGraphics();
+            try {
+                g.setComposite(AlphaComposite.Src);
+                if (sameScale) {
+                    g.drawImage(old, 0, 0, oldWidth, oldHeight, 0, 0, oldWidth, oldHeight, null);
+                } else {
+                    g.drawImage(old, 0, 0, width, height, 0, 0, oldWidth, oldHeight, null);
+                }
+            } finally {
+                g.dispose();
             }
+
+            governor.getBufferPool().release(old);
         }
 
-        return false;
+        if (!sameScale) {
+            refreshLater();
+            return grown;
+        }
+
+        // only render what has just become visible
+        boolean rendered = false;
+        if (width > oldWidth) {
+            canvas.clearArea(oldWidth, 0, width - oldWidth, height);
+            renderColumnsToImg(oldWidth);
+            rendered = true;
+        }
+        if (height > oldHeight) {
+            canvas.clearArea(0, oldHeight, width, height - oldHeight);
+            renderRowsToImg(oldHeight);
+            rendered = true;
+        }
+
+        return grown || rendered;
+    }
+
+    /**
+     * Paints the given area of this code outline image to the given graphics
+     * device.
+     *
+     * @param g a graphics device
+     * @param area the area to paint
+     */
+    public void paint(Graphics2D g, Rectangle area) {
+        canvas.paint(g, area);
+    }
+
+    /**
+     * Returns whether painting this image covers the given area completely,
+     * so that it does not have to be cleared first.
+     *
+     * @param width the width of the area, from the left edge
+     * @param height the height of the area, from the top edge
+     * @return whether this image covers the given area
+     */
+    public synchronized boolean covers(int width, int height) {
+        return canvas.getImage() != null
+                && canvas.getWidth() >= width && canvas.getHeight() >= height;
     }
 
     /**
-     * Paints this code outline image to the given graphics device.
+     * Paints the given area of this image with the given color blended in. The
+     * blended pixels are kept, so painting the same parts of the image again,
+     * such as while the shaded area moves, is an opaque copy.
      *
      * @param g a graphics device
+     * @param area the area to paint
+     * @param color the color to blend in
+     * @param alpha how much of the color to blend in, from 0 to 255
      */
-    public void paint(Graphics2D g) {
+    public synchronized void paintShaded(Graphics2D g, Rectangle area, Color color, int alpha) {
+        final BufferedImage img = canvas.getImage();
         if (img == null) return;
 
-        g.drawImage(img, null, 0, 0);
+        shade.setColor(color.getRGB(), alpha);
+        shade.paint(g, img, canvas.getWidth(), canvas.getHeight(), area);
     }
 }
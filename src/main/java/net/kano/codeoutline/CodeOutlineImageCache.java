@@ -0,0 +1,284 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline;
+
+import com.intellij.openapi.editor.Document;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An application-wide cache of the outline images of inactive editor tabs.
+ * Images are stored run-length encoded, which is very compact for the mostly
+ * transparent outline images, and are evicted in least-recently-used order.
+ * The number of bytes the cache may hold is decided by the
+ * {@link CodeOutlineMemoryGovernor}.
+ * <br><br>
+ * Each entry belongs to a document and is only valid for the document
+ * modification stamp at which it was encoded.
+ */
+public class CodeOutlineImageCache {
+    /** The maximum number of cached outlines. */
+    private static final int MAX_ENTRIES = 64;
+
+    /** The cached outlines, in access order. */
+    private final LinkedHashMap<Document, Entry> entries
+            = new LinkedHashMap<Document, Entry>(16, 0.75f, true);
+
+    /** The number of bytes held by all cached outlines. */
+    private long bytes = 0;
+
+    /**
+     * Encodes the visible area of the given image and stores it for the given
+     * document, replacing any previous entry.
+     *
+     * @param document the document the image outlines
+     * @param stamp the document modification stamp the image reflects
+     * @param img the outline image
+     * @param width the visible width of the image
+     * @param height the visible height of the image
+     * @param scale the vertical scale factor the image was rendered with
+     * @return the new cache entry, or <code>null</code> if the image is empty
+     */
+    public synchronized Entry put(Document document, long stamp,
+            BufferedImage img, int width, int height, double scale) {
+        remove(document);
+        if (width <= 0 || height <= 0) return null;
+
+        final Entry entry = new Entry(stamp, width, height, scale, encode(img, width, height));
+        entries.put(document, entry);
+        bytes += entry.getBytes();
+
+        trimTo(Long.MAX_VALUE);
+
+        return entry;
+    }
+
+    /**
+     * Returns the cached outline of the given document, if there is one which
+     * matches the given modification stamp and size.
+     *
+     * @param document a document
+     * @param stamp the current document modification stamp
+     * @param width the visible width of the image
+     * @param height the visible height of the image
+     * @return a matching cache entry, or <code>null</code>
+     */
+    public synchronized Entry get(Document document, long stamp, int width, int height) {
+        final Entry entry = entries.get(document);
+        if (entry == null) return null;
+
+        if (entry.stamp != stamp || entry.width != width || entry.height != height) {
+            // the entry can never become valid again
+            remove(document);
+            return null;
+        }
+
+        return entry;
+    }
+
+    /**
+     * Removes the cached outline of the given document, if any.
+     *
+     * @param document a document
+     */
+    public synchronized void remove(Document document) {
+        final Entry entry = entries.remove(document);
+        if (entry != null) bytes -= entry.getBytes();
+    }
+
+    /**
+     * Removes all cached outlines.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Returns the number of bytes held by all cached outlines.
+     *
+     * @return the size of this cache in bytes
+     */
+    public synchronized long getBytes() { return bytes; }
+
+    /**
+     * Evicts least recently used entries until this cache holds no more than
+     * the given number of bytes and no more than its maximum number of
+     * entries.
+     *
+     * @param maxBytes the maximum number of bytes to keep
+     */
+    public synchronized void trimTo(long maxBytes) {
+        final Iterator<Map.Entry<Document, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext() && (entries.size() > MAX_ENTRIES || bytes > maxBytes)) {
+            bytes -= it.next().getValue().getBytes();
+            it.remove();
+        }
+    }
+
+    /**
+     * Run-length encodes the given area of the given image. Every row is
+     * stored as a sequence of <code>(run length, ARGB color)</code> pairs whose
+     * run lengths add up to the width of the area.
+     *
+     * @param img an image
+     * @param width the width of the area to encode
+     * @param height the height of the area to encode
+     * @return the encoded data
+     */
+    private static int[] encode(BufferedImage img, int width, int height) {
+        final int[] row = new int[width];
+        int[] data = new int[Math.max(16, height * 4)];
+        int len = 0;
+
+        for (int y = 0; y < height; y++) {
+            img.getRGB(0, y, width, 1, row, 0, width);
+
+            int x = 0;
+            while (x < width) {
+                final int color = row[x];
+                int run = 1;
+                while (x + run < width && row[x + run] == color) run++;
+
+                if (len + 2 > data.length) {
+                    final int[] grown = new int[data.length * 2];
+                    System.arraycopy(data, 0, grown, 0, len);
+                    data = grown;
+                }
+                data[len++] = run;
+                data[len++] = color;
+
+                x += run;
+            }
+        }
+
+        final int[] result = new int[len];
+        System.arraycopy(data, 0, result, 0, len);
+        return result;
+    }
+
+    /**
+     * A single cached outline image.
+     */
+    public static final class Entry {
+        /** The document modification stamp the outline reflects. */
+        private final long stamp;
+        /** The visible width of the outline. */
+        private final int width;
+        /** The visible height of the outline. */
+        private final int height;
+        /** The vertical scale factor the outline was rendered with. */
+        private final double scale;
+        /** The run-length encoded rows of the outline. */
+        private final int[] data;
+
+        Entry(long stamp, int width, int height, double scale, int[] data) {
+            this.stamp = stamp;
+            this.width = width;
+            this.height = height;
+            this.scale = scale;
+            this.data = data;
+        }
+
+        long getStamp() { return stamp; }
+
+        int getWidth() { return width; }
+
+        int getHeight() { return height; }
+
+        int[] getData() { return data; }
+
+        public double getScale() { return scale; }
+
+        /**
+         * Returns the approximate number of bytes held by this entry.
+         *
+         * @return the size of this entry in bytes
+         */
+        public long getBytes() { return 4L * data.length + 48; }
+
+        /**
+         * Returns whether the given data holds exactly the given number of
+         * encoded rows of the given width, so that it can be decoded.
+         *
+         * @param width the width of a row
+         * @param height the number of rows
+         * @param data run-length encoded rows, as pairs of run length and
+         *        color
+         * @return whether the data can be decoded
+         */
+        static boolean isValid(int width, int height, int[] data) {
+            if (width < 0 || height < 0) return false;
+
+            int i = 0;
+            for (int y = 0; y < height; y++) {
+                int x = 0;
+                while (x < width) {
+                    if (i + 1 >= data.length) return false;
+
+                    final int run = data[i];
+                    if (run <= 0 || run > width - x) return false;
+
+                    x += run;
+                    i += 2;
+                }
+            }
+            return i == data.length;
+        }
+
+        /**
+         * Decodes this outline into the top left corner of the given image.
+         *
+         * @param img the image to decode to, at least as large as this entry
+         */
+        public void decode(BufferedImage img) {
+            final int[] row = new int[width];
+            int i = 0;
+
+            for (int y = 0; y < height; y++) {
+                int x = 0;
+                while (x < width) {
+                    final int run = data[i++];
+                    final int color = data[i++];
+                    for (int end = x + run; x < end; x++) row[x] = color;
+                }
+                img.setRGB(0, y, width, 1, row, 0, width);
+            }
+        }
+    }
+}
@@ -45,7 +45,8 @@ public interface CodeOutlineListener {
     /**
      * Called when the given region of the given code outline image should be
      * refreshed. If <code>region</code> is <code>null</code>, the entire image
-     * should be refreshed.
+     * should be refreshed. The region is reused for later updates, so it must
+     * not be kept after this method returns.
      *
      * @param image the image to refresh
      * @param region the region to refresh, or <code>null</code>
@@ -0,0 +1,293 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline;
+
+import com.intellij.openapi.diagnostic.Logger;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the memory used by all code outline images and caches within the
+ * budget set in the {@link CodeOutlinePrefs}. Outlines which have not been
+ * viewed for the longest time are evicted first, and outlines which are
+ * currently shown are never evicted.
+ * <br><br>
+ * When the JVM reports that a heap memory pool is running low, everything
+ * which is not visible is dropped at once.
+ */
+public class CodeOutlineMemoryGovernor {
+    private static final Logger logger = Logger.getInstance(CodeOutlineMemoryGovernor.class.getName());
+
+    /**
+     * The fraction of a heap pool's maximum size at which we ask to be
+     * notified, if nobody else has set a threshold on that pool yet.
+     */
+    private static final double LOW_MEMORY_THRESHOLD = 0.85;
+
+    /** The preferences holding the memory budget. */
+    private final CodeOutlinePrefs prefs;
+
+    /** The compact images of inactive tabs. */
+    private final CodeOutlineImageCache imageCache = new CodeOutlineImageCache();
+    /** Thumbnails of files, shared by all overviews. */
+    private final CodeOutlineThumbnailCache thumbnailCache = new CodeOutlineThumbnailCache();
+    /** Idle image buffers, kept for reuse when resizing. */
+    private final CodeOutlineBufferPool bufferPool = new CodeOutlineBufferPool();
+    /** The outlines stored across IDE restarts; not accounted as memory. */
+    private final CodeOutlineDiskCache diskCache = new CodeOutlineDiskCache();
+
+    /** All live outline images, least recently viewed first. */
+    private final LinkedHashMap<CodeOutlineImage, Boolean> images
+            = new LinkedHashMap<CodeOutlineImage, Boolean>(16, 0.75f, true);
+
+    /** Heap pools on which we set a usage threshold ourselves. */
+    private final Map<MemoryPoolMXBean, Long> ownThresholds
+            = new IdentityHashMap<MemoryPoolMXBean, Long>();
+
+    /** A listener for JVM low memory notifications. */
+    private final NotificationListener lowMemoryListener = new NotificationListener() {
+        public void handleNotification(Notification notification, Object handback) {
+            final String type = notification.getType();
+            if (MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type)
+                    || MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type)) {
+                dropHidden();
+            }
+        }
+    };
+
+    /** A listener for changes to the memory budget. */
+    private final PropertyChangeListener budgetListener = new PropertyChangeListener() {
+        public void propertyChange(PropertyChangeEvent evt) {
+            checkBudget();
+        }
+    };
+
+    /**
+     * Creates a new memory governor using the budget in the given preferences.
+     *
+     * @param prefs the code outline preferences
+     */
+    public CodeOutlineMemoryGovernor(CodeOutlinePrefs prefs) {
+        this.prefs = prefs;
+    }
+
+    /**
+     * Starts listening for budget changes and JVM low memory notifications.
+     */
+    public void install() {
+        prefs.addPropertyChangeListener("memoryBudget", budgetListener);
+
+        diskCache.trim();
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP) continue;
+            if (!pool.isCollectionUsageThresholdSupported()) continue;
+
+            final MemoryUsage usage = pool.getCollectionUsage();
+            if (usage == null || usage.getMax() <= 0) continue;
+
+            // don't override a threshold somebody else relies on
+            if (pool.getCollectionUsageThreshold() == 0) {
+                final long threshold = (long) (usage.getMax() * LOW_MEMORY_THRESHOLD);
+                pool.setCollectionUsageThreshold(threshold);
+                ownThresholds.put(pool, threshold);
+            }
+        }
+
+        final NotificationEmitter emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+        emitter.addNotificationListener(lowMemoryListener, null, null);
+    }
+
+    /**
+     * Stops listening for notifications and drops all cached outlines.
+     */
+    public void uninstall() {
+        prefs.removePropertyChangeListener("memoryBudget", budgetListener);
+
+        final NotificationEmitter emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+        try {
+            emitter.removeNotificationListener(lowMemoryListener);
+        } catch (ListenerNotFoundException ignored) { }
+
+        for (Map.Entry<MemoryPoolMXBean, Long> entry : ownThresholds.entrySet()) {
+            final MemoryPoolMXBean pool = entry.getKey();
+            // only reset the threshold if it's still the one we set
+            if (pool.getCollectionUsageThreshold() == entry.getValue()) {
+                pool.setCollectionUsageThreshold(0);
+            }
+        }
+        ownThresholds.clear();
+
+        imageCache.clear();
+        thumbnailCache.trimTo(0);
+        bufferPool.trimTo(0);
+    }
+
+    /**
+     * Returns the cache holding the compact images of inactive tabs.
+     *
+     * @return the outline image cache
+     */
+    public CodeOutlineImageCache getImageCache() { return imageCache; }
+
+    /**
+     * Returns the cache holding file thumbnails.
+     *
+     * @return the thumbnail cache
+     */
+    public CodeOutlineThumbnailCache getThumbnailCache() { return thumbnailCache; }
+
+    /**
+     * Returns the pool of idle image buffers.
+     *
+     * @return the outline buffer pool
+     */
+    public CodeOutlineBufferPool getBufferPool() { return bufferPool; }
+
+    /**
+     * Returns the cache holding outlines across IDE restarts.
+     *
+     * @return the outline disk cache
+     */
+    public CodeOutlineDiskCache getDiskCache() { return diskCache; }
+
+    /**
+     * Starts accounting for the given image.
+     *
+     * @param image an outline image
+     */
+    public synchronized void register(CodeOutlineImage image) {
+        images.put(image, Boolean.TRUE);
+    }
+
+    /**
+     * Stops accounting for the given image.
+     *
+     * @param image an outline image
+     */
+    public synchronized void unregister(CodeOutlineImage image) {
+        images.remove(image);
+    }
+
+    /**
+     * Marks the given image as the most recently viewed one.
+     *
+     * @param image an outline image
+     */
+    public synchronized void touch(CodeOutlineImage image) {
+        images.get(image);
+    }
+
+    /**
+     * Returns the number of bytes held by all outline images and caches.
+     *
+     * @return the memory in use, in bytes
+     */
+    public synchronized long getBytes() {
+        long bytes = imageCache.getBytes() + thumbnailCache.getBytes() + bufferPool.getBytes();
+        for (CodeOutlineImage image : images.keySet()) {
+            bytes += image.getBufferBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the number of live outline images.
+     *
+     * @return the number of registered images
+     */
+    public synchronized int getImageCount() {
+        return images.size();
+    }
+
+    /**
+     * Returns the number of bytes held by the buffers of live outline images,
+     * not including any caches.
+     *
+     * @return the memory used by image buffers, in bytes
+     */
+    public synchronized long getImageBytes() {
+        long bytes = 0;
+        for (CodeOutlineImage image : images.keySet()) {
+            bytes += image.getBufferBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Evicts least recently viewed outlines until the memory in use is within
+     * the budget. Idle pooled buffers are dropped first, then thumbnails,
+     * then cached outlines. Live images hold buffers only while shown, since
+     * a hidden image moves its buffer to the image cache when it is
+     * suspended, so they are never evicted.
+     */
+    public synchronized void checkBudget() {
+        final long budget = prefs.getMemoryBudget() * 1024L * 1024L;
+
+        long buffers = 0;
+        for (CodeOutlineImage image : images.keySet()) {
+            buffers += image.getBufferBytes();
+        }
+
+        final long free = budget - buffers;
+        bufferPool.trimTo(Math.max(0, free - imageCache.getBytes() - thumbnailCache.getBytes()));
+        thumbnailCache.trimTo(Math.max(0, free - imageCache.getBytes() - bufferPool.getBytes()));
+        imageCache.trimTo(Math.max(0, free - thumbnailCache.getBytes() - bufferPool.getBytes()));
+    }
+
+    /**
+     * Drops every cached outline, which is everything not visible.
+     */
+    public synchronized void dropHidden() {
+        logger.info("Low memory, dropping hidden code outlines");
+
+        imageCache.clear();
+        thumbnailCache.trimTo(0);
+        bufferPool.trimTo(0);
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline;
+
+import com.intellij.openapi.diagnostic.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects what the code outlines cost: latency histograms of incremental
+ * updates, full refreshes and painting, the number of pixels touched, the
+ * rate of document events, and the memory held by images. The metrics are
+ * published through JMX, and can be shown over the outline itself.
+ * <br><br>
+ * Recording is lock-free, so it may be done from any thread.
+ */
+public class CodeOutlineMetrics implements CodeOutlineMetricsMBean {
+    private static final Logger logger = Logger.getInstance(CodeOutlineMetrics.class.getName());
+
+    /** The name under which the metrics are registered with JMX. */
+    public static final String OBJECT_NAME = "net.kano.codeoutline:type=Metrics";
+
+    /** The governor accounting for image memory. */
+    private final CodeOutlineMemoryGovernor governor;
+
+    /** The latency of incremental updates after document changes. */
+    private final Histogram updates = new Histogram();
+    /** The latency of full re-renders. */
+    private final Histogram refreshes = new Histogram();
+    /** The latency of painting outline panels. */
+    private final Histogram paints = new Histogram();
+
+    /** The most recent outline events. */
+    private final CodeOutlineFlightRecorder recorder = new CodeOutlineFlightRecorder();
+
+    /** The number of image pixels rendered or painted. */
+    private final AtomicLong pixelsTouched = new AtomicLong();
+    /** The number of document changes seen by outline images. */
+    private final AtomicLong documentEvents = new AtomicLong();
+
+    /** The time at which the event rate was last computed. */
+    private long rateTime = System.nanoTime();
+    /** The number of document events when the rate was last computed. */
+    private long rateEvents = 0;
+    /** The last computed event rate. */
+    private double eventsPerSecond = 0;
+
+    /**
+     * Creates a new metrics registry.
+     *
+     * @param governor the governor accounting for image memory
+     */
+    public CodeOutlineMetrics(CodeOutlineMemoryGovernor governor) {
+        this.governor = governor;
+    }
+
+    /**
+     * Publishes these metrics through the platform MBean server.
+     */
+    public void install() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) server.registerMBean(this, name);
+        } catch (JMException e) {
+            logger.warn("Could not register code outline metrics", e);
+        }
+    }
+
+    /**
+     * Removes these metrics from the platform MBean server.
+     */
+    public void uninstall() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+        } catch (JMException e) {
+            logger.warn("Could not unregister code outline metrics", e);
+        }
+    }
+
+    /**
+     * Records an incremental update of an image.
+     *
+     * @param nanos how long the update took
+     */
+    public void recordUpdate(long nanos) {
+        documentEvents.incrementAndGet();
+        updates.record(nanos);
+    }
+
+    /**
+     * Records a full re-render of an image.
+     *
+     * @param nanos how long the render took
+     * @param pixels the area of the image rendered
+     */
+    public void recordRefresh(long nanos, long pixels) {
+        refreshes.record(nanos);
+        pixelsTouched.addAndGet(pixels);
+    }
+
+    /**
+     * Records pixels rendered by an incremental update.
+     *
+     * @param pixels the area of the image re-rendered
+     */
+    public void recordPixels(long pixels) {
+        pixelsTouched.addAndGet(pixels);
+    }
+
+    /**
+     * Records the painting of an outline panel.
+     *
+     * @param nanos how long painting took
+     * @param pixels the area painted
+     */
+    public void recordPaint(long nanos, long pixels) {
+        paints.record(nanos);
+        pixelsTouched.addAndGet(pixels);
+    }
+
+    /**
+     * Returns the flight recorder keeping the most recent outline events.
+     *
+     * @return the outline flight recorder
+     */
+    public CodeOutlineFlightRecorder getFlightRecorder() { return recorder; }
+
+    /**
+     * Returns the histogram of incremental update latencies.
+     *
+     * @return the update histogram
+     */
+    public Histogram getUpdates() { return updates; }
+
+    /**
+     * Returns the histogram of full re-render latencies.
+     *
+     * @return the refresh histogram
+     */
+    public Histogram getRefreshes() { return refreshes; }
+
+    /**
+     * Returns the histogram of painting latencies.
+     *
+     * @return the paint histogram
+     */
+    public Histogram getPaints() { return paints; }
+
+    public long getUpdateCount() { return updates.getCount(); }
+    public double getUpdateMeanMicros() { return updates.getMean() / 1000.0; }
+    public long getUpdateP99Micros() { return updates.getPercentile(0.99) / 1000; }
+    public long getUpdateMaxMicros() { return updates.getMax() / 1000; }
+
+    public long getRefreshCount() { return refreshes.getCount(); }
+    public double getRefreshMeanMicros() { return refreshes.getMean() / 1000.0; }
+    public long getRefreshP99Micros() { return refreshes.getPercentile(0.99) / 1000; }
+    public long getRefreshMaxMicros() { return refreshes.getMax() / 1000; }
+
+    public long getPaintCount() { return paints.getCount(); }
+    public double getPaintMeanMicros() { return paints.getMean() / 1000.0; }
+    public long getPaintP99Micros() { return paints.getPercentile(0.99) / 1000; }
+    public long getPaintMaxMicros() { return paints.getMax() / 1000; }
+
+    public long getPixelsTouched() { return pixelsTouched.get(); }
+
+    public long getDocumentEvents() { return documentEvents.get(); }
+
+    /**
+     * Returns the rate of document events, averaged over at least the last
+     * second.
+     *
+     * @return document events per second
+     */
+    public synchronized double getEventsPerSecond() {
+        final long now = System.nanoTime();
+        final long elapsed = now - rateTime;
+        if (elapsed >= 1000000000L) {
+            final long events = documentEvents.get();
+            eventsPerSecond = (events - rateEvents) * 1e9 / elapsed;
+            rateEvents = events;
+            rateTime = now;
+        }
+        return eventsPerSecond;
+    }
+
+    public int getImageCount() { return governor.getImageCount(); }
+
+    public long getImageBytes() { return governor.getImageBytes(); }
+
+    public long getBytesPerImage() {
+        final int count = governor.getImageCount();
+        return count == 0 ? 0 : governor.getImageBytes() / count;
+    }
+
+    public void reset() {
+        updates.reset();
+        refreshes.reset();
+        paints.reset();
+        pixelsTouched.set(0);
+        documentEvents.set(0);
+        synchronized (this) {
+            rateEvents = 0;
+            rateTime = System.nanoTime();
+            eventsPerSecond = 0;
+        }
+    }
+
+    /**
+     * A latency histogram with one bucket per power of two nanoseconds.
+     */
+    public static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * Records the given latency.
+         *
+         * @param nanos a latency in nanoseconds
+         */
+        public void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+
+            buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(nanos | 1));
+            count.incrementAndGet();
+            sum.addAndGet(nanos);
+
+            long old;
+            while (nanos > (old = max.get()) && !max.compareAndSet(old, nanos)) { }
+        }
+
+        public long getCount() { return count.get(); }
+
+        public long getMax() { return max.get(); }
+
+        /**
+         * Returns the mean latency.
+         *
+         * @return the mean in nanoseconds
+         */
+        public double getMean() {
+            final long n = count.get();
+            return n == 0 ? 0 : (double) sum.get() / n;
+        }
+
+        /**
+         * Returns an upper bound of the given percentile, accurate to a
+         * factor of two.
+         *
+         * @param p a fraction between 0 and 1
+         * @return the percentile in nanoseconds
+         */
+        public long getPercentile(double p) {
+            final long n = count.get();
+            if (n == 0) return 0;
+
+            final long rank = (long) Math.ceil(p * n);
+            long seen = 0;
+            for (int i = 0; i < 64; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) return i >= 62 ? max.get() : Math.min(max.get(), (2L << i) - 1);
+            }
+            return max.get();
+        }
+
+        /**
+         * Clears this histogram.
+         */
+        public void reset() {
+            for (int i = 0; i < 64; i++) buckets.set(i, 0);
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+        }
+    }
+}
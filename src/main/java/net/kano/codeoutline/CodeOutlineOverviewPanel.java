@@ -0,0 +1,408 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shows outline thumbnails of many files side by side, as a grid: either all
+ * files open in editors, or all files in the directory of the selected file.
+ * Thumbnails are only rendered once their cell scrolls into view, and are kept
+ * in the application-wide thumbnail cache.
+ */
+public class CodeOutlineOverviewPanel extends JPanel implements Scrollable, Disposable {
+    /** The width of a thumbnail. */
+    private static final int THUMB_WIDTH = 100;
+    /** The height of a thumbnail. */
+    private static final int THUMB_HEIGHT = 160;
+    /** The height of the file name below a thumbnail. */
+    private static final int LABEL_HEIGHT = 16;
+    /** The space around cells. */
+    private static final int GAP = 8;
+
+    private static final int CELL_WIDTH = THUMB_WIDTH + GAP;
+    private static final int CELL_HEIGHT = THUMB_HEIGHT + LABEL_HEIGHT + GAP;
+
+    /** The code outline plugin instance which instantiated this panel. */
+    private final CodeOutlinePlugin plugin;
+    /** The project for which this panel is shown. */
+    private final Project project;
+    private final FileEditorManager fem;
+
+    /** The files shown, in grid order. */
+    private List<VirtualFile> files = Collections.emptyList();
+    /** Thumbnails being rendered. */
+    private final Map<VirtualFile, CodeOutlineThumbnailRenderer.Request> pending
+            = new IdentityHashMap<VirtualFile, CodeOutlineThumbnailRenderer.Request>();
+
+    /**
+     * Whether the files in the selected file's directory are shown, rather
+     * than the open files.
+     */
+    private boolean directoryMode = false;
+
+    /** The context menu that appears when right-clicking the overview. */
+    private JPopupMenu contextMenu = new JPopupMenu();
+
+    { // init
+        setBackground(UIManager.getColor("Panel.background"));
+
+        final JRadioButtonMenuItem openFilesItem = new JRadioButtonMenuItem(new ModeAction("Open Files", KeyEvent.VK_O, false));
+        final JRadioButtonMenuItem directoryItem = new JRadioButtonMenuItem(new ModeAction("Current Directory", KeyEvent.VK_D, true));
+        final ButtonGroup modes = new ButtonGroup();
+        modes.add(openFilesItem);
+        modes.add(directoryItem);
+        openFilesItem.setSelected(true);
+
+        contextMenu.add(openFilesItem);
+        contextMenu.add(directoryItem);
+        contextMenu.addSeparator();
+        contextMenu.add(new AbstractAction("Refresh") {
+            {
+                putValue(MNEMONIC_KEY, new Integer(KeyEvent.VK_R));
+            }
+
+            public void actionPerformed(ActionEvent e) {
+                reload();
+            }
+        });
+
+        addMouseListener(new MouseAdapter() {
+            public void mousePressed(MouseEvent e) {
+                if (SwingUtilities.isRightMouseButton(e)) {
+                    contextMenu.show(CodeOutlineOverviewPanel.this, e.getX(), e.getY());
+                } else if (SwingUtilities.isLeftMouseButton(e)) {
+                    final VirtualFile file = getFileAt(e.getPoint());
+                    if (file != null) fem.openFile(file, true);
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates a new overview panel for the given plugin and project.
+     *
+     * @param plugin a code outline plugin instance
+     * @param project the project with which this panel is associated
+     */
+    public CodeOutlineOverviewPanel(CodeOutlinePlugin plugin, Project project) {
+        this.plugin = plugin;
+        this.project = project;
+        this.fem = FileEditorManager.getInstance(project);
+    }
+
+    /**
+     * Cancels all thumbnails being rendered.
+     */
+    public void dispose() {
+        cancelPending(Collections.<VirtualFile>emptySet());
+    }
+
+    /**
+     * Reloads the list of files shown, if it depends on the open files or the
+     * selected file.
+     */
+    public void filesChanged() {
+        if (isShowing()) reload();
+    }
+
+    /**
+     * Reloads the list of files shown and repaints.
+     */
+    public void reload() {
+        final List<VirtualFile> list = new ArrayList<VirtualFile>();
+        if (directoryMode) {
+            final VirtualFile[] selected = fem.getSelectedFiles();
+            final VirtualFile dir = selected.length > 0 ? selected[0].getParent() : null;
+            if (dir != null) {
+                for (VirtualFile child : dir.getChildren()) {
+                    if (!child.isDirectory()) list.add(child);
+                }
+                Collections.sort(list, new Comparator<VirtualFile>() {
+                    public int compare(VirtualFile a, VirtualFile b) {
+                        return a.getName().compareToIgnoreCase(b.getName());
+                    }
+                });
+            }
+        } else {
+            list.addAll(Arrays.asList(fem.getOpenFiles()));
+        }
+
+        files = list;
+        cancelPending(new HashSet<VirtualFile>(list));
+
+        revalidate();
+        repaint();
+    }
+
+    public void addNotify() {
+        super.addNotify();
+        reload();
+    }
+
+    /**
+     * Returns the number of grid columns at the current width.
+     */
+    private int getColumns() {
+        return Math.max(1, (getWidth() - GAP) / CELL_WIDTH);
+    }
+
+    /**
+     * Returns the file whose cell contains the given point.
+     *
+     * @param point a point in this panel
+     * @return a file, or <code>null</code>
+     */
+    private VirtualFile getFileAt(Point point) {
+        final int col = (point.x - GAP) / CELL_WIDTH;
+        final int row = (point.y - GAP) / CELL_HEIGHT;
+        if (point.x < GAP || point.y < GAP || col >= getColumns()) return null;
+
+        final int index = row * getColumns() + col;
+        return index < files.size() ? files.get(index) : null;
+    }
+
+    public Dimension getPreferredSize() {
+        final Container parent = getParent();
+        final int width = parent instanceof JViewport ? parent.getWidth() : getWidth();
+        final int columns = Math.max(1, (width - GAP) / CELL_WIDTH);
+        final int rows = (files.size() + columns - 1) / columns;
+        return new Dimension(GAP + columns * CELL_WIDTH, GAP + rows * CELL_HEIGHT);
+    }
+
+    protected void paintComponent(Graphics g1) {
+        final Graphics2D g = (Graphics2D) g1;
+
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+
+        g.setColor(getBackground());
+        g.fill(clip);
+
+        final List<VirtualFile> files = this.files;
+        final int columns = getColumns();
+        final CodeOutlineThumbnailCache cache = plugin.getMemoryGovernor().getThumbnailCache();
+
+        // only the cells in the clip are painted, and only those in view are
+        // rendered
+        final int firstRow = Math.max(0, (clip.y - GAP) / CELL_HEIGHT);
+        final int lastRow = (clip.y + clip.height - GAP) / CELL_HEIGHT;
+        final int end = Math.min(files.size(), (lastRow + 1) * columns);
+        for (int i = firstRow * columns; i < end; i++) {
+            final VirtualFile file = files.get(i);
+            final int x = GAP + (i % columns) * CELL_WIDTH;
+            final int y = GAP + (i / columns) * CELL_HEIGHT;
+
+            final BufferedImage thumbnail = cache.get(file, getStamp(file),
+                    THUMB_WIDTH, THUMB_HEIGHT);
+            if (thumbnail != null) {
+                g.drawImage(thumbnail, x, y, null);
+            } else {
+                g.setColor(getBackground().darker());
+                g.fillRect(x, y, THUMB_WIDTH, THUMB_HEIGHT);
+                requestThumbnail(file);
+            }
+
+            g.setColor(getForeground());
+            g.drawRect(x, y, THUMB_WIDTH - 1, THUMB_HEIGHT - 1);
+            g.drawString(getLabel(g, file.getName()), x, y + THUMB_HEIGHT + LABEL_HEIGHT - 4);
+        }
+
+        cancelPending(getVisibleFiles());
+    }
+
+    /**
+     * Shortens the given file name to fit below a thumbnail.
+     */
+    private static String getLabel(Graphics2D g, String name) {
+        final FontMetrics fm = g.getFontMetrics();
+        if (fm.stringWidth(name) <= THUMB_WIDTH) return name;
+
+        String label = name;
+        while (label.length() > 1 && fm.stringWidth(label + "...") > THUMB_WIDTH) {
+            label = label.substring(0, label.length() - 1);
+        }
+        return label + "...";
+    }
+
+    /**
+     * Returns the files whose cells are currently scrolled into view.
+     */
+    private Set<VirtualFile> getVisibleFiles() {
+        final Rectangle visible = getVisibleRect();
+        final int columns = getColumns();
+        final int firstRow = Math.max(0, (visible.y - GAP) / CELL_HEIGHT);
+        final int lastRow = (visible.y + visible.height - GAP) / CELL_HEIGHT;
+        final int end = Math.min(files.size(), (lastRow + 1) * columns);
+
+        final Set<VirtualFile> result = new HashSet<VirtualFile>();
+        for (int i = firstRow * columns; i < end; i++) {
+            result.add(files.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the document of the given file if it is open in an editor, so
+     * that its thumbnail shows unsaved changes.
+     *
+     * @param file a file
+     * @return the file's document, or <code>null</code> if it is not open
+     */
+    private Document getOpenDocument(VirtualFile file) {
+        if (!fem.isFileOpen(file)) return null;
+        return FileDocumentManager.getInstance().getCachedDocument(file);
+    }
+
+    /**
+     * Returns the modification stamp of what the thumbnail of the given file
+     * shows: its document if it is open, or the file itself.
+     */
+    private long getStamp(VirtualFile file) {
+        final Document document = getOpenDocument(file);
+        return document != null ? document.getModificationStamp() : file.getModificationStamp();
+    }
+
+    /**
+     * Starts rendering the thumbnail of the given file, unless it is being
+     * rendered already. A request the renderer cancelled to make room for
+     * newer ones is made again.
+     */
+    private void requestThumbnail(final VirtualFile file) {
+        final CodeOutlineThumbnailRenderer.Request request = pending.get(file);
+        if (request != null && !request.isCancelled()) return;
+
+        final Document document = getOpenDocument(file);
+        final long stamp = document != null ? document.getModificationStamp()
+                : file.getModificationStamp();
+        pending.put(file, plugin.getThumbnailRenderer().render(project, file, document,
+                THUMB_WIDTH, THUMB_HEIGHT, new CodeOutlineThumbnailRenderer.Callback() {
+            public void thumbnailRendered(VirtualFile file, BufferedImage thumbnail) {
+                pending.remove(file);
+
+                final CodeOutlineMemoryGovernor governor = plugin.getMemoryGovernor();
+                governor.getThumbnailCache().put(file, stamp, thumbnail);
+                governor.checkBudget();
+
+                repaintFile(file);
+            }
+        }));
+    }
+
+    /**
+     * Repaints the cell of the given file, if it is shown.
+     */
+    private void repaintFile(VirtualFile file) {
+        final int index = files.indexOf(file);
+        if (index < 0) return;
+
+        final int columns = getColumns();
+        repaint(GAP + (index % columns) * CELL_WIDTH, GAP + (index / columns) * CELL_HEIGHT,
+                CELL_WIDTH, CELL_HEIGHT);
+    }
+
+    /**
+     * Cancels the thumbnails being rendered for all files but the given ones.
+     *
+     * @param keep the files whose thumbnails are still wanted
+     */
+    private void cancelPending(Set<VirtualFile> keep) {
+        final Iterator<Map.Entry<VirtualFile, CodeOutlineThumbnailRenderer.Request>> it
+                = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<VirtualFile, CodeOutlineThumbnailRenderer.Request> entry = it.next();
+            if (!keep.contains(entry.getKey())) {
+                entry.getValue().cancel();
+                it.remove();
+            }
+        }
+    }
+
+    public Dimension getPreferredScrollableViewportSize() { return getPreferredSize(); }
+
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return CELL_HEIGHT / 4;
+    }
+
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+    }
+
+    public boolean getScrollableTracksViewportWidth() { return true; }
+
+    public boolean getScrollableTracksViewportHeight() { return false; }
+
+    /**
+     * An action that switches between showing open files and the files in the
+     * current directory.
+     */
+    private class ModeAction extends AbstractAction {
+        private final boolean directory;
+
+        public ModeAction(String name, int mnemonic, boolean directory) {
+            super(name);
+            this.directory = directory;
+            putValue(MNEMONIC_KEY, new Integer(mnemonic));
+        }
+
+        public void actionPerformed(ActionEvent e) {
+            directoryMode = directory;
+            reload();
+        }
+    }
+}
@@ -35,6 +35,8 @@
 
 package net.kano.codeoutline;
 
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.editor.*;
 import com.intellij.openapi.editor.colors.ColorKey;
 import com.intellij.openapi.editor.colors.EditorColors;
@@ -43,10 +45,13 @@ import com.intellij.openapi.editor.event.SelectionListener;
 import com.intellij.openapi.editor.event.VisibleAreaEvent;
 import com.intellij.openapi.editor.event.VisibleAreaListener;
 import com.intellij.openapi.editor.ex.EditorEx;
+import com.intellij.openapi.editor.ex.FoldingListener;
 import com.intellij.openapi.editor.markup.MarkupModel;
 import com.intellij.openapi.editor.markup.RangeHighlighter;
 import com.intellij.openapi.editor.markup.TextAttributes;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.TextRange;
 
 import javax.swing.*;
 import javax.swing.event.PopupMenuEvent;
@@ -55,6 +60,12 @@ import java.awt.*;
 import java.awt.event.*;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 /**
  * A code outline panel for a single text editor. The code outline panel manages
@@ -62,12 +73,32 @@ import java.beans.PropertyChangeListener;
  * painting the selection and visible region, scrolling, configuration UI, and
  * highlighting the current line.
  */
-public class CodeOutlinePanel extends JPanel {
+public class CodeOutlinePanel extends JPanel implements Disposable {
     /** A set of text attributes for highlighting the currently hovered line. */
     private static final TextAttributes CURRENTLINE_ATTRIBUTES
             = new TextAttributes(null, new Color(220, 255, 220), null,
                     null, Font.PLAIN);
 
+    /** The probe tracing outline work for external profilers. */
+    private static final CodeOutlineProbe probe = CodeOutlineProbe.getInstance();
+
+    /** How often the performance overlay is refreshed, in milliseconds. */
+    private static final int HUD_REFRESH_INTERVAL = 1000;
+    /** The width of the performance overlay. */
+    private static final int HUD_WIDTH = 190;
+    /** The height of the performance overlay. */
+    private static final int HUD_HEIGHT = 100;
+    /** The background of the performance overlay. */
+    private static final Color HUD_BACKGROUND = new Color(0, 0, 0, 160);
+    /** The font of the performance overlay. */
+    private static final Font HUD_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 10);
+
+    /** How much of the gutter color the visible area is shaded with. */
+    private static final int VISIBLE_AREA_ALPHA = 128;
+    /** How the margin, the selection and the visible area border are drawn. */
+    private static final AlphaComposite MARKUP_COMPOSITE
+            = AlphaComposite.getInstance(AlphaComposite.SRC_ATOP, 0.5f);
+
     /** The code outline plugin instance which instantiated this panel. */
     private final CodeOutlinePlugin plugin;
     /** The project for which this code outline panel is shown. */
@@ -85,6 +116,54 @@ public class CodeOutlinePanel extends JPanel {
 
     /** The text outline image used in this panel. */
     private final CodeOutlineImage image;
+    /** The preview of the code around the line under the mouse. */
+    private CodeOutlinePreview preview;
+
+    /** Whether this panel is not listening for editor events. */
+    private boolean suspended = false;
+    /**
+     * Whether this panel was disposed; it is then neither suspended nor
+     * resumed again.
+     */
+    private boolean disposed = false;
+
+    /** The area being painted, reused so that painting doesn't allocate. */
+    private final Rectangle clipRect = new Rectangle();
+    /** The visible area shading rectangle, reused while painting. */
+    private final Rectangle visibleRect = new Rectangle();
+    /** The part of the visible region inside the clip, reused by every paint. */
+    private final Rectangle shadedRect = new Rectangle();
+    /**
+     * The editor's visible area in outline coordinates. Mapping the visible
+     * area to lines allocates, so it is done when the editor scrolls rather
+     * than on every paint.
+     */
+    private final Rectangle viewRect = new Rectangle();
+    /**
+     * Whether {@link #viewRect} is up to date with the editor's visible area
+     * and folding.
+     */
+    private boolean viewValid = false;
+    /** The outline scale {@link #viewRect} was computed at. */
+    private double viewScale = 0;
+
+    /** The areas to paint at the next frame. */
+    private CodeOutlineDamage damage = new CodeOutlineDamage();
+    /**
+     * The areas being painted; swapped with {@link #damage} so that damage
+     * added while painting waits for the next frame.
+     */
+    private CodeOutlineDamage paintingDamage = new CodeOutlineDamage();
+
+    /**
+     * Whether {@link #selectionStart} and {@link #selectionEnd} are up to date
+     * with the editor's selection and the document.
+     */
+    private boolean selectionValid = false;
+    /** The packed position of the start of the selection, when valid. */
+    private long selectionStart;
+    /** The packed position of the end of the selection, when valid. */
+    private long selectionEnd;
 
     /** The context menu that appears when right-clicking the code outline. */
     private JPopupMenu contextMenu = new JPopupMenu();
@@ -92,45 +171,66 @@ public class CodeOutlinePanel extends JPanel {
     /** A listener for IDEA editor scrolling events. */
     private VisibleAreaListener scrollListener = new VisibleAreaListener() {
         /** The last calculated visible area shading rectangle. */
-        private Rectangle rold;
+        private Rectangle rold = new Rectangle();
+        /** Whether a visible area shading rectangle was calculated. */
+        private boolean hasOld = false;
+        /** The rectangle calculated next; swapped with rold afterwards. */
+        private Rectangle rnew = new Rectangle();
 
         public void visibleAreaChanged(VisibleAreaEvent e) {
             // we need to repaint the old visible area and the new visible area
             // for some reason calling getImgRepaintRect(e.getOldRectangle())
             // just doesn't work right, so we cache it in rold
-            Rectangle rnew = image.getImgRepaintRect(e.getNewRectangle());
-            if (rold != null) {
-                repaint(rold);
+            final boolean hasNew = updateViewRect(e.getNewRectangle());
+            if (hasNew) {
+                // the same area getImgRepaintRect would give
+                rnew.setBounds(viewRect);
+                rnew.width++;
+                rnew.height++;
+            }
+            if (hasOld) {
+                addDamage(rold);
             } else {
                 // if we haven't recorded an old viewing rectangle yet, we can
                 // try to use the given one
                 Rectangle oldview = e.getOldRectangle();
-                if (oldview != null) {
-                    Rectangle old = image.getImgRepaintRect(oldview);
-                    if (old != null) {
-                        old.grow(1, 1);
-                        repaint(old);
-                    }
+                if (oldview != null && image.getImgRepaintRect(oldview, rold)) {
+                    rold.grow(1, 1);
+                    addDamage(rold);
                 }
             }
-            if (rnew != null) {
+            if (hasNew) {
                 // the visible area box has the same dimensions as
                 // getImgRepaintRect returns, so we paint one pixel out in each
                 // direction
                 rnew.grow(1, 1);
-                repaint(rnew);
+                addDamage(rnew);
             }
+
+            final Rectangle spare = rold;
             rold = rnew;
+            rnew = spare;
+            hasOld = hasNew;
         }
     };
     /** A listener for IDEA editor text selection events. */
     private SelectionListener selectListener = new SelectionListener() {
+        /** The area to repaint, reused for every selection change. */
+        private final Rectangle area = new Rectangle();
+
         public void selectionChanged(SelectionEvent e) {
+            selectionValid = false;
+
             // repaint the old selection area and the new selection area
-            Rectangle rold = image.getImgRepaintRect(e.getOldRange());
-            if (rold != null) repaint(rold);
-            Rectangle rnew = image.getImgRepaintRect(e.getNewRange());
-            if (rnew != null) repaint(rnew);
+            repaintRange(e.getOldRange());
+            repaintRange(e.getNewRange());
+        }
+
+        private void repaintRange(TextRange range) {
+            final int start = range.getStartOffset();
+            if (image.getImgRepaintRect(start, range.getEndOffset() - start, area)) {
+                addDamage(area);
+            }
         }
     };
     /** A listener for mouse events in this code outline panel. */
@@ -152,12 +252,9 @@ public class CodeOutlinePanel extends JPanel {
         private boolean slideBack = false;
 
         public void mousePressed(MouseEvent e) {
-            Point point = e.getPoint();
+            preview.hide();
 
-            double scale = image.getScale();
-            if (scale < 1.0) {
-                point = new Point(point.x, CodeOutlineImage.getOutScaledLine(point.y, scale));
-            }
+            final long pos = getPositionAt(e);
 
             if (SwingUtilities.isLeftMouseButton(e)) {
                 // left mouse button always moves the cursor to the clicked
@@ -174,7 +271,7 @@ public class CodeOutlinePanel extends JPanel {
                 boolean multiclick = e.getClickCount() >= 2;
                 boolean shiftDown = e.isShiftDown();
 
-                seekTo(point, animate, multiclick || shiftDown);
+                seekTo(pos, animate, multiclick || shiftDown);
 
                 // we want to reset the original scroll position to reset
                 // Preview Scroll. this only matters when the user clicks with
@@ -187,7 +284,7 @@ public class CodeOutlinePanel extends JPanel {
                 if (shiftDown) {
                     // if the user is holding shift, we want to start a
                     // selection
-                    updateSelection(point, true);
+                    updateSelection(pos, true);
                 } else {
                     // if the user is not holding shift, the selection should
                     // be cleared just like if the user left-clicked somewhere
@@ -217,7 +314,7 @@ public class CodeOutlinePanel extends JPanel {
                 // smooth scroll; we want to skip back and forth non-smoothly
                 slideBack = !e.isControlDown();
 
-                previewTo(point, slideBack);
+                previewTo(pos, slideBack);
             }
         }
 
@@ -226,16 +323,11 @@ public class CodeOutlinePanel extends JPanel {
                 // when the user releases the left mouse button, the selection
                 // is finalized and the cursor goes to the specified mouse
                 // position
-                Point point = e.getPoint();
-
-                double scale = image.getScale();
-                if (scale < 1.0) {
-                    point = new Point(point.x, CodeOutlineImage.getOutScaledLine(point.y, scale));
-                }
+                final long pos = getPositionAt(e);
 
-                seekTo(point, true, e.isShiftDown());
+                seekTo(pos, true, e.isShiftDown());
 
-                updateSelection(point, false);
+                updateSelection(pos, false);
                 selectionOffset = -1;
 
                 origscrollh = -1;
@@ -268,34 +360,37 @@ public class CodeOutlinePanel extends JPanel {
     private MouseMotionListener mouseMotionListener
             = new MouseMotionListener() {
         public void mouseDragged(MouseEvent e) {
-            Point point = e.getPoint();
-
-            double scale = image.getScale();
-            if (scale < 1.0) {
-                point = new Point(point.x, CodeOutlineImage.getOutScaledLine(point.y, scale));
-            }
+            final long pos = getPositionAt(e);
 
             // the currently hovered line needs to be updated
-            mouseover(point);
+            mouseover(CodeOutlineCanvas.getPackedLine(pos));
 
             if (SwingUtilities.isLeftMouseButton(e)) {
                 // dragging with the left mouse button should move the cursor
                 // and update the selected text region, if the user is creating
                 // a selection by holding Shift
-                seekTo(point, false, false);
-                updateSelection(point, false);
+                seekTo(pos, false, false);
+                updateSelection(pos, false);
 
             } else if (SwingUtilities.isMiddleMouseButton(e)) {
                 // dragging with the middle mouse button should Preview Scroll
                 // to the given location
-                previewTo(point, false);
+                previewTo(pos, false);
             }
         }
 
         public void mouseMoved(MouseEvent e) {
+            final int line = CodeOutlineCanvas.getPackedLine(getPositionAt(e));
+
             // when the mouse moves, the currently hovered line should be
             // updated
-            mouseover(e.getPoint());
+            mouseover(line);
+
+            if (prefs.isShowPreview()) {
+                preview.show(line, CodeOutlinePanel.this, e.getYOnScreen());
+            } else {
+                preview.hide();
+            }
         }
     };
     /** A mouse wheel listener for the code ouline panel. */
@@ -320,7 +415,11 @@ public class CodeOutlinePanel extends JPanel {
      */
     private CodeOutlineListener repaintListener = new CodeOutlineListener() {
         public void shouldRepaint(CodeOutlineImage image, Rectangle region) {
-            repaint(region);
+            plugin.getMetrics().getFlightRecorder().record(CodeOutlineFlightRecorder.REPAINT,
+                    image, region.x, region.y, region.width, region.height, 0);
+            // the text moved, and the selection with it
+            selectionValid = false;
+            addDamage(region);
         }
 
         public void handleException(CodeOutlineImage image, Exception e) {
@@ -328,6 +427,21 @@ public class CodeOutlinePanel extends JPanel {
         }
     };
 
+    /**
+     * A listener for folding changes, which move the visible lines without
+     * scrolling.
+     */
+    private FoldingListener foldingListener = new FoldingListener() {
+        public void onFoldRegionStateChange(FoldRegion region) { }
+
+        public void onFoldProcessingEnd() {
+            // folding moves every line after the fold, so the whole outline
+            // is painted, once per frame however many folds change
+            viewValid = false;
+            addDamage(0, 0, getWidth(), getHeight());
+        }
+    };
+
     /**
      * A property change listener for detecting changes in the currently hovered
      * line highlighting option.
@@ -339,12 +453,48 @@ public class CodeOutlinePanel extends JPanel {
                 }
             };
 
+    /**
+     * A property change listener which starts or stops refreshing the
+     * performance overlay.
+     */
+    private PropertyChangeListener hudPrefListener = new PropertyChangeListener() {
+        public void propertyChange(PropertyChangeEvent evt) {
+            updateHudTimer();
+            repaint();
+        }
+    };
+
+    /** A timer repainting the performance overlay while it is shown. */
+    private final Timer hudTimer = new Timer(HUD_REFRESH_INTERVAL, new ActionListener() {
+        public void actionPerformed(ActionEvent e) {
+            addDamage(0, 0, HUD_WIDTH, HUD_HEIGHT);
+        }
+    });
+
     /** The "Animated Scrolling" menu item. */
     private JCheckBoxMenuItem animatedMenuItem
             = new JCheckBoxMenuItem(new AnimateOptionAction());
     /** The "Highlight Current Line" menu item. */
     private JCheckBoxMenuItem highlightMenuItem
             = new JCheckBoxMenuItem(new HighlightOptionAction());
+    /** The "Show Performance HUD" menu item. */
+    private JCheckBoxMenuItem hudMenuItem
+            = new JCheckBoxMenuItem(new HudOptionAction());
+    /** The "Show Code Preview" menu item. */
+    private JCheckBoxMenuItem previewMenuItem
+            = new JCheckBoxMenuItem(new PreviewOptionAction());
+    /** The "Record Edit Trace" menu item. */
+    private JCheckBoxMenuItem traceMenuItem
+            = new JCheckBoxMenuItem(new RecordTraceAction());
+    /** The file the edit trace is being recorded to, if any. */
+    private File traceFile = null;
+    /** The "Renderer" menu, listing every registered renderer. */
+    private JMenu rendererMenu = new JMenu("Renderer");
+    /** The "Automatic" renderer menu item. */
+    private JRadioButtonMenuItem automaticRendererMenuItem
+            = new JRadioButtonMenuItem(new RendererOptionAction(null));
+    /** The renderer menu items, only one of which is selected. */
+    private ButtonGroup rendererGroup = new ButtonGroup();
 
     { // init
         // we are already buffering the text outline. when painting, we mostly
@@ -374,8 +524,13 @@ public class CodeOutlinePanel extends JPanel {
 
         contextMenu.add(animatedMenuItem);
         contextMenu.add(highlightMenuItem);
+        contextMenu.add(previewMenuItem);
+        contextMenu.add(hudMenuItem);
+        contextMenu.add(rendererMenu);
         contextMenu.addSeparator();
         contextMenu.add(new RefreshAction());
+        contextMenu.add(new DumpRecorderAction());
+        contextMenu.add(traceMenuItem);
         // the context menu's checkboxes are only updated from the code outline
         // preferences object when they are needed (before the menu is shown)
         contextMenu.addPopupMenuListener(new PopupMenuListener() {
@@ -386,6 +541,10 @@ public class CodeOutlinePanel extends JPanel {
             public void popupMenuWillBecomeVisible(PopupMenuEvent e) {
                 animatedMenuItem.setSelected(prefs.isAnimated());
                 highlightMenuItem.setSelected(prefs.isHighlightLine());
+                previewMenuItem.setSelected(prefs.isShowPreview());
+                hudMenuItem.setSelected(prefs.isShowHud());
+                traceMenuItem.setSelected(image.isTracing());
+                updateRendererMenu();
             }
         });
 
@@ -396,49 +555,70 @@ public class CodeOutlinePanel extends JPanel {
 
     /**
      * Creates a new code outline panel for the given plugin, project, and
-     * editor.
+     * editor. The outline is rendered with the renderer the plugin picks for
+     * the editor.
      *
      * @param plugin a code outline plugin instance
      * @param project the project with which this panel is associated
      * @param editor the editor whose contents this panel outlines
      */
     public CodeOutlinePanel(CodeOutlinePlugin plugin, Project project,
-                            EditorEx editor) {
+            Editor editor) {
         this.plugin = plugin;
         this.project = project;
         this.editor = editor;
-        this.image = new CodeOutlineImageEx(editor, repaintListener);
+        this.image = new CodeOutlineImage(editor, repaintListener,
+                plugin.getMemoryGovernor(), plugin.getMetrics(),
+                plugin.getRenderer(editor));
         this.prefs = plugin.getPrefs();
 
         init();
     }
 
     /**
-     * Creates a new code outline panel for the given plugin, project, and
-     * editor.
-     *
-     * @param plugin a code outline plugin instance
-     * @param project the project with which this panel is associated
-     * @param editor the editor whose contents this panel outlines
+     * Selects the renderer chosen in the preferences in the "Renderer" menu.
+     * The "Automatic" item names the renderer this panel's outline uses.
      */
-    public CodeOutlinePanel(CodeOutlinePlugin plugin, Project project,
-            Editor editor) {
-        this.plugin = plugin;
-        this.project = project;
-        this.editor = editor;
-        this.image = new CodeOutlineImage(editor, repaintListener);
-        this.prefs = plugin.getPrefs();
-
-        init();
+    private void updateRendererMenu() {
+        automaticRendererMenuItem.setText("Automatic ("
+                + image.getRenderer().getDisplayName() + ")");
+
+        final String id = prefs.getRenderer();
+        for (Component item : rendererMenu.getMenuComponents()) {
+            if (!(item instanceof JRadioButtonMenuItem)) continue;
+
+            final RendererOptionAction action = (RendererOptionAction)
+                    ((JRadioButtonMenuItem) item).getAction();
+            final String itemId = action.renderer == null ? null : action.renderer.getId();
+            ((JRadioButtonMenuItem) item).setSelected(
+                    id == null ? itemId == null : id.equals(itemId));
+        }
     }
 
     /**
-     * Initializes listeners.
+     * Initializes listeners and the renderer menu.
      */
     private void init() {
+        automaticRendererMenuItem.setSelected(true);
+        rendererGroup.add(automaticRendererMenuItem);
+        rendererMenu.add(automaticRendererMenuItem);
+        rendererMenu.addSeparator();
+        for (CodeOutlineRendererProvider renderer : plugin.getRenderers()) {
+            final JRadioButtonMenuItem item
+                    = new JRadioButtonMenuItem(new RendererOptionAction(renderer));
+            rendererGroup.add(item);
+            rendererMenu.add(item);
+        }
+
+        preview = new CodeOutlinePreview(editor, image.getText());
+        prefs.addPropertyChangeListener("showHud", hudPrefListener);
+        updateHudTimer();
         prefs.addPropertyChangeListener("highlightLine", highlightPrefListener);
         editor.getScrollingModel().addVisibleAreaListener(scrollListener);
         editor.getSelectionModel().addSelectionListener(selectListener);
+        if (editor instanceof EditorEx) {
+            ((EditorEx) editor).getFoldingModel().addListener(foldingListener, this);
+        }
     }
 
     /**
@@ -446,13 +626,88 @@ public class CodeOutlinePanel extends JPanel {
      * as well.
      */
     public void dispose() {
+        if (disposed) return;
+        disposed = true;
+
         image.dispose();
+        preview.dispose();
+        plugin.getFrameClock().cancel(this);
+        damage.clear();
         prefs.removePropertyChangeListener("highlightLine",
                 highlightPrefListener);
+        prefs.removePropertyChangeListener("showHud", hudPrefListener);
+        hudTimer.stop();
+        if (!suspended) {
+            editor.getScrollingModel().removeVisibleAreaListener(scrollListener);
+            editor.getSelectionModel().removeSelectionListener(selectListener);
+        }
+    }
+
+    /**
+     * Stops listening for editor events while this panel is not visible. The
+     * text outline image stops following document changes as well.
+     */
+    public void suspend() {
+        if (suspended || disposed) return;
+        suspended = true;
+
+        mouseout();
+        preview.suspend();
+        image.suspend();
+        plugin.getFrameClock().cancel(this);
+        damage.clear();
+        updateHudTimer();
         editor.getScrollingModel().removeVisibleAreaListener(scrollListener);
         editor.getSelectionModel().removeSelectionListener(selectListener);
     }
 
+    /**
+     * Renders the outline of this panel ahead of time, at the given size, so
+     * that showing the panel later does not need a full render. The panel is
+     * suspended afterwards.
+     *
+     * @param gc a graphics configuration object
+     * @param width the width the panel will be shown at
+     * @param height the height the panel will be shown at
+     */
+    public void prerender(GraphicsConfiguration gc, int width, int height) {
+        if (disposed) return;
+
+        suspend();
+        if (!image.isCached(width, height)) {
+            image.prerender(gc, width, height);
+        }
+    }
+
+    /**
+     * Returns whether the outline of this panel is cached, up to date and at
+     * the given size.
+     *
+     * @param width the width the panel will be shown at
+     * @param height the height the panel will be shown at
+     * @return whether this panel's outline is cached
+     */
+    public boolean isCached(int width, int height) {
+        return image.isCached(width, height);
+    }
+
+    /**
+     * Starts listening for editor events again, and brings the text outline
+     * image up to date with any changes made while this panel was suspended.
+     */
+    public void resume() {
+        if (!suspended || disposed) return;
+        suspended = false;
+
+        editor.getScrollingModel().addVisibleAreaListener(scrollListener);
+        editor.getSelectionModel().addSelectionListener(selectListener);
+        selectionValid = false;
+        viewValid = false;
+        image.resume();
+        updateHudTimer();
+        repaint();
+    }
+
     /**
      * Moves the caret to the end of the line corresponding to the given
      * position, with the given options. If the user has selected not to animate
@@ -464,18 +719,17 @@ public class CodeOutlinePanel extends JPanel {
      * TODO: This method does not support seeking inside a collapsed folding
      * region which is not the last folding region on the line gracefully.
      *
-     * @param point the point in the code outline panel whose corresponding
-     *        location should be the new caret position
+     * @param pos the {@linkplain CodeOutlineCanvas#pack packed} position
+     *        which should be the new caret position
      * @param animate whether any scrolling involved in seeking should be
      *        animated
      * @param insideCollapsed whether the cursor should be placed within
      *        collapsed folding regions
      */
-    private void seekTo(Point point, boolean animate, boolean insideCollapsed) {
-        LogicalPosition pos = image.getPositionFromPoint(point);
-        int offset = getEndOfLineOffset(pos);
+    private void seekTo(long pos, boolean animate, boolean insideCollapsed) {
+        int offset = getEndOfLineOffset(CodeOutlineCanvas.getPackedLine(pos));
         seekTo(offset, insideCollapsed);
-        scrollTo(pos, animate);
+        scrollTo(toLogicalPosition(pos), animate);
     }
 
     /**
@@ -502,7 +756,7 @@ public class CodeOutlinePanel extends JPanel {
                 // safely skip to the end of the line. doing so otherwise might
                 // cause an infinite loop going back and forth.
                 offset = getEndOfLineOffset(
-                        editor.offsetToLogicalPosition(offset));
+                        editor.getDocument().getLineNumber(offset));
             }
         }
 
@@ -510,15 +764,14 @@ public class CodeOutlinePanel extends JPanel {
     }
 
     /**
-     * Returns an offset into the document which describes the end of the line
-     * given in the given <code>LogicalPosition</code>.
+     * Returns an offset into the document which describes the end of the given
+     * line.
      *
-     * @param pos a position
-     * @return the offset into the document at the end of the line on which the
-     *         given position lies
+     * @param line a line number
+     * @return the offset into the document at the end of the given line
      */
-    private int getEndOfLineOffset(LogicalPosition pos) {
-        LogicalPosition nextline = new LogicalPosition(pos.line+1, 0);
+    private int getEndOfLineOffset(int line) {
+        LogicalPosition nextline = new LogicalPosition(line+1, 0);
         int offset = editor.logicalPositionToOffset(nextline);
         return Math.max(0, offset - 1);
     }
@@ -549,13 +802,40 @@ public class CodeOutlinePanel extends JPanel {
      * animate code outline scrolling operations, the value of
      * <code>animate</code> is ignored.
      *
-     * @param point a point in the code outline panel corresponding to the
-     *        position to scroll to
+     * @param pos the {@linkplain CodeOutlineCanvas#pack packed} position to
+     *        scroll to
      * @param animate whether the scrolling should be animated
      */
-    private void previewTo(Point point, boolean animate) {
-        LogicalPosition pos = image.getPositionFromPoint(point);
-        scrollTo(pos, animate);
+    private void previewTo(long pos, boolean animate) {
+        scrollTo(toLogicalPosition(pos), animate);
+    }
+
+    /**
+     * Returns the position in the editor corresponding to the location of the
+     * given mouse event in this panel.
+     *
+     * @param e a mouse event on this panel
+     * @return the {@linkplain CodeOutlineCanvas#pack packed} line and column
+     *         under the mouse
+     */
+    private long getPositionAt(MouseEvent e) {
+        int y = e.getY();
+
+        double scale = image.getScale();
+        if (scale < 1.0) y = CodeOutlineImage.getOutScaledLine(y, scale);
+
+        return image.getPositionFromPoint(e.getX(), y);
+    }
+
+    /**
+     * Converts the given packed position to a position the editor accepts.
+     *
+     * @param pos a {@linkplain CodeOutlineCanvas#pack packed} position
+     * @return the logical position with the same line and column
+     */
+    private static LogicalPosition toLogicalPosition(long pos) {
+        return new LogicalPosition(CodeOutlineCanvas.getPackedLine(pos),
+                CodeOutlineCanvas.getPackedColumn(pos));
     }
 
     /**
@@ -647,14 +927,13 @@ public class CodeOutlinePanel extends JPanel {
      * <code>create</code> is <code>true</code>) or no change will be made to
      * the selection (if <code>create</code> is <code>false</code>).
      *
-     * @param point a point in the code outline panel
+     * @param pos a {@linkplain CodeOutlineCanvas#pack packed} position
      * @param create whether to create an initial selection offset if none is
      *        set
      */
-    private void updateSelection(Point point, boolean create) {
+    private void updateSelection(long pos, boolean create) {
         SelectionModel sm = editor.getSelectionModel();
-        LogicalPosition pos = image.getPositionFromPoint(point);
-        int off = editor.logicalPositionToOffset(pos);
+        int off = editor.logicalPositionToOffset(toLogicalPosition(pos));
         if (selectionOffset == -1) {
             // no initial selection offset has been set, so no selection can
             // be made. we can set the selection offset, though, if create is
@@ -669,50 +948,44 @@ public class CodeOutlinePanel extends JPanel {
     }
 
     /**
-     * The last position of the mouse on the code outline panel, or
-     * <code>null</code> if the mouse is not hovering over the panel.
+     * The line under the mouse on the code outline panel, or <code>-1</code>
+     * if the mouse is not hovering over the panel.
      */
-    private Point lastMousePoint = null;
+    private int lastMouseLine = -1;
 
     /**
-     * Highlights the line associated with the given code outline panel
-     * position, if the user has this option enabled.
+     * Highlights the given line, which is under the mouse, if the user has
+     * this option enabled.
      *
-     * @param point a point in the code outline panel
+     * @param line the line under the mouse
      */
-    private synchronized void mouseover(Point point) {
-        lastMousePoint = point;
+    private synchronized void mouseover(int line) {
+        lastMouseLine = line;
         if (!prefs.isHighlightLine()) return;
 
         highlightCurrentLine();
     }
 
     /**
-     * Resets the last mouse point field and erases any highlighted line.
+     * Resets the last mouse line field and erases any highlighted line.
      */
     private synchronized void mouseout() {
-        lastMousePoint = null;
+        lastMouseLine = -1;
+        preview.hide();
 
         clearHighlightedLine();
     }
 
     /**
-     * Currently scale factor is static 1:1
-     */
-    private int getLineFromMousePointY(int mousePointY) {
-        return mousePointY;
-    }
-    
-    /**
-     * Highlights the line specified by <code>lastMousePoint</code>. This method
-     * does nothing if <code>lastMousePoint</code> is <code>null</code>.
+     * Highlights the line specified by <code>lastMouseLine</code>. This method
+     * does nothing if <code>lastMouseLine</code> is <code>-1</code>.
      */
     private void highlightCurrentLine() {
-        if (lastMousePoint == null) return;
+        if (lastMouseLine == -1) return;
 
         clearHighlightedLine();
         MarkupModel mm = editor.getMarkupModel();
-        int line = getLineFromMousePointY(lastMousePoint.y);
+        int line = lastMouseLine;
         if (line >= 0 && line < editor.getDocument().getLineCount()) {
             highlighter = mm.addLineHighlighter(line, 100, CURRENTLINE_ATTRIBUTES);
         }
@@ -724,7 +997,7 @@ public class CodeOutlinePanel extends JPanel {
      * turned off.
      */
     private void updateHighlightedLine() {
-        if (prefs.isHighlightLine() && lastMousePoint != null) {
+        if (prefs.isHighlightLine() && lastMouseLine != -1) {
             highlightCurrentLine();
         } else {
             clearHighlightedLine();
@@ -745,31 +1018,36 @@ public class CodeOutlinePanel extends JPanel {
      * Draws a selection block between the two given positions.
      *
      * @param g the graphics device to paint to
-     * @param from the starting position
-     * @param to the ending position
+     * @param from the {@linkplain CodeOutlineCanvas#pack packed} starting
+     *        position
+     * @param to the {@linkplain CodeOutlineCanvas#pack packed} ending position
      */
-    private void drawSelection(Graphics2D g, LogicalPosition from, LogicalPosition to) {
+    private void drawSelection(Graphics2D g, long from, long to) {
+        final int fromLine = CodeOutlineCanvas.getPackedLine(from);
+        final int fromColumn = CodeOutlineCanvas.getPackedColumn(from);
+        final int toLine = CodeOutlineCanvas.getPackedLine(to);
+        final int toColumn = CodeOutlineCanvas.getPackedColumn(to);
         int toFillStart;
         double scale = image.getScale();
 
-        if (from.line == to.line) toFillStart = to.column-from.column;
-        else toFillStart = getWidth() - from.column;
+        if (fromLine == toLine) toFillStart = toColumn-fromColumn;
+        else toFillStart = getWidth() - fromColumn;
         // Start to draw first line of selected block ....[----
-        drawLine(g, from.column, from.line, from.column + toFillStart, from.line, scale);
+        drawLine(g, fromColumn, fromLine, fromColumn + toFillStart, fromLine, scale);
 
-        int lineDiff = Math.abs(from.line - to.line);
+        int lineDiff = Math.abs(fromLine - toLine);
         if (lineDiff >= 2) {
-            fillRectNotZero(g, 0, from.line + 1, getWidth(),
-                to.line - from.line - 1, scale);
+            fillRectNotZero(g, 0, fromLine + 1, getWidth(),
+                toLine - fromLine - 1, scale);
             // Draw finish line at next line of bottom of the box
-            int toLine =
-                CodeOutlineImage.getScaledLine(from.line + 1, scale) +
-                CodeOutlineImage.getScaledLine(to.line - from.line - 1, scale);
-            g.drawLine(0, toLine, to.column, toLine);
-        } else if (from.line != to.line) {
-            // Next line overlaps with to.line, to get next line and draw it (to prevent hiding)
-            int fromLine = CodeOutlineImage.getScaledLine(from.line, scale);
-            g.drawLine(0, fromLine + 1, to.column, fromLine + 1);
+            int finishRow =
+                CodeOutlineImage.getScaledLine(fromLine + 1, scale) +
+                CodeOutlineImage.getScaledLine(toLine - fromLine - 1, scale);
+            g.drawLine(0, finishRow, toColumn, finishRow);
+        } else if (fromLine != toLine) {
+            // Next line overlaps with toLine, to get next line and draw it (to prevent hiding)
+            int fromRow = CodeOutlineImage.getScaledLine(fromLine, scale);
+            g.drawLine(0, fromRow + 1, toColumn, fromRow + 1);
         }
     }
 
@@ -788,6 +1066,104 @@ public class CodeOutlinePanel extends JPanel {
         g.drawLine(x1, CodeOutlineImage.getScaledLine(y1, scale), x2, CodeOutlineImage.getScaledLine(y2, scale));
     }
 
+    /**
+     * Maps the given editor visible area to the outline.
+     *
+     * @param visible an editor visible area
+     * @return whether there is an outline image to map it to; if not, it is
+     *         mapped again at the next paint
+     */
+    private boolean updateViewRect(Rectangle visible) {
+        viewScale = image.getScale();
+        viewValid = image.getImgRect(visible, viewRect);
+        return viewValid;
+    }
+
+    /**
+     * Adds the given area to the damage painted at the next frame.
+     *
+     * @param area the area to paint
+     */
+    private void addDamage(Rectangle area) {
+        damage.add(area);
+        plugin.getFrameClock().schedule(this);
+    }
+
+    /**
+     * Adds the given area to the damage painted at the next frame.
+     *
+     * @param x the left edge of the damaged area
+     * @param y the top edge of the damaged area
+     * @param width the width of the damaged area
+     * @param height the height of the damaged area
+     */
+    private void addDamage(int x, int y, int width, int height) {
+        damage.add(x, y, width, height);
+        plugin.getFrameClock().schedule(this);
+    }
+
+    /**
+     * Paints the damage collected since the last frame. Each damaged region is
+     * painted on its own, so that changes far apart, such as the selection at
+     * the top and the visible area at the bottom, don't cause everything
+     * between them to be painted.
+     */
+    void paintDamage() {
+        final CodeOutlineDamage regions = damage;
+        damage = paintingDamage;
+        paintingDamage = regions;
+
+        if (isShowing()) {
+            for (int i = 0; i < regions.getCount(); i++) {
+                paintImmediately(regions.get(i));
+            }
+        }
+        regions.clear();
+    }
+
+    /**
+     * Refreshes the performance overlay periodically while it is shown and
+     * this panel is not suspended.
+     */
+    private void updateHudTimer() {
+        if (prefs.isShowHud() && !suspended) hudTimer.start();
+        else hudTimer.stop();
+    }
+
+    /**
+     * Paints the performance overlay in the top left corner.
+     *
+     * @param g the graphics device to paint to
+     */
+    private void paintHud(Graphics2D g) {
+        final CodeOutlineMetrics metrics = plugin.getMetrics();
+        final String[] lines = {
+            formatLatency("paint", metrics.getPaints()),
+            formatLatency("update", metrics.getUpdates()),
+            formatLatency("refresh", metrics.getRefreshes()),
+            String.format("events/s %.1f  px %d", metrics.getEventsPerSecond(),
+                    metrics.getPixelsTouched()),
+            String.format("images %d  %d KB each", metrics.getImageCount(),
+                    metrics.getBytesPerImage() / 1024),
+        };
+
+        g.setComposite(AlphaComposite.SrcOver);
+        g.setColor(HUD_BACKGROUND);
+        g.fillRect(0, 0, HUD_WIDTH, HUD_HEIGHT);
+
+        g.setFont(HUD_FONT);
+        g.setColor(Color.WHITE);
+        final FontMetrics fm = g.getFontMetrics();
+        for (int i = 0; i < lines.length; i++) {
+            g.drawString(lines[i], 4, 4 + fm.getAscent() + i * fm.getHeight());
+        }
+    }
+
+    private static String formatLatency(String name, CodeOutlineMetrics.Histogram h) {
+        return String.format("%-7s n=%d p99=%dus max=%dus", name, h.getCount(),
+                h.getPercentile(0.99) / 1000, h.getMax() / 1000);
+    }
+
     /**
      * Repaints the entire code outline panel, reloading the editor text
      * completely by recaching the file.
@@ -800,48 +1176,115 @@ public class CodeOutlinePanel extends JPanel {
     protected void paintComponent(Graphics g1) {
         final Graphics2D g = (Graphics2D) g1;
 
+        final Object event = probe.begin(CodeOutlineProbe.PAINT);
+        final long start = System.nanoTime();
+
+        // without a clip, the whole panel is painted
+        clipRect.setBounds(0, 0, getWidth(), getHeight());
+        final Rectangle clip = g.getClipBounds(clipRect);
+        paintOutline(g, clip);
+
+        final long pixels = (long) clip.width * clip.height;
+        final long nanos = System.nanoTime() - start;
+        plugin.getMetrics().recordPaint(nanos, pixels);
+        plugin.getMetrics().getFlightRecorder().record(CodeOutlineFlightRecorder.PAINT,
+                image, clip.x, clip.y, clip.width, clip.height, nanos);
+
+        if (event != null) {
+            final Document document = editor.getDocument();
+            final int lines = document.getLineCount();
+            final double scale = image.getScale();
+            final int firstLine = CodeOutlineImage.getOutScaledLine(clip.y, scale);
+            final int lastLine = CodeOutlineImage.getOutScaledLine(clip.y + clip.height, scale);
+            probe.end(event, document.getTextLength(), lines,
+                    Math.min(firstLine, lines - 1), Math.min(lastLine, lines - 1),
+                    pixels, pixels < (long) getWidth() * getHeight()
+                            ? CodeOutlineCanvas.PATH_CLIP : CodeOutlineCanvas.PATH_FULL);
+        }
+
+        if (prefs.isShowHud()) paintHud(g);
+    }
+
+    /**
+     * Paints the part of the text outline, the visible region, the right
+     * margin and the selection that lies inside the given clip.
+     *
+     * @param g the graphics device to paint to
+     * @param clip the area to paint
+     */
+    private void paintOutline(Graphics2D g, Rectangle clip) {
         // make sure the text outline image is big enough
         image.checkImage(getGraphicsConfiguration(), getWidth(), getHeight());
 
-        // fill the whole area with white
-        g.setBackground(editor.getColorsScheme().getDefaultBackground());
-        g.clearRect(0, 0, getWidth(), getHeight());
+        // the outline is opaque, so only what it doesn't cover is cleared
+        if (!image.covers(getWidth(), getHeight())) {
+            g.setBackground(editor.getColorsScheme().getDefaultBackground());
+            g.clearRect(clip.x, clip.y, clip.width, clip.height);
+        }
 
-        // draw the text itself
-        image.paint(g);
+        // draw the text itself, only as much of it as was damaged
+        image.paint(g, clip);
 
-        // compute the area that should be painted as the visible region
-        final Rectangle visible = editor.getScrollingModel().getVisibleArea();
-        final Rectangle visibleRect = image.getImgRect(visible);
+        // the area that should be painted as the visible region, which is only
+        // computed here if scrolling didn't already or the outline was
+        // rendered at a new scale
+        final boolean hasVisibleRect = (viewValid && viewScale == image.getScale())
+                || updateViewRect(editor.getScrollingModel().getVisibleArea());
 
-        // draw the visible area background
-        if (visibleRect != null) {
+        // draw the visible area background, which the image keeps blended
+        // into a copy of the outline, so this is an opaque copy
+        if (hasVisibleRect) {
+            visibleRect.setBounds(viewRect);
             visibleRect.grow(1, 1);
-            g.setColor(editor.getColorsScheme().getColor(EditorColors.GUTTER_BACKGROUND));
-            g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_ATOP, 0.5f));
-            g.fill(visibleRect);
-         }
+            Rectangle.intersect(visibleRect, clip, shadedRect);
+            if (!shadedRect.isEmpty()) {
+                image.paintShaded(g, shadedRect,
+                        editor.getColorsScheme().getColor(EditorColors.GUTTER_BACKGROUND),
+                        VISIBLE_AREA_ALPHA);
+            }
+        }
+
+        // the markup is only a few lines, so it can be blended as it is drawn
+        g.setComposite(MARKUP_COMPOSITE);
 
         // draw the right margin
         final EditorSettings editorSettings = editor.getSettings();
         if (editorSettings.isRightMarginShown()) {
             int margin = editorSettings.getRightMargin(project);
-            g.setColor(editor.getColorsScheme().getColor(EditorColors.RIGHT_MARGIN_COLOR));
-            g.drawLine(margin, 0, margin, getHeight());
+            if (margin >= clip.x && margin < clip.x + clip.width) {
+                g.setColor(editor.getColorsScheme().getColor(EditorColors.RIGHT_MARGIN_COLOR));
+                g.drawLine(margin, clip.y, margin, clip.y + clip.height);
+            }
         }
 
         // draw the selection
         final SelectionModel sm = editor.getSelectionModel();
         if (sm.hasSelection()) {
-            LogicalPosition sstart = editor.offsetToLogicalPosition(sm.getSelectionStart());
-            LogicalPosition send  = editor.offsetToLogicalPosition(sm.getSelectionEnd());
+            // the selection is only located again when it or the text changed
+            if (!selectionValid) {
+                selectionStart = image.getPosition(sm.getSelectionStart());
+                selectionEnd = image.getPosition(sm.getSelectionEnd());
+                selectionValid = true;
+            }
 
-            g.setColor(editor.getColorsScheme().getColor(EditorColors.SELECTION_FOREGROUND_COLOR));
-            drawSelection(g, sstart, send);
+            // the selection covers whole rows from its first line to the
+            // row after its last
+            final double scale = image.getScale();
+            final int top = CodeOutlineImage.getScaledLine(
+                    CodeOutlineCanvas.getPackedLine(selectionStart), scale);
+            final int bottom = CodeOutlineImage.getScaledLine(
+                    CodeOutlineCanvas.getPackedLine(selectionEnd) + 1, scale) + 1;
+            if (top < clip.y + clip.height && bottom >= clip.y) {
+                g.setColor(editor.getColorsScheme().getColor(
+                        EditorColors.SELECTION_FOREGROUND_COLOR));
+                drawSelection(g, selectionStart, selectionEnd);
+            }
         }
 
         // draw the visible area border, over the margin and the selection
-        if (visibleRect != null) {
+        // (the outline of a rectangle reaches one pixel past its size)
+        if (hasVisibleRect && clip.intersects(visibleRect.x, visibleRect.y,
+                visibleRect.width + 1, visibleRect.height + 1)) {
             g.setColor(editor.getColorsScheme().getColor(EditorColors.RIGHT_MARGIN_COLOR));
             g.draw(visibleRect);
         }
@@ -864,6 +1307,84 @@ public class CodeOutlinePanel extends JPanel {
             refresh();
         }
     }
+    /**
+     * An action that writes the events in the outline flight recorder to a
+     * file in the IDE's log directory.
+     */
+    private class DumpRecorderAction extends AbstractAction {
+        /**
+         * Creates a new flight recorder dump action.
+         */
+        public DumpRecorderAction() {
+            super("Dump Flight Recorder");
+            putValue(MNEMONIC_KEY, new Integer(KeyEvent.VK_D));
+        }
+
+        public void actionPerformed(ActionEvent e) {
+            final File file = new File(PathManager.getLogPath(),
+                    "codeoutline-events-" + System.currentTimeMillis() + ".txt");
+            try {
+                final Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+                final int events;
+                try {
+                    events = plugin.getMetrics().getFlightRecorder().dump(out);
+                } finally {
+                    out.close();
+                }
+                Messages.showInfoMessage(project, "Wrote " + events + " outline events to "
+                        + file.getPath(), "Code Outline");
+            } catch (IOException ex) {
+                Messages.showErrorDialog(project, "Could not write " + file.getPath()
+                        + ": " + ex.getMessage(), "Code Outline");
+            }
+        }
+    }
+    /**
+     * An action that starts or stops recording the changes made to the
+     * document into an edit trace in the IDE's log directory. Traces can be
+     * replayed with the benchmarks module's replay harness.
+     */
+    private class RecordTraceAction extends AbstractAction {
+        /**
+         * Creates a new edit trace recording action.
+         */
+        public RecordTraceAction() {
+            super("Record Edit Trace");
+            putValue(MNEMONIC_KEY, new Integer(KeyEvent.VK_T));
+        }
+
+        public void actionPerformed(ActionEvent e) {
+            if (image.isTracing()) {
+                final File file = traceFile;
+                traceFile = null;
+                try {
+                    final int changes = image.stopTrace();
+                    Messages.showInfoMessage(project, "Wrote " + changes + " document changes to "
+                            + file.getPath(), "Code Outline");
+                } catch (IOException ex) {
+                    Messages.showErrorDialog(project, "Could not write " + file.getPath()
+                            + ": " + ex.getMessage(), "Code Outline");
+                }
+                return;
+            }
+
+            final File file = new File(PathManager.getLogPath(),
+                    "codeoutline-trace-" + System.currentTimeMillis() + ".trace");
+            try {
+                final OutputStream out = new FileOutputStream(file);
+                try {
+                    image.startTrace(out);
+                } catch (IOException ex) {
+                    out.close();
+                    throw ex;
+                }
+                traceFile = file;
+            } catch (IOException ex) {
+                Messages.showErrorDialog(project, "Could not write " + file.getPath()
+                        + ": " + ex.getMessage(), "Code Outline");
+            }
+        }
+    }
     /**
      * An action that updates the animated scrolling option.
      */
@@ -896,4 +1417,58 @@ public class CodeOutlinePanel extends JPanel {
             prefs.setHighlightLine(highlightMenuItem.isSelected());
         }
     }
+    /**
+     * An action that updates the show code preview option.
+     */
+    private class PreviewOptionAction extends AbstractAction {
+        /**
+         * Creates a new code preview preference update action.
+         */
+        public PreviewOptionAction() {
+            super("Show Code Preview");
+            putValue(MNEMONIC_KEY, new Integer(KeyEvent.VK_P));
+        }
+
+        public void actionPerformed(ActionEvent e) {
+            prefs.setShowPreview(previewMenuItem.isSelected());
+        }
+    }
+    /**
+     * An action that picks the renderer outlines should be rendered with.
+     */
+    private class RendererOptionAction extends AbstractAction {
+        /** The renderer to pick, or <code>null</code> to pick automatically. */
+        private final CodeOutlineRendererProvider renderer;
+
+        /**
+         * Creates a new renderer preference update action.
+         *
+         * @param renderer the renderer to pick, or <code>null</code> to pick a
+         *        renderer for every editor
+         */
+        public RendererOptionAction(CodeOutlineRendererProvider renderer) {
+            super(renderer == null ? "Automatic" : renderer.getDisplayName());
+            this.renderer = renderer;
+        }
+
+        public void actionPerformed(ActionEvent e) {
+            prefs.setRenderer(renderer == null ? null : renderer.getId());
+        }
+    }
+    /**
+     * An action that updates the performance overlay option.
+     */
+    private class HudOptionAction extends AbstractAction {
+        /**
+         * Creates a new performance overlay preference update action.
+         */
+        public HudOptionAction() {
+            super("Show Performance HUD");
+            putValue(MNEMONIC_KEY, new Integer(KeyEvent.VK_U));
+        }
+
+        public void actionPerformed(ActionEvent e) {
+            prefs.setShowHud(hudMenuItem.isSelected());
+        }
+    }
 }
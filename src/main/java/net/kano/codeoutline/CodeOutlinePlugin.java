@@ -35,12 +35,15 @@
 
 package net.kano.codeoutline;
 
+import com.intellij.openapi.Disposable;
 import com.intellij.openapi.components.ApplicationComponent;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.project.ProjectManager;
 import com.intellij.openapi.project.ProjectManagerAdapter;
+import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.InvalidDataException;
 import com.intellij.openapi.util.NamedJDOMExternalizable;
 import com.intellij.openapi.wm.ToolWindow;
@@ -53,7 +56,10 @@ import org.jdom.Element;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 
+import javax.swing.*;
+import java.util.ArrayList;
 import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -68,11 +74,25 @@ public class CodeOutlinePlugin
 
     private final CodeOutlinePrefs prefs = new CodeOutlinePrefs();
 
+    /** Keeps the memory used by all outline images within budget. */
+    private final CodeOutlineMemoryGovernor governor = new CodeOutlineMemoryGovernor(prefs);
+
+    /** Records what the code outlines cost. */
+    private final CodeOutlineMetrics metrics = new CodeOutlineMetrics(governor);
+
+    /** Paints the changes to all outline panels once per frame. */
+    private final CodeOutlineFrameClock frameClock = new CodeOutlineFrameClock();
+
+    /** Renders outlines of files which are not open in an editor. */
+    private final CodeOutlineThumbnailRenderer thumbnailRenderer = new CodeOutlineThumbnailRenderer();
+
     private final Map<Project, CodeOutlineToolWindow> windows = new IdentityHashMap<Project, CodeOutlineToolWindow>();
 
     public @NotNull String getComponentName() { return "CodeOutlinePlugin"; }
 
     public synchronized void initComponent() {
+        governor.install();
+        metrics.install();
         // and add a hook to create windows for new projects
         addProjectListener();
         // create tool windows for all of the open projects
@@ -101,34 +121,49 @@ public class CodeOutlinePlugin
     }
 
     /**
-     * Creates a code outline tool window for the given project.
+     * Creates a code outline tool window for the given project. The window is
+     * disposed along with the project, should the project be disposed without
+     * being closed first.
      *
      * @param project the project to register
      */
     private synchronized void regForProject(final Project project) {
+        if (windows.containsKey(project)) return;
+
         final CodeOutlineToolWindow window = new CodeOutlineToolWindow(this, project);
+        windows.put(project, window);
+        Disposer.register(project, window);
+        Disposer.register(window, new Disposable() {
+            public void dispose() {
+                forgetWindow(project, window);
+            }
+        });
 
         ToolWindowManager twm = ToolWindowManager.getInstance(project);
         ToolWindowManagerEx twmEx = (ToolWindowManagerEx)twm;
         ToolWindow tw = twm.registerToolWindow(TOOLWINDOW_ID, false, ToolWindowAnchor.RIGHT);
                 
         ContentFactory contentFactory = ServiceManager.getService(ContentFactory.class);
-        Content content = contentFactory.createContent(window, "", false);
+        Content content = contentFactory.createContent(window, "Outline", false);
+        Content overview = contentFactory.createContent(
+                new JScrollPane(window.getOverviewPanel()), "Overview", false);
 
         tw.getContentManager().addContent(content);
+        tw.getContentManager().addContent(overview);
         tw.getContentManager().setSelectedContent(content, false);
 
         twmEx.addToolWindowManagerListener(window.getToolWindowManagerListener());
     }
 
     /**
-     * Removes the code outline tool window from the given project.
+     * Removes the code outline tool window from the given project and
+     * disposes of it.
      *
      * @param project the project to unregister
      */
     private synchronized void unregForProject(Project project) {
         ToolWindowManager twm = ToolWindowManager.getInstance(project);
-        CodeOutlineToolWindow window = windows.get(project);
+        CodeOutlineToolWindow window = windows.remove(project);
 
         if (window != null) {
             ToolWindowManagerEx twmEx = (ToolWindowManagerEx)twm;
@@ -139,13 +174,73 @@ public class CodeOutlinePlugin
             twm.unregisterToolWindow(TOOLWINDOW_ID);
         } catch (IllegalArgumentException ignored) { }
 
-        CodeOutlineToolWindow win = windows.remove(project);
-        if (win == null) return;
+        if (window != null) Disposer.dispose(window);
+        if (windows.isEmpty()) checkReleased();
+    }
+
+    /**
+     * Forgets the tool window of the given project once it has been disposed.
+     *
+     * @param project a project
+     * @param window the project's tool window
+     */
+    private synchronized void forgetWindow(Project project, CodeOutlineToolWindow window) {
+        if (windows.get(project) != window) return;
 
-        win.stop();
+        windows.remove(project);
+        if (windows.isEmpty()) {
+            // this runs before the window itself is disposed
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    checkReleased();
+                }
+            });
+        }
     }
 
-    public void disposeComponent() { }
+    /**
+     * Checks that nothing belonging to a tool window outlived it, once every
+     * tool window is gone. Outline images only listen to their documents
+     * while they are registered with the governor, and outline panels only
+     * listen to their editors while they listen to the preferences, so
+     * leftover editor and document listeners show up here.
+     */
+    private synchronized void checkReleased() {
+        if (!windows.isEmpty()) return;
+
+        final int images = governor.getImageCount();
+        if (images != 0) {
+            logger.error(images + " outline images still registered after closing all projects");
+        }
+        final int panels = prefs.getListenerCount("showHud")
+                + prefs.getListenerCount("highlightLine");
+        if (panels != 0) {
+            logger.error(panels + " outline panel listeners left after closing all projects");
+        }
+        final int windowListeners = prefs.getListenerCount("renderer");
+        if (windowListeners != 0) {
+            logger.error(windowListeners + " tool window listeners left after closing all projects");
+        }
+        final int scheduled = frameClock.getPendingCount();
+        if (scheduled != 0) {
+            logger.error(scheduled + " outline panels still scheduled to paint after closing all projects");
+        }
+    }
+
+    public void disposeComponent() {
+        final List<CodeOutlineToolWindow> open;
+        synchronized (this) {
+            open = new ArrayList<CodeOutlineToolWindow>(windows.values());
+        }
+        for (CodeOutlineToolWindow window : open) {
+            Disposer.dispose(window);
+        }
+
+        thumbnailRenderer.shutdown();
+        frameClock.stop();
+        metrics.uninstall();
+        governor.uninstall();
+    }
 
     public String getExternalFileName() { return "CodeOutlinePlugin"; }
 
@@ -153,6 +248,11 @@ public class CodeOutlinePlugin
         prefs.setAnimated(getBooleanValue(element, "animated-scroll", true));
         prefs.setHighlightLine(getBooleanValue(element,
                 "highlight-current-line", true));
+        prefs.setShowPreview(getBooleanValue(element, "show-preview", true));
+        prefs.setShowHud(getBooleanValue(element, "show-hud", false));
+        prefs.setMemoryBudget(getIntValue(element, "memory-budget",
+                CodeOutlinePrefs.DEFAULT_MEMORY_BUDGET));
+        prefs.setRenderer(getStringValue(element, "renderer"));
     }
 
     public void writeExternal(Element element) {
@@ -160,6 +260,46 @@ public class CodeOutlinePlugin
 
         setBooleanValue(element, "highlight-current-line",
                 prefs.isHighlightLine());
+        setBooleanValue(element, "show-preview", prefs.isShowPreview());
+        setBooleanValue(element, "show-hud", prefs.isShowHud());
+        setIntValue(element, "memory-budget", prefs.getMemoryBudget());
+        if (prefs.getRenderer() != null) {
+            setStringValue(element, "renderer", prefs.getRenderer());
+        }
+    }
+
+    /**
+     * Returns the renderer with which the outline of the given editor should
+     * be rendered: the one the user picked, if it is applicable, and otherwise
+     * the first applicable one.
+     *
+     * @param editor an editor
+     * @return the renderer for the given editor
+     */
+    public CodeOutlineRendererProvider getRenderer(Editor editor) {
+        final CodeOutlineRendererProvider[] renderers = getRenderers();
+        final String id = prefs.getRenderer();
+        if (id != null) {
+            for (CodeOutlineRendererProvider renderer : renderers) {
+                if (renderer.getId().equals(id) && renderer.isApplicable(editor)) {
+                    return renderer;
+                }
+            }
+        }
+        for (CodeOutlineRendererProvider renderer : renderers) {
+            if (renderer.isApplicable(editor)) return renderer;
+        }
+        return new CodeOutlinePlainRenderer();
+    }
+
+    /**
+     * Returns all registered outline renderers, in the order in which they are
+     * considered.
+     *
+     * @return the registered renderers
+     */
+    public CodeOutlineRendererProvider[] getRenderers() {
+        return CodeOutlineRendererProvider.EP_NAME.getExtensions();
     }
 
     /**
@@ -183,6 +323,45 @@ public class CodeOutlinePlugin
         }
     }
 
+    /**
+     * Extracts an integer value from the text within the element inside the
+     * given DOM element with the given name. If no such element exists, or its
+     * text is not a number, the given default value is returned.
+     *
+     * @param element the DOM element containing an element of the given name
+     * @param name the name of the element whose text is
+     * @param defaultValue a value to return if no matching DOM element exists
+     * @return the integer value extracted from the given element
+     */
+    private static int getIntValue(Element element, String name,
+            int defaultValue) {
+        Element subel = element.getChild(name);
+        if (subel == null) return defaultValue;
+
+        try {
+            return Integer.parseInt(subel.getTextTrim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Extracts the text within the element inside the given DOM element with
+     * the given name.
+     *
+     * @param element the DOM element containing an element of the given name
+     * @param name the name of the element whose text is
+     * @return the text of the element, or <code>null</code> if no matching DOM
+     *         element exists or it is empty
+     */
+    private static String getStringValue(Element element, String name) {
+        Element subel = element.getChild(name);
+        if (subel == null) return null;
+
+        final String text = subel.getTextTrim();
+        return text.length() == 0 ? null : text;
+    }
+
     /**
      * Adds a child element with the given to the given element, containg a
      * textual representation of the given boolean value.
@@ -197,6 +376,34 @@ public class CodeOutlinePlugin
         element.addContent(subel);
     }
 
+    /**
+     * Adds a child element with the given to the given element, containg a
+     * textual representation of the given integer value.
+     *
+     * @param element the element in which the subelement should be created
+     * @param name the name of the element
+     * @param value the value to encode
+     */
+    private void setIntValue(Element element, String name, int value) {
+        Element subel = new Element(name);
+        subel.setText(Integer.toString(value));
+        element.addContent(subel);
+    }
+
+    /**
+     * Adds a child element with the given to the given element, containg the
+     * given text.
+     *
+     * @param element the element in which the subelement should be created
+     * @param name the name of the element
+     * @param value the text of the element
+     */
+    private void setStringValue(Element element, String name, String value) {
+        Element subel = new Element(name);
+        subel.setText(value);
+        element.addContent(subel);
+    }
+
     /**
      * Returns the application-wide code outline preferences object.
      *
@@ -204,6 +411,37 @@ public class CodeOutlinePlugin
      */
     public CodeOutlinePrefs getPrefs() { return prefs; }
 
+    /**
+     * Returns the governor accounting for the memory used by all outline
+     * images.
+     *
+     * @return the outline memory governor
+     */
+    public CodeOutlineMemoryGovernor getMemoryGovernor() { return governor; }
+
+    /**
+     * Returns the registry recording what the code outlines cost.
+     *
+     * @return the code outline metrics
+     */
+    public CodeOutlineMetrics getMetrics() { return metrics; }
+
+    /**
+     * Returns the clock painting the changes to all outline panels once per
+     * frame.
+     *
+     * @return the frame clock
+     */
+    public CodeOutlineFrameClock getFrameClock() { return frameClock; }
+
+    /**
+     * Returns the renderer for outline thumbnails of files which are not open
+     * in an editor.
+     *
+     * @return the thumbnail renderer
+     */
+    public CodeOutlineThumbnailRenderer getThumbnailRenderer() { return thumbnailRenderer; }
+
     /** Whether we have shown the user a code outline exception. */
     private boolean showedException = false;
 
@@ -42,6 +42,9 @@ import java.beans.PropertyChangeSupport;
  * Holds application-wide preferences for the code outline plugin.
  */
 public class CodeOutlinePrefs {
+    /** The default memory budget for all code outlines, in megabytes. */
+    public static final int DEFAULT_MEMORY_BUDGET = 32;
+
     /** For property change listeners. */
     private final PropertyChangeSupport pcs = new PropertyChangeSupport(this);
 
@@ -52,6 +55,23 @@ public class CodeOutlinePrefs {
      * mouseover.
      */
     private boolean highlightLine = true;
+    /**
+     * Whether a preview of the code around the line under the mouse should be
+     * shown.
+     */
+    private boolean showPreview = true;
+    /** Whether performance metrics should be shown over the code outline. */
+    private boolean showHud = false;
+    /**
+     * How much memory all code outline images and caches may use together, in
+     * megabytes.
+     */
+    private int memoryBudget = DEFAULT_MEMORY_BUDGET;
+    /**
+     * The ID of the renderer outlines should be rendered with, or
+     * <code>null</code> to pick one for every editor.
+     */
+    private String renderer = null;
 
     /**
      * Returns whether scrolling via the code outline should be animated.
@@ -97,6 +117,95 @@ public class CodeOutlinePrefs {
      */
     public boolean isHighlightLine() { return highlightLine; }
 
+    /**
+     * Sets whether a preview of the code around the line over which the mouse
+     * is hovering in the code outline should be shown.
+     *
+     * @param showPreview whether to show a code preview on mouseover
+     */
+    public void setShowPreview(boolean showPreview) {
+        boolean old = this.showPreview;
+
+        this.showPreview = showPreview;
+
+        pcs.firePropertyChange("showPreview", old, showPreview);
+    }
+
+    /**
+     * Returns whether a preview of the code around the line over which the
+     * mouse is hovering in the code outline should be shown.
+     *
+     * @return whether a code preview is shown on mouseover
+     */
+    public boolean isShowPreview() { return showPreview; }
+
+    /**
+     * Sets whether performance metrics should be shown over the code outline.
+     *
+     * @param showHud whether to show the performance overlay
+     */
+    public void setShowHud(boolean showHud) {
+        boolean old = this.showHud;
+
+        this.showHud = showHud;
+
+        pcs.firePropertyChange("showHud", old, showHud);
+    }
+
+    /**
+     * Returns whether performance metrics should be shown over the code
+     * outline.
+     *
+     * @return whether the performance overlay is shown
+     */
+    public boolean isShowHud() { return showHud; }
+
+    /**
+     * Returns how much memory all code outline images and caches may use
+     * together.
+     *
+     * @return the memory budget, in megabytes
+     */
+    public int getMemoryBudget() { return memoryBudget; }
+
+    /**
+     * Sets how much memory all code outline images and caches may use
+     * together.
+     *
+     * @param memoryBudget the memory budget, in megabytes
+     */
+    public void setMemoryBudget(int memoryBudget) {
+        int old = this.memoryBudget;
+
+        this.memoryBudget = Math.max(1, memoryBudget);
+
+        pcs.firePropertyChange("memoryBudget", old, this.memoryBudget);
+    }
+
+    /**
+     * Returns the ID of the renderer outlines should be rendered with, where
+     * it is applicable.
+     *
+     * @return a {@linkplain CodeOutlineRendererProvider#getId renderer ID}, or
+     *         <code>null</code> if a renderer is picked for every editor
+     */
+    public String getRenderer() { return renderer; }
+
+    /**
+     * Sets the ID of the renderer outlines should be rendered with, where it
+     * is applicable.
+     *
+     * @param renderer a {@linkplain CodeOutlineRendererProvider#getId renderer
+     *        ID}, or <code>null</code> to pick a renderer for every editor
+     */
+    public void setRenderer(String renderer) {
+        String old = this.renderer;
+
+        this.renderer = renderer;
+
+        pcs.firePropertyChange("renderer", old, renderer);
+    }
+
     /**
      * Adds the given property change listener for all properties.
      *
@@ -134,4 +243,14 @@ public class CodeOutlinePrefs {
     public void removePropertyChangeListener(PropertyChangeListener l) {
         pcs.removePropertyChangeListener(l);
     }
+    /**
+     * Returns the number of listeners for the given property, not counting
+     * those listening for all properties.
+     *
+     * @param property a property
+     * @return the number of listeners for the property
+     */
+    public int getListenerCount(String property) {
+        return pcs.getPropertyChangeListeners(property).length;
+    }
 }
@@ -0,0 +1,551 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline;
+
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.colors.EditorColorsScheme;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.util.Computable;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shows a preview of the editor text around the line under the mouse, next to
+ * the code outline. The text is rendered to snippet images on a pooled thread,
+ * one snippet per bucket of lines, and snippets are cached until the lines
+ * they show change, so that sweeping the mouse along the outline does not lay
+ * out any text on the event dispatch thread.
+ */
+public class CodeOutlinePreview {
+    /** The number of lines per bucket. */
+    private static final int BUCKET_LINES = 8;
+    /**
+     * The number of lines in a snippet: the lines of its bucket, plus one
+     * bucket of context above and below.
+     */
+    private static final int SNIPPET_LINES = 3 * BUCKET_LINES;
+    /** The number of snippets to keep. */
+    private static final int MAX_SNIPPETS = 16;
+    /** The number of snippets rendered at the same time. */
+    private static final int MAX_PENDING = 2;
+    /** The maximum width of a snippet, in pixels. */
+    private static final int MAX_WIDTH = 480;
+    /** The space around the text of a snippet, and between preview and owner. */
+    private static final int PADDING = 4;
+    /** The number of spaces a tab is expanded to. */
+    private static final int TAB_SIZE = 4;
+
+    /** The editor being previewed. */
+    private final Editor editor;
+    /** The editor's document. */
+    private final Document document;
+    /** The editor's text, as it should be colored. */
+    private final CodeOutlineText text;
+
+    /** Rendered snippets, by bucket, in least recently used order. */
+    private final Map<Integer, Snippet> snippets
+            = new LinkedHashMap<Integer, Snippet>(MAX_SNIPPETS, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<Integer, Snippet> eldest) {
+            return size() > MAX_SNIPPETS;
+        }
+    };
+    /** The buckets whose snippets are being rendered. */
+    private final Set<Integer> pending = new HashSet<Integer>();
+
+    /** The line under the mouse, or <code>-1</code> if none. */
+    private int line = -1;
+    /** The component next to which the preview is shown. */
+    private Component owner = null;
+    /** The vertical screen position of the mouse. */
+    private int screenY = 0;
+    /** Whether this preview has been disposed. */
+    private boolean disposed = false;
+
+    /** The popup window showing the preview, if any. */
+    private Popup popup = null;
+    /** The size of the popup window, while it is shown. */
+    private final Dimension popupSize = new Dimension();
+    /** The screen position of the popup window, while it is shown. */
+    private final Point popupLocation = new Point();
+    /** The snippet shown in the popup window. */
+    private Snippet shown = null;
+    /** The component painting the snippet. */
+    private final SnippetView view = new SnippetView();
+
+    /** A document listener dropping snippets of changed lines. */
+    private final DocumentListener docListener = new DocumentListener() {
+        public void beforeDocumentChange(DocumentEvent e) { }
+
+        public void documentChanged(DocumentEvent e) {
+            invalidate(e);
+        }
+    };
+
+    /**
+     * Creates a new code preview for the given editor.
+     *
+     * @param editor the editor to preview
+     * @param text the editor's text, as it should be colored
+     */
+    public CodeOutlinePreview(Editor editor, CodeOutlineText text) {
+        this.editor = editor;
+        this.document = editor.getDocument();
+        this.text = text;
+
+        document.addDocumentListener(docListener);
+    }
+
+    /**
+     * Hides the preview and stops listening for document changes.
+     */
+    public void dispose() {
+        disposed = true;
+        suspend();
+        document.removeDocumentListener(docListener);
+    }
+
+    /**
+     * Hides the preview and drops all snippets while the outline is not
+     * visible.
+     */
+    public void suspend() {
+        hide();
+        snippets.clear();
+    }
+
+    /**
+     * Shows the preview of the given line next to the given component. If the
+     * line's snippet has not been rendered yet, it is rendered in the
+     * background and shown once it is ready, unless the mouse has moved on.
+     *
+     * @param line the line under the mouse
+     * @param owner the component next to which the preview is shown
+     * @param screenY the vertical screen position of the mouse
+     */
+    public void show(int line, Component owner, int screenY) {
+        if (disposed) return;
+        if (line < 0 || line >= document.getLineCount()) {
+            hide();
+            return;
+        }
+
+        this.line = line;
+        this.owner = owner;
+        this.screenY = screenY;
+
+        final Snippet snippet = snippets.get(getBucket(line));
+        if (snippet != null) {
+            display(snippet);
+        } else {
+            closePopup();
+            request(getBucket(line));
+        }
+    }
+
+    /**
+     * Hides the preview.
+     */
+    public void hide() {
+        line = -1;
+        owner = null;
+        closePopup();
+    }
+
+    private static int getBucket(int line) {
+        return line / BUCKET_LINES;
+    }
+
+    private static int getFirstLine(int bucket) {
+        return Math.max(0, (bucket - 1) * BUCKET_LINES);
+    }
+
+    /**
+     * Shows the given snippet in the popup window, with the line under the
+     * mouse next to the mouse. A popup window which is already shown is
+     * reused, and only moved, as long as its size stays the same; this is
+     * what happens while the mouse sweeps over the outline.
+     */
+    private void display(Snippet snippet) {
+        if (owner == null || !owner.isShowing()) return;
+
+        view.setSnippet(snippet, line - snippet.firstLine);
+
+        final Dimension size = view.getPreferredSize();
+        final Point origin = owner.getLocationOnScreen();
+        final Rectangle screen = owner.getGraphicsConfiguration().getBounds();
+
+        // the outline is usually docked on the right, so prefer the left side
+        int x = origin.x - size.width - PADDING;
+        if (x < screen.x) x = origin.x + owner.getWidth() + PADDING;
+        int y = screenY - PADDING - (line - snippet.firstLine) * snippet.lineHeight
+                - snippet.lineHeight / 2;
+        y = Math.max(screen.y, Math.min(y, screen.y + screen.height - size.height));
+
+        if (popup != null && size.equals(popupSize)) {
+            shown = snippet;
+            if (x != popupLocation.x || y != popupLocation.y) movePopup(x, y);
+            return;
+        }
+
+        closePopup();
+        shown = snippet;
+        popupSize.setSize(size);
+        popupLocation.setLocation(x, y);
+        popup = PopupFactory.getSharedInstance().getPopup(owner, view, x, y);
+        popup.show();
+    }
+
+    /**
+     * Moves the popup window which is shown to the given screen position.
+     */
+    private void movePopup(int x, int y) {
+        popupLocation.setLocation(x, y);
+
+        final Window window = SwingUtilities.getWindowAncestor(view);
+        if (window != null && window != SwingUtilities.getWindowAncestor(owner)) {
+            // a heavyweight popup has a window of its own
+            window.setLocation(x, y);
+        } else {
+            // a lightweight popup is a panel in the owner's layered pane
+            final Container panel = view.getParent();
+            if (panel == null || panel.getParent() == null) return;
+
+            final Point location = new Point(x, y);
+            SwingUtilities.convertPointFromScreen(location, panel.getParent());
+            panel.setLocation(location);
+        }
+    }
+
+    private void closePopup() {
+        if (popup != null) {
+            popup.hide();
+            popup = null;
+        }
+        shown = null;
+    }
+
+    /**
+     * Renders the snippet of the given bucket in the background, unless it is
+     * being rendered already or too many snippets are being rendered.
+     */
+    private void request(final int bucket) {
+        if (pending.contains(bucket) || pending.size() >= MAX_PENDING) return;
+        pending.add(bucket);
+
+        final EditorColorsScheme scheme = editor.getColorsScheme();
+        final Font font = new Font(scheme.getEditorFontName(), Font.PLAIN,
+                scheme.getEditorFontSize());
+        final Color background = scheme.getDefaultBackground();
+
+        final Application app = ApplicationManager.getApplication();
+        app.executeOnPooledThread(new Runnable() {
+            public void run() {
+                Snippet snippet = null;
+                try {
+                    final SnippetText st = app.runReadAction(new Computable<SnippetText>() {
+                        public SnippetText compute() {
+                            return readSnippet(getFirstLine(bucket));
+                        }
+                    });
+                    if (st != null) snippet = renderSnippet(st, font, background);
+                } finally {
+                    final Snippet result = snippet;
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            snippetRendered(bucket, result);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Stores a rendered snippet, if the document has not changed since, and
+     * shows it if the mouse is still over one of its lines. Called on the event
+     * dispatch thread.
+     */
+    private void snippetRendered(int bucket, Snippet snippet) {
+        pending.remove(bucket);
+        if (disposed) return;
+
+        if (snippet != null && snippet.stamp == document.getModificationStamp()) {
+            snippets.put(bucket, snippet);
+        }
+        if (line < 0) return;
+
+        // the mouse may have moved on while the snippet was rendered
+        final int hovered = getBucket(line);
+        final Snippet current = snippets.get(hovered);
+        if (current == null) {
+            request(hovered);
+        } else if (current != shown) {
+            display(current);
+        }
+    }
+
+    /**
+     * Drops the snippets showing lines affected by the given document change.
+     * If lines were added or removed, all snippets below the change are
+     * dropped as well, since their lines have moved.
+     */
+    private void invalidate(DocumentEvent e) {
+        if (snippets.isEmpty() && shown == null) return;
+
+        final int startLine = document.getLineNumber(e.getOffset());
+        final boolean moved = countNewlines(e.getOldFragment()) != countNewlines(e.getNewFragment());
+        final int endLine = moved ? Integer.MAX_VALUE
+                : document.getLineNumber(e.getOffset() + e.getNewLength());
+
+        final Iterator<Snippet> it = snippets.values().iterator();
+        while (it.hasNext()) {
+            final Snippet snippet = it.next();
+            if (snippet.firstLine <= endLine && snippet.firstLine + SNIPPET_LINES > startLine) {
+                it.remove();
+            }
+        }
+
+        if (shown != null && !snippets.containsValue(shown)) {
+            final int hovered = line;
+            final Component owner = this.owner;
+            closePopup();
+            if (hovered >= 0) show(hovered, owner, screenY);
+        }
+    }
+
+    private static int countNewlines(CharSequence chars) {
+        int count = 0;
+        for (int i = 0, len = chars.length(); i < len; i++) {
+            if (chars.charAt(i) == '\n') count++;
+        }
+        return count;
+    }
+
+    /**
+     * Copies the text and colors of the snippet starting at the given line.
+     * Must be called within a read action.
+     */
+    private SnippetText readSnippet(int firstLine) {
+        final int lines = text.getLineCount();
+        if (firstLine >= lines) return null;
+
+        final int lastLine = Math.min(lines, firstLine + SNIPPET_LINES) - 1;
+        final int start = text.getLineStartOffset(firstLine);
+        final int end = text.getLineEndOffset(lastLine);
+
+        final SnippetText st = new SnippetText();
+        st.stamp = text.getModificationStamp();
+        st.firstLine = firstLine;
+        st.chars = text.getCharsSequence().subSequence(start, end).toString();
+
+        final CodeOutlineText.ColorIterator colors = text.createColorIterator(start);
+        int pos = start;
+        while (pos < end) {
+            final int runEnd = colors.atEnd() ? end : Math.min(end, colors.getEnd());
+            if (runEnd > pos) {
+                st.addRun(runEnd - start, colors.getColor());
+                pos = runEnd;
+            }
+            if (colors.atEnd()) break;
+            colors.advance();
+        }
+        return st;
+    }
+
+    /**
+     * Lays out and draws the given snippet text.
+     */
+    private static Snippet renderSnippet(SnippetText st, Font font, Color background) {
+        final String[] lines = st.chars.split("\n", -1);
+
+        final BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        final FontMetrics fm = scratch.getGraphics().getFontMetrics(font);
+        final int lineHeight = fm.getHeight();
+
+        int textWidth = 0;
+        for (String line : lines) {
+            textWidth = Math.max(textWidth, fm.stringWidth(expandTabs(line, 0)));
+        }
+        final int width = Math.min(MAX_WIDTH, textWidth + 2 * PADDING);
+        final int height = lines.length * lineHeight + 2 * PADDING;
+
+        final BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = img.createGraphics();
+        try {
+            g.setColor(background);
+            g.fillRect(0, 0, width, height);
+            g.setFont(font);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                    RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+            int run = 0;
+            int lineStart = 0;
+            for (int i = 0; i < lines.length; i++) {
+                final int lineEnd = lineStart + lines[i].length();
+                final int baseline = PADDING + i * lineHeight + fm.getAscent();
+
+                int x = PADDING;
+                int col = 0;
+                int pos = lineStart;
+                while (pos < lineEnd && x < width) {
+                    while (run < st.runCount - 1 && st.runEnds[run] <= pos) run++;
+
+                    final int segEnd = Math.min(lineEnd, st.runEnds[run]);
+                    final String segment = expandTabs(st.chars.substring(pos, segEnd), col);
+                    g.setColor(new Color(st.colors[run]));
+                    g.drawString(segment, x, baseline);
+
+                    x += fm.stringWidth(segment);
+                    col += segment.length();
+                    pos = segEnd;
+                }
+                lineStart = lineEnd + 1;
+            }
+        } finally {
+            g.dispose();
+        }
+
+        final Snippet snippet = new Snippet();
+        snippet.image = img;
+        snippet.firstLine = st.firstLine;
+        snippet.lineHeight = lineHeight;
+        snippet.stamp = st.stamp;
+        return snippet;
+    }
+
+    /**
+     * Replaces tabs in the given string with spaces, given the column at which
+     * it starts.
+     */
+    private static String expandTabs(String s, int col) {
+        if (s.indexOf('\t') < 0) return s;
+
+        final StringBuilder sb = new StringBuilder(s.length() + 8);
+        for (int i = 0; i < s.length(); i++) {
+            final char ch = s.charAt(i);
+            if (ch == '\t') {
+                do sb.append(' '); while ((col + sb.length()) % TAB_SIZE != 0);
+            } else {
+                sb.append(ch);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The text and colors of a snippet, copied from the document.
+     */
+    private static final class SnippetText {
+        long stamp;
+        int firstLine;
+        String chars;
+        /** The end offset of each color run, relative to the snippet. */
+        int[] runEnds = new int[16];
+        /** The color of each run. */
+        int[] colors = new int[16];
+        int runCount = 0;
+
+        void addRun(int end, int color) {
+            if (runCount == runEnds.length) {
+                final int[] ends = new int[runCount * 2];
+                final int[] cols = new int[runCount * 2];
+                System.arraycopy(runEnds, 0, ends, 0, runCount);
+                System.arraycopy(colors, 0, cols, 0, runCount);
+                runEnds = ends;
+                colors = cols;
+            }
+            runEnds[runCount] = end;
+            colors[runCount] = color;
+            runCount++;
+        }
+    }
+
+    /**
+     * A rendered snippet.
+     */
+    private static final class Snippet {
+        BufferedImage image;
+        int firstLine;
+        int lineHeight;
+        long stamp;
+    }
+
+    /**
+     * Paints a snippet and marks the line under the mouse.
+     */
+    private static class SnippetView extends JComponent {
+        private Snippet snippet;
+        private int line;
+
+        { // init
+            setBorder(BorderFactory.createLineBorder(Color.GRAY));
+        }
+
+        public void setSnippet(Snippet snippet, int line) {
+            if (snippet == this.snippet && line == this.line) return;
+
+            this.snippet = snippet;
+            this.line = line;
+            repaint();
+        }
+
+        public Dimension getPreferredSize() {
+            if (snippet == null) return new Dimension(0, 0);
+            return new Dimension(snippet.image.getWidth(), snippet.image.getHeight());
+        }
+
+        protected void paintComponent(Graphics g) {
+            if (snippet == null) return;
+
+            g.drawImage(snippet.image, 0, 0, null);
+
+            // mark the line under the mouse
+            g.setColor(new Color(0, 160, 0, 64));
+            g.fillRect(0, PADDING + line * snippet.lineHeight,
+                    snippet.image.getWidth(), snippet.lineHeight);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline;
+
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.util.Iterator;
+import java.util.ServiceLoader;
+
+/**
+ * A hook for tracing the outline pipeline with an external profiler. The
+ * plugin itself must run on old JVMs, so profiler events cannot be declared
+ * here; instead, an implementation of this class is looked up with {@link
+ * ServiceLoader} when the plugin starts. The <code>jfr</code> module provides
+ * one which emits Java Flight Recorder events. Without an implementation
+ * every probe does nothing.
+ * <br><br>
+ * A traced operation calls {@link #begin} before it starts and passes the
+ * returned token to {@link #end} when it is done. Implementations return
+ * <code>null</code> from <code>begin</code> when nobody is recording, and
+ * ignore <code>null</code> tokens.
+ */
+public abstract class CodeOutlineProbe {
+    private static final Logger logger = Logger.getInstance(CodeOutlineProbe.class.getName());
+
+    /** An image updated after a document change. */
+    public static final int DOCUMENT_UPDATE = 0;
+    /** A full re-render of an image. */
+    public static final int FULL_RENDER = 1;
+    /** A render of the area of an image that has just become visible. */
+    public static final int INCREMENTAL_RENDER = 2;
+    /** A paint of an outline panel. */
+    public static final int PAINT = 3;
+
+    /** A probe which traces nothing. */
+    private static final CodeOutlineProbe NONE = new CodeOutlineProbe() {
+        public Object begin(int type) { return null; }
+
+        public void end(Object token, int documentLength, int lineCount,
+                int firstLine, int lastLine, long pixelArea, int renderPath) { }
+
+        public void scaleChanged(double oldScale, double newScale, int lineCount,
+                int height) { }
+    };
+
+    /** The probe found when this class was loaded. */
+    private static final CodeOutlineProbe instance = load();
+
+    /**
+     * Returns the installed probe.
+     *
+     * @return the probe provided by a service, or one which traces nothing
+     */
+    public static CodeOutlineProbe getInstance() { return instance; }
+
+    private static CodeOutlineProbe load() {
+        try {
+            final Iterator<CodeOutlineProbe> it = ServiceLoader.load(CodeOutlineProbe.class,
+                    CodeOutlineProbe.class.getClassLoader()).iterator();
+            if (it.hasNext()) {
+                final CodeOutlineProbe probe = it.next();
+                logger.info("Tracing code outlines with " + probe.getClass().getName());
+                return probe;
+            }
+        } catch (Throwable t) {
+            // e.g. the JFR module on a JVM without JFR
+            logger.info("Code outline probe unavailable: " + t);
+        }
+        return NONE;
+    }
+
+    /**
+     * Starts tracing an operation of the given type.
+     *
+     * @param type the type of operation, such as {@link #DOCUMENT_UPDATE}
+     * @return a token to pass to {@link #end}, or <code>null</code> if the
+     *         operation is not traced
+     */
+    public abstract Object begin(int type);
+
+    /**
+     * Finishes tracing an operation.
+     *
+     * @param token the token returned by {@link #begin}, possibly
+     *        <code>null</code>
+     * @param documentLength the length of the outlined document
+     * @param lineCount the number of lines in the outlined document
+     * @param firstLine the first line affected
+     * @param lastLine the last line affected
+     * @param pixelArea the number of image pixels rendered or painted
+     * @param renderPath how the operation rendered, such as {@link
+     *        CodeOutlineCanvas#PATH_INCREMENTAL}
+     */
+    public abstract void end(Object token, int documentLength, int lineCount,
+            int firstLine, int lastLine, long pixelArea, int renderPath);
+
+    /**
+     * Records that an image's vertical scale factor changed.
+     *
+     * @param oldScale the previous scale factor
+     * @param newScale the new scale factor
+     * @param lineCount the number of lines in the outlined document
+     * @param height the height of the image
+     */
+    public abstract void scaleChanged(double oldScale, double newScale,
+            int lineCount, int height);
+}
@@ -0,0 +1,91 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline;
+
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.extensions.ExtensionPointName;
+
+/**
+ * Decides how the outline of an editor is rendered. Renderers are registered
+ * with the <code>CodeOutline2.renderer</code> extension point, so other
+ * plugins can contribute renderers for their own file types:
+ * <pre>
+ * &lt;extensions defaultExtensionNs="CodeOutline2"&gt;
+ *     &lt;renderer implementation="com.example.MyOutlineRenderer"/&gt;
+ * &lt;/extensions&gt;
+ * </pre>
+ * Unless the user picked a renderer in the outline's context menu, every
+ * editor is outlined by the first registered renderer which is {@linkplain
+ * #isApplicable applicable} to it. Renderers for particular file types or
+ * sizes should therefore be registered with <code>order="first"</code>.
+ */
+public interface CodeOutlineRendererProvider {
+    /** The extension point renderers are registered with. */
+    ExtensionPointName<CodeOutlineRendererProvider> EP_NAME
+            = ExtensionPointName.create("CodeOutline2.renderer");
+
+    /**
+     * Returns a name identifying this renderer in the saved preferences. It
+     * must not change between versions.
+     *
+     * @return this renderer's ID
+     */
+    String getId();
+
+    /**
+     * Returns the name of this renderer as shown to the user.
+     *
+     * @return this renderer's display name
+     */
+    String getDisplayName();
+
+    /**
+     * Returns whether this renderer can outline the given editor. A renderer
+     * may refuse editors by file type or by size, for instance.
+     *
+     * @param editor an editor
+     * @return whether this renderer can outline the given editor
+     */
+    boolean isApplicable(Editor editor);
+
+    /**
+     * Returns the text of the given editor as it should be rendered, including
+     * the colors of its characters.
+     *
+     * @param editor an editor this renderer is applicable to
+     * @return the editor's text, as it should be rendered
+     */
+    CodeOutlineText createText(Editor editor);
+}
@@ -0,0 +1,143 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline;
+
+import com.intellij.openapi.vfs.VirtualFile;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An application-wide cache of rendered outline thumbnails, evicted in
+ * least-recently-used order. A thumbnail is only valid for the modification
+ * stamp and size it was rendered for.
+ */
+public class CodeOutlineThumbnailCache {
+    /** The cached thumbnails, in access order. */
+    private final LinkedHashMap<VirtualFile, Entry> entries
+            = new LinkedHashMap<VirtualFile, Entry>(16, 0.75f, true);
+
+    /** The number of bytes held by all cached thumbnails. */
+    private long bytes = 0;
+
+    /**
+     * A cached thumbnail.
+     */
+    private static final class Entry {
+        private final long stamp;
+        private final BufferedImage thumbnail;
+
+        private Entry(long stamp, BufferedImage thumbnail) {
+            this.stamp = stamp;
+            this.thumbnail = thumbnail;
+        }
+
+        long getBytes() { return 4L * thumbnail.getWidth() * thumbnail.getHeight(); }
+    }
+
+    /**
+     * Stores the given thumbnail of the given file, replacing any previous
+     * one.
+     *
+     * @param file a file
+     * @param stamp the modification stamp of the file, or of its document if
+     *        it is open, that the thumbnail reflects
+     * @param thumbnail the thumbnail
+     */
+    public synchronized void put(VirtualFile file, long stamp, BufferedImage thumbnail) {
+        remove(file);
+
+        final Entry entry = new Entry(stamp, thumbnail);
+        entries.put(file, entry);
+        bytes += entry.getBytes();
+    }
+
+    /**
+     * Returns the cached thumbnail of the given file, if it is up to date and
+     * of the given size.
+     *
+     * @param file a file
+     * @param stamp the current modification stamp of the file, or of its
+     *        document if it is open
+     * @param width the width of the thumbnail
+     * @param height the height of the thumbnail
+     * @return the thumbnail, or <code>null</code>
+     */
+    public synchronized BufferedImage get(VirtualFile file, long stamp, int width, int height) {
+        final Entry entry = entries.get(file);
+        if (entry == null) return null;
+
+        final BufferedImage thumbnail = entry.thumbnail;
+        if (entry.stamp != stamp
+                || thumbnail.getWidth() != width || thumbnail.getHeight() != height) {
+            remove(file);
+            return null;
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Removes the cached thumbnail of the given file, if any.
+     *
+     * @param file a file
+     */
+    public synchronized void remove(VirtualFile file) {
+        final Entry entry = entries.remove(file);
+        if (entry != null) bytes -= entry.getBytes();
+    }
+
+    /**
+     * Evicts least recently used thumbnails until this cache holds no more
+     * than the given number of bytes.
+     *
+     * @param maxBytes the maximum number of bytes to keep
+     */
+    public synchronized void trimTo(long maxBytes) {
+        final Iterator<Map.Entry<VirtualFile, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext() && bytes > maxBytes) {
+            bytes -= it.next().getValue().getBytes();
+            it.remove();
+        }
+    }
+
+    /**
+     * Returns the number of bytes held by all cached thumbnails.
+     *
+     * @return the size of this cache in bytes
+     */
+    public synchronized long getBytes() { return bytes; }
+}
@@ -0,0 +1,524 @@
+/*
+ *  Copyright (c) 2003, Keith Lea
+ *  All rights reserved.
+ *
+ *  Redistribution and use in source and binary forms, with or without 
+ *  modification, are permitted provided that the following conditions 
+ *  are met:
+ *
+ *  - Redistributions of source code must retain the above copyright 
+ *    notice, this list of conditions and the following disclaimer. 
+ *  - Redistributions in binary form must reproduce the above copyright 
+ *    notice, this list of conditions and the following disclaimer in 
+ *    the documentation and/or other materials provided with the 
+ *    distribution. 
+ *  - Neither the name of Keith Lea nor the names of its
+ *    contributors may be used to endorse or promote products derived 
+ *    from this software without specific prior written permission. 
+ *
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS 
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT 
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS 
+ *  FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE 
+ *  COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, 
+ *  INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, 
+ *  BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER 
+ *  CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT 
+ *  LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN 
+ *  ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ *  POSSIBILITY OF SUCH DAMAGE.
+ *
+ *  File created @ Oct 19, 2026
+ */
+
+package net.kano.codeoutline;
+
+import com.intellij.lexer.Lexer;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.colors.EditorColorsManager;
+import com.intellij.openapi.editor.colors.EditorColorsScheme;
+import com.intellij.openapi.editor.colors.TextAttributesKey;
+import com.intellij.openapi.editor.markup.TextAttributes;
+import com.intellij.openapi.fileTypes.SyntaxHighlighter;
+import com.intellij.openapi.fileTypes.SyntaxHighlighterFactory;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.tree.IElementType;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders outline thumbnails of files. A file which is not open in an editor
+ * is streamed from disk in chunks and colored with its file type's
+ * highlighting lexer, without creating a document or an editor; a file which
+ * is open is rendered from its document, so that unsaved changes show. Each
+ * chunk is drawn by {@link CodeOutlineRenderer}, like every other outline.
+ * <br><br>
+ * Thumbnails are rendered on a small bounded pool of background threads. When
+ * too many requests are queued, the oldest ones are cancelled.
+ */
+public class CodeOutlineThumbnailRenderer {
+    private static final Logger logger = Logger.getInstance(CodeOutlineThumbnailRenderer.class.getName());
+
+    /** The number of threads rendering thumbnails. */
+    private static final int THREADS = 2;
+    /** The maximum number of queued requests. */
+    private static final int MAX_QUEUED = 32;
+    /** The number of bytes read and decoded at a time. */
+    private static final int CHUNK_SIZE = 64 * 1024;
+    /** Files are read through a memory mapping up to this size. */
+    private static final long MAX_MAPPED_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * Receives rendered thumbnails, on the event dispatch thread.
+     */
+    public interface Callback {
+        /**
+         * Called when the thumbnail of the given file has been rendered.
+         *
+         * @param file the file
+         * @param thumbnail the rendered thumbnail
+         */
+        void thumbnailRendered(VirtualFile file, BufferedImage thumbnail);
+    }
+
+    /**
+     * A pending thumbnail, which can be cancelled.
+     */
+    public static final class Request implements Runnable {
+        private final Project project;
+        private final VirtualFile file;
+        /** The file's document, if the file is open in an editor. */
+        private final Document document;
+        private final int width;
+        private final int height;
+        private final Callback callback;
+
+        /** Whether the thumbnail is no longer wanted. */
+        private volatile boolean cancelled = false;
+
+        private Request(Project project, VirtualFile file, Document document,
+                int width, int height, Callback callback) {
+            this.project = project;
+            this.file = file;
+            this.document = document;
+            this.width = width;
+            this.height = height;
+            this.callback = callback;
+        }
+
+        /**
+         * Tells the renderer the thumbnail is no longer wanted. Rendering stops
+         * at the next chunk, and the callback is not called.
+         */
+        public void cancel() { cancelled = true; }
+
+        public boolean isCancelled() { return cancelled; }
+
+        public VirtualFile getFile() { return file; }
+
+        public void run() {
+            if (cancelled) return;
+
+            final BufferedImage thumbnail;
+            try {
+                thumbnail = renderThumbnail(this);
+            } catch (IOException e) {
+                logger.debug(e);
+                return;
+            }
+            if (thumbnail == null || cancelled) return;
+
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    if (!cancelled) callback.thumbnailRendered(file, thumbnail);
+                }
+            });
+        }
+    }
+
+    /** The threads rendering thumbnails. */
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            THREADS, THREADS, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(MAX_QUEUED),
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "Code Outline Thumbnails");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            },
+            new RejectedExecutionHandler() {
+                public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                    if (executor.isShutdown()) return;
+
+                    // the oldest request is the least likely to still be wanted
+                    final Runnable oldest = executor.getQueue().poll();
+                    if (oldest instanceof Request) ((Request) oldest).cancel();
+                    executor.execute(r);
+                }
+            });
+
+    {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues rendering a thumbnail of the given file.
+     *
+     * @param project the project used to look up the file's highlighter
+     * @param file the file to render
+     * @param document the file's document, if it is open in an editor, or
+     *        <code>null</code> to read the file from disk
+     * @param width the width of the thumbnail
+     * @param height the height of the thumbnail
+     * @param callback called with the thumbnail once it is rendered
+     * @return a request which can be used to cancel rendering
+     */
+    public Request render(Project project, VirtualFile file, Document document,
+            int width, int height, Callback callback) {
+        final Request request = new Request(project, file, document, width, height, callback);
+        executor.execute(request);
+        return request;
+    }
+
+    /**
+     * Cancels all queued requests and stops the rendering threads.
+     */
+    public void shutdown() {
+        for (Runnable r : executor.getQueue()) {
+            if (r instanceof Request) ((Request) r).cancel();
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Renders the thumbnail for the given request.
+     *
+     * @param request a request
+     * @return the thumbnail, or <code>null</code> if the file can't be rendered
+     *         or the request was cancelled
+     * @throws IOException if the file can't be read
+     */
+    private static BufferedImage renderThumbnail(final Request request) throws IOException {
+        final VirtualFile file = request.file;
+        if (!file.isValid() || file.isDirectory() || file.getFileType().isBinary()) return null;
+
+        final int width = request.width;
+        final int height = request.height;
+        if (width <= 0 || height <= 0) return null;
+
+        final EditorColorsScheme scheme = EditorColorsManager.getInstance().getGlobalScheme();
+        final SyntaxHighlighter highlighter = ApplicationManager.getApplication().runReadAction(
+                new Computable<SyntaxHighlighter>() {
+                    public SyntaxHighlighter compute() {
+                        return SyntaxHighlighterFactory.getSyntaxHighlighter(
+                                file.getFileType(), request.project, file);
+                    }
+                });
+
+        final BufferedImage thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = thumbnail.createGraphics();
+        try {
+            g.setColor(scheme.getDefaultBackground());
+            g.fillRect(0, 0, width, height);
+        } finally {
+            g.dispose();
+        }
+
+        final ThumbnailPainter painter = new ThumbnailPainter(thumbnail, scheme, highlighter);
+        final Document document = request.document;
+        if (document != null) {
+            final String text = ApplicationManager.getApplication().runReadAction(
+                    new Computable<String>() {
+                        public String compute() {
+                            return document.getText();
+                        }
+                    });
+            painter.paint(text);
+            return request.isCancelled() ? null : thumbnail;
+        }
+
+        final Charset charset = file.getCharset();
+
+        final File ioFile = file.isInLocalFileSystem() ? VfsUtil.virtualToIoFile(file) : null;
+        if (ioFile != null && ioFile.length() <= MAX_MAPPED_SIZE) {
+            final FileInputStream in = new FileInputStream(ioFile);
+            try {
+                final FileChannel channel = in.getChannel();
+                final ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+                painter.setScale(countLines(bytes, charset), height);
+                painter.paint(bytes, charset, request);
+            } finally {
+                in.close();
+            }
+        } else {
+            final InputStream in = file.getInputStream();
+            try {
+                painter.paint(Channels.newChannel(in), charset, request);
+            } finally {
+                in.close();
+            }
+        }
+
+        if (request.isCancelled()) return null;
+
+        return thumbnail;
+    }
+
+    /**
+     * Counts the lines in the given bytes, without decoding them. This is only
+     * possible for charsets in which a newline is always the byte
+     * <code>'\n'</code>; for other charsets, <code>-1</code> is returned.
+     *
+     * @param bytes the file contents
+     * @param charset the charset of the file
+     * @return the number of lines, or <code>-1</code>
+     */
+    private static int countLines(ByteBuffer bytes, Charset charset) {
+        final String name = charset.name();
+        if (name.startsWith("UTF-16") || name.startsWith("UTF-32")) return -1;
+
+        int lines = 1;
+        for (int i = bytes.position(), end = bytes.limit(); i < end; i++) {
+            if (bytes.get(i) == '\n') lines++;
+        }
+        return lines;
+    }
+
+    /**
+     * Paints decoded text into a thumbnail, one chunk at a time. Chunks are
+     * cut after their last newline, so that tokens are rarely split, and the
+     * lexer state is carried from one chunk to the next.
+     */
+    private static final class ThumbnailPainter {
+        private final BufferedImage image;
+        private final int width;
+        private final int height;
+        private final EditorColorsScheme scheme;
+        private final SyntaxHighlighter highlighter;
+        private final Lexer lexer;
+        private final int foreground;
+        /** The colors of the tokens of the chunk being painted. */
+        private final CodeOutlineText.ColorIterator colors;
+
+        /** Colors of the token types seen so far. */
+        private final Map<IElementType, Integer> tokenColors = new IdentityHashMap<IElementType, Integer>();
+
+        private double scale = 1.0;
+        private int line = 0;
+        private int col = 0;
+        private int lexerState = 0;
+
+        ThumbnailPainter(BufferedImage image, EditorColorsScheme scheme,
+                SyntaxHighlighter highlighter) {
+            this.image = image;
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+            this.scheme = scheme;
+            this.highlighter = highlighter;
+            this.lexer = highlighter == null ? null : highlighter.getHighlightingLexer();
+            this.foreground = scheme.getDefaultForeground().getRGB();
+            this.colors = lexer == null ? CodeOutlineRenderer.getUniformColors(foreground)
+                    : new TokenColors();
+        }
+
+        /**
+         * Scales the thumbnail so that the given number of lines fits.
+         *
+         * @param lines the number of lines in the file, or <code>-1</code> if
+         *        unknown
+         * @param height the height of the thumbnail
+         */
+        void setScale(int lines, int height) {
+            if (lines > 0) scale = CodeOutlineImage.getScaleFactor(height, lines);
+        }
+
+        /**
+         * Paints the given text, as a single chunk.
+         */
+        void paint(CharSequence text) {
+            int lines = 1;
+            for (int i = 0, len = text.length(); i < len; i++) {
+                if (text.charAt(i) == '\n') lines++;
+            }
+            setScale(lines, height);
+            paintText(text, text.length());
+        }
+
+        /**
+         * Paints the given bytes, decoding them a chunk at a time.
+         */
+        void paint(ByteBuffer bytes, Charset charset, Request request) {
+            final CharsetDecoder decoder = newDecoder(charset);
+            final CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+
+            boolean done = false;
+            while (!done && !request.isCancelled()) {
+                done = !bytes.hasRemaining();
+                decoder.decode(bytes, chars, done);
+                if (done) decoder.flush(chars);
+
+                if (!paintChunk(chars, done)) return;
+            }
+        }
+
+        /**
+         * Paints the bytes read from the given channel, a chunk at a time.
+         */
+        void paint(ReadableByteChannel channel, Charset charset, Request request) throws IOException {
+            final CharsetDecoder decoder = newDecoder(charset);
+            final ByteBuffer bytes = ByteBuffer.allocate(CHUNK_SIZE);
+            final CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+
+            boolean done = false;
+            while (!done && !request.isCancelled()) {
+                done = channel.read(bytes) < 0;
+                bytes.flip();
+                decoder.decode(bytes, chars, done);
+                if (done) decoder.flush(chars);
+                bytes.compact();
+
+                if (!paintChunk(chars, done)) return;
+            }
+        }
+
+        private static CharsetDecoder newDecoder(Charset charset) {
+            return charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        /**
+         * Paints the complete lines in the given buffer, and keeps the rest in
+         * the buffer for the next chunk.
+         *
+         * @param chars a buffer in write mode
+         * @param last whether this is the last chunk
+         * @return whether more lines fit into the thumbnail
+         */
+        private boolean paintChunk(CharBuffer chars, boolean last) {
+            chars.flip();
+
+            int end = chars.limit();
+            if (!last) {
+                while (end > 0 && chars.get(end - 1) != '\n') end--;
+                // a single line longer than the buffer is painted anyway
+                if (end == 0) end = chars.limit();
+            }
+
+            final boolean more = paintText(chars, end);
+
+            chars.position(end);
+            chars.compact();
+            return more;
+        }
+
+        /**
+         * Paints the first <code>end</code> characters of the given text.
+         *
+         * @return whether more lines fit into the thumbnail
+         */
+        private boolean paintText(CharSequence text, int end) {
+            final CodeOutlineText chunk = new ChunkText(text.subSequence(0, end), colors);
+            if (lexer != null) lexer.start(chunk.getCharsSequence(), 0, end, lexerState);
+
+            CodeOutlineRenderer.render(chunk, 0, end, line, col, image, width, height, scale);
+
+            // the next chunk continues where this one ends
+            final int lines = chunk.getLineCount();
+            final int lastLineStart = chunk.getLineStartOffset(lines - 1);
+            col = (lines == 1 ? col : 0) + end - lastLineStart;
+            line += lines - 1;
+            if (CodeOutlineRenderer.getScaledLine(line, scale) >= height) return false;
+
+            // the renderer only lexes as far as the last character it drew
+            if (lexer != null) {
+                while (lexer.getTokenType() != null) colors.advance();
+            }
+            return true;
+        }
+
+        /**
+         * Returns the color the given token type is highlighted with.
+         */
+        private int getColor(IElementType type) {
+            Integer color = tokenColors.get(type);
+            if (color == null) {
+                Color fg = null;
+                for (TextAttributesKey key : highlighter.getTokenHighlights(type)) {
+                    final TextAttributes attributes = scheme.getAttributes(key);
+                    if (attributes != null && attributes.getForegroundColor() != null) {
+                        fg = attributes.getForegroundColor();
+                    }
+                }
+                color = fg != null ? fg.getRGB() : foreground;
+                tokenColors.put(type, color);
+            }
+            return color;
+        }
+
+        /**
+         * The colors of the tokens the lexer finds in the chunk being painted.
+         */
+        private final class TokenColors implements CodeOutlineText.ColorIterator {
+            public boolean atEnd() { return lexer.getTokenType() == null; }
+
+            public int getEnd() { return lexer.getTokenEnd(); }
+
+            public void advance() {
+                lexerState = lexer.getState();
+                lexer.advance();
+            }
+
+            public int getColor() {
+                final IElementType type = lexer.getTokenType();
+                return type == null ? foreground : ThumbnailPainter.this.getColor(type);
+            }
+        }
+    }
+
+    /**
+     * A chunk of a file, colored by the given iterator.
+     */
+    private static final class ChunkText extends CodeOutlinePlainText {
+        private final ColorIterator colors;
+
+        ChunkText(CharSequence chars, ColorIterator colors) {
+            super(chars, 0);
+            this.colors = colors;
+        }
+
+        public ColorIterator createColorIterator(int offset) {
+            return colors;
+        }
+    }
+}
@@ -35,11 +35,14 @@
 
 package net.kano.codeoutline;
 
+import com.intellij.ide.IdeEventQueue;
+import com.intellij.openapi.Disposable;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.editor.ex.EditorEx;
 import com.intellij.openapi.fileEditor.*;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.ActionCallback;
+import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.ExpirableRunnable;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.wm.IdeFocusManager;
@@ -50,15 +53,28 @@ import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 
 /**
  * The code outline tool window content panel. As of version 0.0.1, this simply
  * shows another component which renders the code outline; this class's job is
  * only to display the appropriate panel.
+ * <br><br>
+ * The panels and the overview are registered as children of this tool window
+ * with the {@link Disposer}, so disposing of the tool window disposes of them
+ * as well.
  */
-public class CodeOutlineToolWindow extends JPanel {
+public class CodeOutlineToolWindow extends JPanel implements Disposable {
     /**
      * A set of grid bag constraints applied to the currently visible code
      * outline panel.
@@ -68,6 +84,19 @@ public class CodeOutlineToolWindow extends JPanel {
                     GridBagConstraints.CENTER, GridBagConstraints.BOTH,
                     new Insets(0, 0, 0, 0), 0, 0);
 
+    /**
+     * How long the IDE has to be idle, in milliseconds, before the outline of
+     * another tab is rendered ahead of time.
+     */
+    private static final int PRERENDER_IDLE_TIMEOUT = 1000;
+    /**
+     * Outlines are only rendered ahead of time while the image cache uses less
+     * than this fraction of the memory budget.
+     */
+    private static final int PRERENDER_BUDGET_SHARE = 4;
+    /** How many recently selected files are remembered for pre-rendering. */
+    private static final int MAX_RECENT_FILES = 8;
+
     private final CodeOutlinePlugin plugin;
     private final Project project;
     private final FileEditorManager fem;
@@ -75,9 +104,30 @@ public class CodeOutlineToolWindow extends JPanel {
     /** The panel currently being displayed. */
     private volatile CodeOutlinePanel currentPanel = null;
 
+    /**
+     * The text editors known to this tool window. Panels for these editors are
+     * only created when they are first needed, see {@link #getPanel}.
+     */
+    private Map<FileEditor, VirtualFile> editor2file = new IdentityHashMap<FileEditor, VirtualFile>();
     private Map<FileEditor, CodeOutlinePanel> editor2panel = new IdentityHashMap<FileEditor, CodeOutlinePanel>();
     private Map<VirtualFile, CodeOutlinePanel> file2panel = new IdentityHashMap<VirtualFile, CodeOutlinePanel>();
 
+    /** Recently selected files, most recent first. */
+    private final LinkedList<VirtualFile> recentFiles = new LinkedList<VirtualFile>();
+
+    /** The grid of file outlines shown in the "Overview" tab. */
+    private final CodeOutlineOverviewPanel overview;
+
+    /**
+     * Renders the outline of a tab the user is likely to switch to next,
+     * whenever the IDE is idle.
+     */
+    private final Runnable prerenderer = new Runnable() {
+        public void run() {
+            prerenderNext();
+        }
+    };
+
     private final ToolWindowManagerListener toolWindowManagerListener = new ToolWindowManagerListener() {
         @Override
         public void toolWindowRegistered(@NotNull String id) { }
@@ -140,30 +190,35 @@ public class CodeOutlineToolWindow extends JPanel {
         public void fileOpened(FileEditorManager source, VirtualFile file) {
             final FileEditor fileEditor = source.getSelectedEditor(file);
             if (fileEditor instanceof TextEditor) {
-                final CodeOutlinePanel panel = openPanel(fileEditor, file);
+                addEditor(fileEditor, file);
                 /* Force panel sub-component switch, cause we have no guaranty it will come
                  * after we register new instance.
                  */
-                if (checkCurrentPanel(source, file, panel))
+                if (checkCurrentPanel(source, file, fileEditor))
                     repaint();
             }
+            overview.filesChanged();
         }
 
         @Override
         public void fileClosed(FileEditorManager source, VirtualFile file) {
             closePanel(file);
+            overview.filesChanged();
         }
 
         /**
          * Switch panel if given editor is selected
          */
-        private boolean checkCurrentPanel(FileEditorManager source, VirtualFile file, CodeOutlinePanel panel) {
+        private boolean checkCurrentPanel(FileEditorManager source, VirtualFile file, FileEditor fileEditor) {
             final Editor editor = source.getSelectedTextEditor();
             // This is the same as editor != EditorEx && editor instanceof EditorEx
             if (editor instanceof EditorEx) {
-                if (((EditorEx)editor).getVirtualFile().equals(file) && !isAncestorOf(panel)) {
-                    replacePanel(panel);
-                    return true;
+                if (((EditorEx)editor).getVirtualFile().equals(file)) {
+                    final CodeOutlinePanel panel = getPanel(fileEditor);
+                    if (panel != null && !isAncestorOf(panel)) {
+                        replacePanel(panel);
+                        return true;
+                    }
                 }
             }
             return false;
@@ -176,26 +231,39 @@ public class CodeOutlineToolWindow extends JPanel {
          */
         @Override
         public void selectionChanged(final FileEditorManagerEvent event) {
-            final CodeOutlinePanel panel = editor2panel.get(event.getNewEditor());
+            rememberFile(event.getNewFile());
+            final CodeOutlinePanel panel = getPanel(event.getNewEditor());
             replacePanel(panel);
             repaint();
+            overview.filesChanged();
         }
+    };
 
-        /**
-         * Replaces current panel with new panel.
-         */
-        private void replacePanel(CodeOutlinePanel panel) {
-            if (currentPanel != null) {
-                remove(currentPanel);
-            }
-
-            currentPanel = panel;
-
-            if (panel != null) {
-                add(panel, GBC_DEFAULT);
+    /**
+     * A property change listener which recreates the panels once the user
+     * picks another renderer.
+     */
+    private final PropertyChangeListener rendererPrefListener = new PropertyChangeListener() {
+        public void propertyChange(PropertyChangeEvent evt) {
+            reopenPanels();
+        }
+    };
 
-                // Pre-size it, or it will not be rendered in some cases, until h/w would be refreshed by swing.
-                panel.setSize(getWidth(), getHeight());
+    /**
+     * A listener which shows the selected editor's panel once this tool window
+     * becomes visible, since panels are not created while it is hidden.
+     */
+    private final HierarchyListener showingListener = new HierarchyListener() {
+        public void hierarchyChanged(HierarchyEvent e) {
+            if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) == 0) return;
+
+            final CodeOutlinePanel panel = currentPanel;
+            if (isShowing()) {
+                if (panel != null) panel.resume();
+                showSelectedEditor();
+            } else if (panel != null) {
+                // nobody can see the outline, so it shouldn't follow the editor
+                panel.suspend();
             }
         }
     };
@@ -205,6 +273,8 @@ public class CodeOutlineToolWindow extends JPanel {
         setDoubleBuffered(false);
 
         setLayout(new GridBagLayout());
+
+        addHierarchyListener(showingListener);
     }
 
     /**
@@ -218,19 +288,76 @@ public class CodeOutlineToolWindow extends JPanel {
         this.plugin = plugin;
         this.project = project;
         this.fem = FileEditorManager.getInstance(this.project);
+        this.overview = new CodeOutlineOverviewPanel(plugin, project);
+        Disposer.register(this, overview);
+        plugin.getPrefs().addPropertyChangeListener("renderer", rendererPrefListener);
         this.fem.addFileEditorManagerListener(editorListener);
+        IdeEventQueue.getInstance().addIdleListener(prerenderer, PRERENDER_IDLE_TIMEOUT);
         final FileDocumentManager docMgr = FileDocumentManager.getInstance();
         for (FileEditor fileEditor : fem.getAllEditors()) {
             if (fileEditor instanceof TextEditor) {
                 final Editor textEditor = ((TextEditor) fileEditor).getEditor();
                 final VirtualFile file = docMgr.getFile(textEditor.getDocument());
                 if (file != null) {
-                    openPanel(fileEditor, file);
+                    addEditor(fileEditor, file);
                 }
             }
         }
     }
 
+    /**
+     * Remembers the given file editor and file, so a code outline panel can be
+     * created for them later. No panel, listeners or image are created until
+     * the editor is selected while this tool window is visible.
+     *
+     * @param fileEditor a file editor
+     * @param file a file
+     */
+    private synchronized void addEditor(FileEditor fileEditor, VirtualFile file) {
+        editor2file.put(fileEditor, file);
+    }
+
+    /**
+     * Replaces current panel with new panel. While this tool window is hidden
+     * the new panel stays suspended, until it is shown.
+     *
+     * @param panel the panel to show, or <code>null</code>
+     */
+    private void replacePanel(CodeOutlinePanel panel) {
+        if (currentPanel != null) {
+            remove(currentPanel);
+            if (currentPanel != panel) currentPanel.suspend();
+        }
+
+        currentPanel = panel;
+
+        if (panel != null) {
+            if (isShowing()) panel.resume();
+            add(panel, GBC_DEFAULT);
+
+            // Pre-size it, or it will not be rendered in some cases, until h/w would be refreshed by swing.
+            panel.setSize(getWidth(), getHeight());
+        }
+    }
+
+    /**
+     * Shows the panel of the currently selected text editor, creating it if
+     * necessary.
+     */
+    private void showSelectedEditor() {
+        final Editor editor = fem.getSelectedTextEditor();
+        // This is the same as editor != EditorEx && editor instanceof EditorEx
+        if (!(editor instanceof EditorEx)) return;
+
+        final FileEditor fileEditor = fem.getSelectedEditor(((EditorEx) editor).getVirtualFile());
+        final CodeOutlinePanel panel = getPanel(fileEditor);
+        if (panel != null && panel != currentPanel) {
+            replacePanel(panel);
+            revalidate();
+            repaint();
+        }
+    }
+
     /**
      * Opens a code outline panel for the given file editor and file. The panel
      * is not shown, only created.
@@ -240,12 +367,11 @@ public class CodeOutlineToolWindow extends JPanel {
      */
     private synchronized CodeOutlinePanel openPanel(FileEditor fileEditor, VirtualFile file) {
         final Editor editor = ((TextEditor) fileEditor).getEditor();
-        final CodeOutlinePanel panel = editor instanceof EditorEx
-                ? new CodeOutlinePanel(plugin, project, (EditorEx)editor)
-                : new CodeOutlinePanel(plugin, project, editor);
+        final CodeOutlinePanel panel = new CodeOutlinePanel(plugin, project, editor);
 
         editor2panel.put(fileEditor, panel);
         file2panel.put(file, panel);
+        Disposer.register(this, panel);
 
         return panel;
     }
@@ -257,33 +383,138 @@ public class CodeOutlineToolWindow extends JPanel {
      * @param file a file
      */
     private synchronized void closePanel(VirtualFile file) {
+        editor2file.values().removeAll(Collections.singleton(file));
+
         final CodeOutlinePanel panel = file2panel.remove(file);
 
         if (panel == null) return;
 
-        panel.dispose();
+        Disposer.dispose(panel);
         editor2panel.values().remove(panel);
 
         if (currentPanel == panel) {
             remove(panel);
+            currentPanel = null;
             repaint();
         }
     }
 
     /**
-     * Attempts to free all resources and components used by this tool window.
+     * Closes every open code outline panel, so that they are created again,
+     * with the renderer now picked for them, when they are next needed. The
+     * panel of the selected editor is reopened right away.
      */
-    public synchronized void stop() {
-        fem.removeFileEditorManagerListener(editorListener);
-        for (CodeOutlinePanel panel : editor2panel.values()) {
-            panel.dispose();
+    private void reopenPanels() {
+        synchronized (this) {
+            if (currentPanel != null) remove(currentPanel);
+            currentPanel = null;
+
+            for (CodeOutlinePanel panel : file2panel.values()) {
+                Disposer.dispose(panel);
+            }
+            editor2panel.clear();
+            file2panel.clear();
         }
+
+        if (isShowing()) showSelectedEditor();
+        repaint();
+    }
+
+    /**
+     * Frees all resources and components used by this tool window. This must
+     * not be called directly; use {@link Disposer#dispose} instead, which
+     * disposes of the panels and the overview first.
+     */
+    public synchronized void dispose() {
+        fem.removeFileEditorManagerListener(editorListener);
+        plugin.getPrefs().removePropertyChangeListener("renderer", rendererPrefListener);
+        IdeEventQueue.getInstance().removeIdleListener(prerenderer);
+        removeHierarchyListener(showingListener);
+        if (currentPanel != null) remove(currentPanel);
+        currentPanel = null;
+        editor2file.clear();
         editor2panel.clear();
         file2panel.clear();
+        recentFiles.clear();
+    }
+
+    /**
+     * Remembers the given file as the most recently selected one.
+     *
+     * @param file a file, or <code>null</code>
+     */
+    private synchronized void rememberFile(VirtualFile file) {
+        if (file == null) return;
+
+        recentFiles.remove(file);
+        recentFiles.addFirst(file);
+        if (recentFiles.size() > MAX_RECENT_FILES) recentFiles.removeLast();
     }
 
+    /**
+     * Returns the files the user is most likely to switch to next: the tabs
+     * next to the selected one, then recently selected files.
+     *
+     * @return candidate files for pre-rendering, most likely first
+     */
+    private synchronized List<VirtualFile> getPrerenderCandidates() {
+        final List<VirtualFile> candidates = new ArrayList<VirtualFile>();
+
+        final VirtualFile[] selected = fem.getSelectedFiles();
+        if (selected.length > 0) {
+            final List<VirtualFile> open = Arrays.asList(fem.getOpenFiles());
+            final int index = open.indexOf(selected[0]);
+            if (index > 0) candidates.add(open.get(index - 1));
+            if (index >= 0 && index < open.size() - 1) candidates.add(open.get(index + 1));
+        }
+
+        for (VirtualFile file : recentFiles) {
+            if (!candidates.contains(file)) candidates.add(file);
+        }
+        return candidates;
+    }
+
+    /**
+     * Renders the outline of the next likely tab ahead of time, if it isn't
+     * cached already. Only one outline is rendered per idle period, and none
+     * while the image cache already uses its share of the memory budget.
+     */
+    private void prerenderNext() {
+        final int width = getWidth();
+        final int height = getHeight();
+        if (!isShowing() || width <= 0 || height <= 0) return;
+
+        final long cap = plugin.getPrefs().getMemoryBudget() * 1024L * 1024L / PRERENDER_BUDGET_SHARE;
+        if (plugin.getMemoryGovernor().getImageCache().getBytes() >= cap) return;
+
+        for (VirtualFile file : getPrerenderCandidates()) {
+            final FileEditor fileEditor = fem.getSelectedEditor(file);
+            if (!(fileEditor instanceof TextEditor)) continue;
+
+            final CodeOutlinePanel panel = getPanel(fileEditor);
+            if (panel == null || panel == currentPanel || panel.isCached(width, height)) continue;
+
+            panel.prerender(getGraphicsConfiguration(), width, height);
+            return;
+        }
+    }
+
+    /**
+     * Returns the code outline panel for the given file editor. If the panel
+     * has not been created yet, it is created now, but only while this tool
+     * window is visible; otherwise <code>null</code> is returned.
+     *
+     * @param editor a file editor
+     * @return the panel for the given editor, or <code>null</code>
+     */
     public synchronized CodeOutlinePanel getPanel(FileEditor editor) {
-        return editor2panel.get(editor);
+        final CodeOutlinePanel panel = editor2panel.get(editor);
+        if (panel != null || !isShowing()) return panel;
+
+        final VirtualFile file = editor2file.get(editor);
+        if (file == null) return null;
+
+        return openPanel(editor, file);
     }
 
     public CodeOutlinePanel getCurrentPanel() {
@@ -297,6 +528,13 @@ public class CodeOutlineToolWindow extends JPanel {
      */
     public CodeOutlinePlugin getPlugin() { return plugin; }
 
+    /**
+     * Returns the grid of file outlines shown alongside this tool window.
+     *
+     * @return this tool window's overview panel
+     */
+    public CodeOutlineOverviewPanel getOverviewPanel() { return overview; }
+
     public ToolWindowManagerListener getToolWindowManagerListener() {
         return toolWindowManagerListener;
     }